@@ -0,0 +1,388 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.packet.CompoundControlPacket;
+import com.biasedbit.efflux.packet.ControlPacket;
+import com.biasedbit.efflux.packet.DataPacket;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UDP transport that, on every readiness wake-up, drains all pending datagrams from the socket into a reusable
+ * {@link DatagramBatch}, decodes them in one pass and dispatches them in bulk.
+ * <p/>
+ * Unlike {@link DatagramTransport}, received datagrams don't go through a Netty pipeline one at a time: the cost of
+ * the wake-up, of allocating the received bytes (one buffer per batch) and of the dispatch is shared by every datagram
+ * in the batch, so the cost per packet falls as load rises. Receivers implementing {@link DataPacketBatchReceiver}
+ * get the whole batch in a single call.
+ * <p/>
+ * Received packets are decoded and dispatched on the {@link DatagramReceiveLoop}'s thread; packets are sent straight
+ * from the calling thread.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class BatchingDatagramTransport implements RtpTransport {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(BatchingDatagramTransport.class);
+
+    // configuration defaults -----------------------------------------------------------------------------------------
+
+    private static final int BATCH_SIZE = 64;
+    private static final int MAX_DATAGRAM_SIZE = 1500;
+    private static final int RECEIVE_BUFFER_SIZE = 0;
+    private static final boolean USE_RTCP_MUX = false;
+
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final SocketAddress dataAddress;
+    private final SocketAddress controlAddress;
+    private final DatagramReceiveLoop loop;
+    private final boolean internalLoop;
+    private int batchSize;
+    private int maxDatagramSize;
+    private int receiveBufferSize;
+    private boolean useRtcpMux;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private DatagramChannel dataChannel;
+    private DatagramChannel controlChannel;
+    private volatile RtpPacketReceiver receiver;
+    private final AtomicLong truncatedDatagrams;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public BatchingDatagramTransport(SocketAddress dataAddress, SocketAddress controlAddress) {
+        this(dataAddress, controlAddress, null);
+    }
+
+    /**
+     * @param dataAddress    Local address for data.
+     * @param controlAddress Local address for control; ignored with rtcp-mux.
+     * @param loop           Running loop, possibly shared, to receive on; if {@code null}, this transport starts (and
+     *                       stops) its own.
+     */
+    public BatchingDatagramTransport(SocketAddress dataAddress, SocketAddress controlAddress,
+                                     DatagramReceiveLoop loop) {
+        this.dataAddress = dataAddress;
+        this.controlAddress = controlAddress;
+        if (loop == null) {
+            this.loop = new DatagramReceiveLoop();
+            this.internalLoop = true;
+        } else {
+            this.loop = loop;
+            this.internalLoop = false;
+        }
+
+        this.batchSize = BATCH_SIZE;
+        this.maxDatagramSize = MAX_DATAGRAM_SIZE;
+        this.receiveBufferSize = RECEIVE_BUFFER_SIZE;
+        this.useRtcpMux = USE_RTCP_MUX;
+        this.truncatedDatagrams = new AtomicLong();
+    }
+
+    // RtpTransport ---------------------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized boolean open(RtpPacketReceiver receiver) {
+        if (this.internalLoop && !this.loop.start()) {
+            return false;
+        }
+
+        try {
+            this.dataChannel = this.openChannel(this.dataAddress);
+            if (this.useRtcpMux) {
+                this.controlChannel = this.dataChannel;
+            } else {
+                this.controlChannel = this.openChannel(this.controlAddress);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to bind channels to {} / {}.", e, this.dataAddress, this.controlAddress);
+            this.closeChannels();
+            if (this.internalLoop) {
+                this.loop.stop();
+            }
+            return false;
+        }
+
+        this.receiver = receiver;
+        this.loop.register(this.dataChannel, new Drainer(this.dataChannel, !this.useRtcpMux ? Boolean.FALSE : null));
+        if (!this.useRtcpMux) {
+            this.loop.register(this.controlChannel, new Drainer(this.controlChannel, Boolean.TRUE));
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.receiver = null;
+        this.closeChannels();
+        if (this.internalLoop) {
+            this.loop.stop();
+        }
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        DatagramChannel channel = this.dataChannel;
+        return channel == null ? null : channel.socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public void writeData(ChannelBuffer packet, SocketAddress destination) {
+        this.send(this.dataChannel, packet, destination);
+    }
+
+    @Override
+    public void writeData(ChannelBuffer[] packets, SocketAddress destination) {
+        DatagramChannel channel = this.dataChannel;
+        for (ChannelBuffer packet : packets) {
+            this.send(channel, packet, destination);
+        }
+    }
+
+    @Override
+    public void writeControl(ChannelBuffer packet, SocketAddress destination) {
+        this.send(this.controlChannel, packet, destination);
+    }
+
+    @Override
+    public void addRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+        // Every packet arriving on this transport's channels belongs to its receiver, nothing to do.
+    }
+
+    @Override
+    public void removeRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+        // Every packet arriving on this transport's channels belongs to its receiver, nothing to do.
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private DatagramChannel openChannel(SocketAddress address) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            if (this.receiveBufferSize > 0) {
+                channel.socket().setReceiveBufferSize(this.receiveBufferSize);
+            }
+            channel.socket().bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return channel;
+    }
+
+    private void closeChannels() {
+        if (this.dataChannel != null) {
+            this.closeChannel(this.dataChannel);
+        }
+        if ((this.controlChannel != null) && (this.controlChannel != this.dataChannel)) {
+            this.closeChannel(this.controlChannel);
+        }
+        this.dataChannel = null;
+        this.controlChannel = null;
+    }
+
+    private void closeChannel(DatagramChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close channel.", e);
+        }
+    }
+
+    private void send(DatagramChannel channel, ChannelBuffer packet, SocketAddress destination) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            // Non-blocking: if the socket's send buffer is full the datagram is dropped, just like on the wire.
+            channel.send(packet.toByteBuffer(), destination);
+        } catch (IOException e) {
+            LOG.debug("Failed to send packet to {}.", e, destination);
+        }
+    }
+
+    private void dispatch(DatagramBatch batch, Boolean control, SocketAddress[] origins, DataPacket[] packets) {
+        RtpPacketReceiver receiver = this.receiver;
+        if (receiver == null) {
+            return;
+        }
+
+        // One allocation for the whole batch; packets slice their payload out of it.
+        ChannelBuffer contents = batch.copyContents();
+        int dataPackets = 0;
+        for (int i = 0; i < batch.getCount(); i++) {
+            ChannelBuffer datagram = contents.slice(batch.getOffset(i), batch.getLength(i));
+            if (datagram.readableBytes() < 2) {
+                continue;
+            }
+
+            try {
+                boolean isControl = control == null ? MultiplexedPacketDecoder.isControlPacket(datagram) : control;
+                if (isControl) {
+                    receiver.controlPacketReceived(batch.getOrigin(i), decodeControl(datagram));
+                } else {
+                    packets[dataPackets] = DataPacket.decode(datagram, true);
+                    origins[dataPackets] = batch.getOrigin(i);
+                    dataPackets++;
+                }
+            } catch (Exception e) {
+                LOG.debug("Discarded invalid packet from {}.", e, batch.getOrigin(i));
+            }
+        }
+
+        if (dataPackets == 0) {
+            return;
+        }
+
+        try {
+            if (receiver instanceof DataPacketBatchReceiver) {
+                ((DataPacketBatchReceiver) receiver).dataPacketsReceived(origins, packets, dataPackets);
+            } else {
+                for (int i = 0; i < dataPackets; i++) {
+                    receiver.dataPacketReceived(origins[i], packets[i]);
+                }
+            }
+        } finally {
+            for (int i = 0; i < dataPackets; i++) {
+                origins[i] = null;
+                packets[i] = null;
+            }
+        }
+    }
+
+    private static CompoundControlPacket decodeControl(ChannelBuffer datagram) {
+        List<ControlPacket> controlPackets = new ArrayList<ControlPacket>(2);
+        while (datagram.readableBytes() > 0) {
+            controlPackets.add(ControlPacket.decode(datagram));
+        }
+
+        return new CompoundControlPacket(controlPackets);
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be > 0");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return Number of datagrams dropped for being longer than {@link #getMaxDatagramSize()}.
+     */
+    public long getTruncatedDatagrams() {
+        return this.truncatedDatagrams.get();
+    }
+
+    public int getMaxDatagramSize() {
+        return this.maxDatagramSize;
+    }
+
+    public void setMaxDatagramSize(int maxDatagramSize) {
+        if (maxDatagramSize <= 0) {
+            throw new IllegalArgumentException("Max datagram size must be > 0");
+        }
+        this.maxDatagramSize = maxDatagramSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    /**
+     * @param receiveBufferSize Size of the socket's receive buffer (SO_RCVBUF), which must be able to hold the bursts
+     *                          that accumulate between wake-ups; 0 keeps the OS default.
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public boolean isUseRtcpMux() {
+        return this.useRtcpMux;
+    }
+
+    public void setUseRtcpMux(boolean useRtcpMux) {
+        this.useRtcpMux = useRtcpMux;
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    /**
+     * Drains one channel. Only ever runs on the loop's thread, so its batch and arrays are reused without locking.
+     */
+    private final class Drainer implements Runnable {
+
+        private final DatagramChannel channel;
+        private final Boolean control;
+        private final DatagramBatch batch;
+        private final SocketAddress[] origins;
+        private final DataPacket[] packets;
+
+        private Drainer(DatagramChannel channel, Boolean control) {
+            this.channel = channel;
+            this.control = control;
+            this.batch = new DatagramBatch(batchSize, maxDatagramSize);
+            this.origins = new SocketAddress[batchSize];
+            this.packets = new DataPacket[batchSize];
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Keep going while batches come out full: there may be more pending than a batch can hold.
+                do {
+                    this.batch.clear();
+                    int received = this.batch.drain(this.channel);
+                    if (this.batch.getTruncatedCount() > 0) {
+                        truncatedDatagrams.addAndGet(this.batch.getTruncatedCount());
+                    }
+                    if (received == 0) {
+                        return;
+                    }
+                    dispatch(this.batch, this.control, this.origins, this.packets);
+                } while (this.batch.isFull());
+            } catch (IOException e) {
+                if (this.channel.isOpen()) {
+                    LOG.error("Failed to receive from channel.", e);
+                }
+            } finally {
+                this.batch.clear();
+            }
+        }
+    }
+}
@@ -20,7 +20,6 @@ import com.biasedbit.efflux.logging.Logger;
 import com.biasedbit.efflux.packet.CompoundControlPacket;
 import com.biasedbit.efflux.packet.ControlPacket;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelDownstreamHandler;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandler;
@@ -28,8 +27,6 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
 
-import java.util.List;
-
 /**
  * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
  */
@@ -65,19 +62,15 @@ public class ControlPacketEncoder implements ChannelDownstreamHandler {
             if (e.getMessage() instanceof ControlPacket) {
                 Channels.write(ctx, e.getFuture(), ((ControlPacket) e.getMessage()).encode(), e.getRemoteAddress());
             } else if (e.getMessage() instanceof CompoundControlPacket) {
-                List<ControlPacket> packets = ((CompoundControlPacket) e.getMessage()).getControlPackets();
-                ChannelBuffer[] buffers = new ChannelBuffer[packets.size()];
-                for (int i = 0; i < buffers.length; i++) {
-                    buffers[i] = packets.get(i).encode();
-                }
-                ChannelBuffer compoundBuffer = ChannelBuffers.wrappedBuffer(buffers);
+                ChannelBuffer compoundBuffer = ((CompoundControlPacket) e.getMessage()).encode();
                 Channels.write(ctx, e.getFuture(), compoundBuffer, e.getRemoteAddress());
+            } else {
+                // Either encoded already or RTP, on a multiplexed channel.
+                ctx.sendDownstream(evt);
             }
         } catch (Exception e1) {
             LOG.error("Failed to encode compound RTCP packet to send.", e1);
         }
-
-        // Otherwise do nothing.
     }
 
     // private classes ------------------------------------------------------------------------------------------------
@@ -18,6 +18,7 @@ package com.biasedbit.efflux.network;
 
 import com.biasedbit.efflux.logging.Logger;
 import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.packet.DataPacketView;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
@@ -51,7 +52,23 @@ public class DataHandler extends SimpleChannelUpstreamHandler {
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         if (e.getMessage() instanceof DataPacket) {
-            this.receiver.dataPacketReceived(e.getRemoteAddress(), (DataPacket) e.getMessage());
+            DataPacket packet = (DataPacket) e.getMessage();
+            try {
+                this.receiver.dataPacketReceived(e.getRemoteAddress(), packet);
+            } finally {
+                // Returns recycled packets to their pool, unless some listener retained them.
+                packet.release();
+            }
+        } else if (e.getMessage() instanceof DataPacketView) {
+            DataPacketView view = (DataPacketView) e.getMessage();
+            if (this.receiver instanceof DataPacketViewReceiver) {
+                ((DataPacketViewReceiver) this.receiver).dataPacketViewReceived(e.getRemoteAddress(), view);
+            } else {
+                this.receiver.dataPacketReceived(e.getRemoteAddress(), view.toDataPacket());
+            }
+        } else {
+            // Not RTP (e.g. RTCP on a multiplexed channel), leave it to the next handler.
+            ctx.sendUpstream(e);
         }
     }
 
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.packet.DataPacket;
+
+import java.net.SocketAddress;
+
+/**
+ * Receiver that can take all the RTP packets drained from a socket in one go, such as the ones produced by
+ * {@link BatchingDatagramTransport}.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public interface DataPacketBatchReceiver extends DataPacketReceiver {
+
+    /**
+     * Handles a batch of received packets. The arrays are reused by the caller for the next batch, so references to
+     * them (not to their elements) must not be kept.
+     *
+     * @param origins Address each packet came from.
+     * @param packets Received packets.
+     * @param count   Number of valid positions in both arrays.
+     */
+    void dataPacketsReceived(SocketAddress[] origins, DataPacket[] packets, int count);
+}
@@ -18,6 +18,7 @@ package com.biasedbit.efflux.network;
 
 import com.biasedbit.efflux.logging.Logger;
 import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.packet.DataPacketRecycler;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -32,6 +33,39 @@ public class DataPacketDecoder extends OneToOneDecoder {
 
     protected static final Logger LOG = Logger.getLogger(OneToOneDecoder.class);
 
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final boolean sliceData;
+    private final DataPacketRecycler recycler;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public DataPacketDecoder() {
+        this(false);
+    }
+
+    /**
+     * @param sliceData Whether decoded packets should reference the payload in the received buffer rather than getting
+     *                  a copy of it. See {@link DataPacket#decode(ChannelBuffer, boolean)} for the ownership rules.
+     */
+    public DataPacketDecoder(boolean sliceData) {
+        this.sliceData = sliceData;
+        this.recycler = null;
+    }
+
+    /**
+     * @param recycler Recycler from which decoded packets are obtained. Each packet owns the buffer it was decoded from
+     *                 and must be released once dispatched; see
+     *                 {@link DataPacket#decode(ChannelBuffer, DataPacketRecycler)}.
+     */
+    public DataPacketDecoder(DataPacketRecycler recycler) {
+        if (recycler == null) {
+            throw new IllegalArgumentException("Recycler cannot be null");
+        }
+        this.sliceData = true;
+        this.recycler = recycler;
+    }
+
     // OneToOneDecoder ------------------------------------------------------------------------------------------------
 
     @Override
@@ -41,7 +75,10 @@ public class DataPacketDecoder extends OneToOneDecoder {
         }
 
         try {
-            return DataPacket.decode((ChannelBuffer) msg);
+            if (this.recycler != null) {
+                return DataPacket.decode((ChannelBuffer) msg, this.recycler);
+            }
+            return DataPacket.decode((ChannelBuffer) msg, this.sliceData);
         } catch (Exception e) {
             LOG.debug("Failed to decode RTP packet.", e);
             return null;
@@ -17,6 +17,7 @@
 package com.biasedbit.efflux.network;
 
 import com.biasedbit.efflux.packet.DataPacket;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
@@ -44,6 +45,11 @@ public class DataPacketEncoder extends OneToOneEncoder {
 
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (msg instanceof ChannelBuffer) {
+            // Encoded by the session.
+            return msg;
+        }
+
         if (!(msg instanceof DataPacket)) {
             return ChannelBuffers.EMPTY_BUFFER;
         }
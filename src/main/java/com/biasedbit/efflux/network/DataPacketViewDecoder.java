@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.packet.DataPacketView;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+
+/**
+ * Turns each received datagram into a {@link DataPacketView} over the received buffer, without decoding the packet.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+@ChannelHandler.Sharable
+public class DataPacketViewDecoder extends OneToOneDecoder {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    protected static final Logger LOG = Logger.getLogger(DataPacketViewDecoder.class);
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    private DataPacketViewDecoder() {
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    public static DataPacketViewDecoder getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    // OneToOneDecoder ------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof ChannelBuffer)) {
+            return null;
+        }
+
+        try {
+            return DataPacketView.wrap((ChannelBuffer) msg);
+        } catch (Exception e) {
+            LOG.debug("Discarded invalid RTP packet.", e);
+            return null;
+        }
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static final class InstanceHolder {
+        private static final DataPacketViewDecoder INSTANCE = new DataPacketViewDecoder();
+    }
+}
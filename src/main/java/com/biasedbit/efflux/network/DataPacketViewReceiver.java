@@ -0,0 +1,31 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.packet.DataPacketView;
+
+import java.net.SocketAddress;
+
+/**
+ * Implemented by receivers that can handle {@link DataPacketView}s directly. {@link DataHandler} builds a full
+ * {@link com.biasedbit.efflux.packet.DataPacket} out of each view for receivers that don't implement this interface.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public interface DataPacketViewReceiver {
+
+    void dataPacketViewReceived(SocketAddress origin, DataPacketView view);
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Reusable holder for the datagrams drained from a socket on a single readiness wake-up.
+ * <p/>
+ * Datagrams are received back to back into one arena, which is reused from batch to batch; {@link #copyContents()}
+ * then moves everything received into a single new buffer, so that a whole batch costs one allocation no matter how
+ * many datagrams it has.
+ * <p/>
+ * Datagrams longer than the maximum size would be truncated by the receive; they are dropped instead, and counted.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DatagramBatch {
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final int maxDatagramSize;
+    private final ByteBuffer arena;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final SocketAddress[] origins;
+    private int count;
+    private int truncated;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @param capacity        Maximum number of datagrams per batch.
+     * @param maxDatagramSize Maximum size of each datagram; longer datagrams are dropped.
+     */
+    public DatagramBatch(int capacity, int maxDatagramSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be > 0");
+        }
+        if (maxDatagramSize <= 0) {
+            throw new IllegalArgumentException("Max datagram size must be > 0");
+        }
+
+        this.maxDatagramSize = maxDatagramSize;
+        // One spare byte, so that a datagram that doesn't fit is received with more than maxDatagramSize bytes.
+        this.arena = ByteBuffer.allocateDirect((capacity * maxDatagramSize) + 1);
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.origins = new SocketAddress[capacity];
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    /**
+     * Receives as many pending datagrams as possible from a non-blocking channel, until it has none left or this batch
+     * is full.
+     *
+     * @param channel Channel to drain.
+     *
+     * @return Number of datagrams received, not counting the ones dropped for being too long.
+     *
+     * @throws IOException If receiving fails.
+     */
+    public int drain(DatagramChannel channel) throws IOException {
+        int received = 0;
+        while (this.count < this.offsets.length) {
+            int offset = this.arena.position();
+            this.arena.limit(offset + this.maxDatagramSize + 1);
+            SocketAddress origin = channel.receive(this.arena);
+            if (origin == null) {
+                break;
+            }
+            if ((this.arena.position() - offset) > this.maxDatagramSize) {
+                // Truncated; its slot is reused for the next one.
+                this.arena.position(offset);
+                this.truncated++;
+                continue;
+            }
+
+            this.offsets[this.count] = offset;
+            this.lengths[this.count] = this.arena.position() - offset;
+            this.origins[this.count] = origin;
+            this.count++;
+            received++;
+        }
+
+        return received;
+    }
+
+    /**
+     * Copies every datagram of this batch into one new buffer; datagram {@code i} is at
+     * {@link #getOffset(int) getOffset(i)} with {@link #getLength(int) getLength(i)} bytes.
+     *
+     * @return A new buffer, independent of this batch, with all the received bytes.
+     */
+    public ChannelBuffer copyContents() {
+        int size = this.arena.position();
+        byte[] contents = new byte[size];
+        ByteBuffer source = this.arena.duplicate();
+        source.flip();
+        source.get(contents);
+        return ChannelBuffers.wrappedBuffer(contents);
+    }
+
+    /**
+     * Empties this batch, dropping the references to the origins, so that it can be used again.
+     */
+    public void clear() {
+        for (int i = 0; i < this.count; i++) {
+            this.origins[i] = null;
+        }
+        this.count = 0;
+        this.truncated = 0;
+        this.arena.clear();
+    }
+
+    public int getOffset(int index) {
+        return this.offsets[index];
+    }
+
+    public int getLength(int index) {
+        return this.lengths[index];
+    }
+
+    public SocketAddress getOrigin(int index) {
+        return this.origins[index];
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return Number of datagrams dropped, since the last {@link #clear()}, for being longer than the maximum size.
+     */
+    public int getTruncatedCount() {
+        return this.truncated;
+    }
+
+    public int getCapacity() {
+        return this.offsets.length;
+    }
+
+    public boolean isFull() {
+        return this.count == this.offsets.length;
+    }
+}
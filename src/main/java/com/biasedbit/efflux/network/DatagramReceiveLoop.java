@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single thread waiting on a {@link Selector} for many datagram channels, calling back each channel's handler when
+ * the channel has datagrams to read. Handlers are expected to drain everything pending, so that one wake-up serves a
+ * whole burst of datagrams.
+ * <p/>
+ * One loop can (and, to keep the thread count down, should) be shared by many {@link BatchingDatagramTransport}s.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DatagramReceiveLoop implements Runnable {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(DatagramReceiveLoop.class);
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final Queue<Registration> pendingRegistrations;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public DatagramReceiveLoop() {
+        this.pendingRegistrations = new ConcurrentLinkedQueue<Registration>();
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public synchronized boolean start() {
+        if (this.running) {
+            return true;
+        }
+
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            LOG.error("Failed to open selector.", e);
+            return false;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "DatagramReceiveLoop-" + COUNTER.incrementAndGet());
+        this.thread.setDaemon(true);
+        this.thread.start();
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (!this.running) {
+            return;
+        }
+
+        this.running = false;
+        this.selector.wakeup();
+        if (Thread.currentThread() != this.thread) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts watching a channel; from then on, {@code handler} is called from this loop's thread every time the
+     * channel has datagrams to read. The registration is removed when the channel is closed.
+     *
+     * @param channel Non-blocking channel to watch.
+     * @param handler Handler that drains the channel.
+     *
+     * @throws IllegalStateException If this loop isn't running.
+     */
+    public void register(DatagramChannel channel, Runnable handler) {
+        if (!this.running) {
+            throw new IllegalStateException("Receive loop is not running");
+        }
+        this.pendingRegistrations.add(new Registration(channel, handler));
+        this.selector.wakeup();
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    // Runnable -------------------------------------------------------------------------------------------------------
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.selector.select();
+            } catch (IOException e) {
+                LOG.error("Failed to select on {}.", e, Thread.currentThread().getName());
+                continue;
+            }
+
+            this.processRegistrations();
+            Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                try {
+                    ((Runnable) key.attachment()).run();
+                } catch (Exception e) {
+                    LOG.error("Handler failed to process received datagrams.", e);
+                }
+            }
+        }
+
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close selector.", e);
+        }
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private void processRegistrations() {
+        Registration registration;
+        while ((registration = this.pendingRegistrations.poll()) != null) {
+            try {
+                registration.channel.register(this.selector, SelectionKey.OP_READ, registration.handler);
+            } catch (ClosedChannelException e) {
+                // Closed before we got to it, nothing to watch.
+            }
+        }
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static final class Registration {
+
+        private final DatagramChannel channel;
+        private final Runnable handler;
+
+        private Registration(DatagramChannel channel, Runnable handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+    }
+}
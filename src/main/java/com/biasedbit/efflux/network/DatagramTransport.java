@@ -0,0 +1,367 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.packet.DataPacketRecycler;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.socket.DatagramChannel;
+import org.jboss.netty.channel.socket.DatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+
+import java.net.SocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * UDP transport built on Netty's datagram channels: one channel for data and one for control or, with rtcp-mux, a
+ * single channel for both.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DatagramTransport implements RtpTransport {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(DatagramTransport.class);
+
+    // configuration defaults -----------------------------------------------------------------------------------------
+
+    private static final int SEND_BUFFER_SIZE = 1500;
+    private static final int RECEIVE_BUFFER_SIZE = 1500;
+    private static final boolean USE_RTCP_MUX = false;
+    private static final boolean SLICE_RECEIVED_DATA = false;
+    private static final boolean RECYCLE_DATA_PACKETS = false;
+    private static final boolean USE_DATA_PACKET_VIEWS = false;
+
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final SocketAddress dataAddress;
+    private final SocketAddress controlAddress;
+    private final DatagramChannelFactory factory;
+    private final boolean sharedFactory;
+    private int sendBufferSize;
+    private int receiveBufferSize;
+    private boolean useRtcpMux;
+    private boolean sliceReceivedData;
+    private boolean recycleDataPackets;
+    private boolean useDataPacketViews;
+    private OrderedMemoryAwareThreadPoolExecutor executor;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private ConnectionlessBootstrap dataBootstrap;
+    private ConnectionlessBootstrap controlBootstrap;
+    private DatagramChannel dataChannel;
+    private DatagramChannel controlChannel;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public DatagramTransport(SocketAddress dataAddress, SocketAddress controlAddress) {
+        this(dataAddress, controlAddress, null, false);
+    }
+
+    /**
+     * @param dataAddress    Local address for data.
+     * @param controlAddress Local address for control; ignored with rtcp-mux.
+     * @param factory        Factory for the channels; if {@code null}, one will be created (and released on close).
+     * @param sharedFactory  Whether the factory is shared with others and thus must not be released on close.
+     */
+    public DatagramTransport(SocketAddress dataAddress, SocketAddress controlAddress, DatagramChannelFactory factory,
+                             boolean sharedFactory) {
+        this.dataAddress = dataAddress;
+        this.controlAddress = controlAddress;
+        if (factory == null) {
+            this.factory = new NioDatagramChannelFactory(Executors.newCachedThreadPool());
+            this.sharedFactory = false;
+        } else {
+            this.factory = factory;
+            this.sharedFactory = sharedFactory;
+        }
+
+        this.sendBufferSize = SEND_BUFFER_SIZE;
+        this.receiveBufferSize = RECEIVE_BUFFER_SIZE;
+        this.useRtcpMux = USE_RTCP_MUX;
+        this.sliceReceivedData = SLICE_RECEIVED_DATA;
+        this.recycleDataPackets = RECYCLE_DATA_PACKETS;
+        this.useDataPacketViews = USE_DATA_PACKET_VIEWS;
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    /**
+     * Creates the decoder for received RTP packets matching the given options.
+     *
+     * @param useDataPacketViews Decode into {@link com.biasedbit.efflux.packet.DataPacketView}s; overrides the others.
+     * @param recycleDataPackets Decode into pooled packets; overrides {@code sliceReceivedData}.
+     * @param sliceReceivedData  Slice, rather than copy, the payload out of the received buffer.
+     *
+     * @return A new data decoder (or the shared view decoder).
+     */
+    public static ChannelUpstreamHandler createDataDecoder(boolean useDataPacketViews, boolean recycleDataPackets,
+                                                           boolean sliceReceivedData) {
+        if (useDataPacketViews) {
+            return DataPacketViewDecoder.getInstance();
+        } else if (recycleDataPackets) {
+            return new DataPacketDecoder(new DataPacketRecycler());
+        } else {
+            return new DataPacketDecoder(sliceReceivedData);
+        }
+    }
+
+    // RtpTransport ---------------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean open(RtpPacketReceiver receiver) {
+        if (this.useRtcpMux) {
+            return this.bindMultiplexedChannel(receiver);
+        } else {
+            return this.bindChannels(receiver);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.dataChannel == null) {
+            return;
+        }
+
+        this.dataChannel.close();
+        if (this.controlChannel != this.dataChannel) {
+            this.controlChannel.close();
+        }
+        this.dataChannel = null;
+        this.controlChannel = null;
+        this.releaseFactory();
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        DatagramChannel channel = this.dataChannel;
+        return channel == null ? null : channel.getLocalAddress();
+    }
+
+    @Override
+    public void writeData(ChannelBuffer packet, SocketAddress destination) {
+        this.dataChannel.write(ChannelBuffers.unmodifiableBuffer(packet), destination);
+    }
+
+    @Override
+    public void writeData(ChannelBuffer[] packets, SocketAddress destination) {
+        // Writes from outside the I/O thread are queued and the worker is woken up once; issuing the whole batch
+        // before it gets to run lets it flush everything in one go.
+        for (ChannelBuffer packet : packets) {
+            this.dataChannel.write(ChannelBuffers.unmodifiableBuffer(packet), destination);
+        }
+    }
+
+    @Override
+    public void writeControl(ChannelBuffer packet, SocketAddress destination) {
+        this.controlChannel.write(ChannelBuffers.unmodifiableBuffer(packet), destination);
+    }
+
+    @Override
+    public void addRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+        // Every packet arriving on this transport's channels belongs to its receiver, nothing to do.
+    }
+
+    @Override
+    public void removeRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+        // Every packet arriving on this transport's channels belongs to its receiver, nothing to do.
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private void configureBootstrap(ConnectionlessBootstrap bootstrap) {
+        bootstrap.setOption("sendBufferSize", this.sendBufferSize);
+        bootstrap.setOption("receiveBufferSize", this.receiveBufferSize);
+        bootstrap.setOption("receiveBufferSizePredictorFactory",
+                            new FixedReceiveBufferSizePredictorFactory(this.receiveBufferSize));
+    }
+
+    private ChannelUpstreamHandler createDataDecoder() {
+        return createDataDecoder(this.useDataPacketViews, this.recycleDataPackets, this.sliceReceivedData);
+    }
+
+    private boolean bindChannels(final RtpPacketReceiver receiver) {
+        this.dataBootstrap = new ConnectionlessBootstrap(this.factory);
+        this.configureBootstrap(this.dataBootstrap);
+        this.dataBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("decoder", createDataDecoder());
+                pipeline.addLast("encoder", DataPacketEncoder.getInstance());
+                if (executor != null) {
+                    pipeline.addLast("executorHandler", new ExecutionHandler(executor));
+                }
+                pipeline.addLast("handler", new DataHandler(receiver));
+                return pipeline;
+            }
+        });
+        this.controlBootstrap = new ConnectionlessBootstrap(this.factory);
+        this.configureBootstrap(this.controlBootstrap);
+        this.controlBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("decoder", new ControlPacketDecoder());
+                pipeline.addLast("encoder", ControlPacketEncoder.getInstance());
+                if (executor != null) {
+                    pipeline.addLast("executorHandler", new ExecutionHandler(executor));
+                }
+                pipeline.addLast("handler", new ControlHandler(receiver));
+                return pipeline;
+            }
+        });
+
+        try {
+            this.dataChannel = (DatagramChannel) this.dataBootstrap.bind(this.dataAddress);
+        } catch (Exception e) {
+            LOG.error("Failed to bind data channel to {}.", e, this.dataAddress);
+            this.releaseFactory();
+            return false;
+        }
+        try {
+            this.controlChannel = (DatagramChannel) this.controlBootstrap.bind(this.controlAddress);
+        } catch (Exception e) {
+            LOG.error("Failed to bind control channel to {}.", e, this.controlAddress);
+            this.dataChannel.close();
+            this.dataChannel = null;
+            this.releaseFactory();
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean bindMultiplexedChannel(final RtpPacketReceiver receiver) {
+        this.dataBootstrap = new ConnectionlessBootstrap(this.factory);
+        this.configureBootstrap(this.dataBootstrap);
+        this.dataBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("decoder", new MultiplexedPacketDecoder(createDataDecoder(),
+                                                                         new ControlPacketDecoder()));
+                pipeline.addLast("dataEncoder", DataPacketEncoder.getInstance());
+                pipeline.addLast("controlEncoder", ControlPacketEncoder.getInstance());
+                if (executor != null) {
+                    pipeline.addLast("executorHandler", new ExecutionHandler(executor));
+                }
+                // DataHandler hands anything that isn't RTP over to ControlHandler.
+                pipeline.addLast("dataHandler", new DataHandler(receiver));
+                pipeline.addLast("controlHandler", new ControlHandler(receiver));
+                return pipeline;
+            }
+        });
+        this.controlBootstrap = this.dataBootstrap;
+
+        try {
+            this.dataChannel = (DatagramChannel) this.dataBootstrap.bind(this.dataAddress);
+        } catch (Exception e) {
+            LOG.error("Failed to bind multiplexed data & control channel to {}.", e, this.dataAddress);
+            this.releaseFactory();
+            return false;
+        }
+        this.controlChannel = this.dataChannel;
+
+        return true;
+    }
+
+    private void releaseFactory() {
+        if (this.sharedFactory) {
+            return;
+        }
+
+        this.dataBootstrap.releaseExternalResources();
+        if (this.controlBootstrap != this.dataBootstrap) {
+            this.controlBootstrap.releaseExternalResources();
+        }
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public DatagramChannel getDataChannel() {
+        return this.dataChannel;
+    }
+
+    public DatagramChannel getControlChannel() {
+        return this.controlChannel;
+    }
+
+    public int getSendBufferSize() {
+        return this.sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public boolean isUseRtcpMux() {
+        return this.useRtcpMux;
+    }
+
+    public void setUseRtcpMux(boolean useRtcpMux) {
+        this.useRtcpMux = useRtcpMux;
+    }
+
+    public boolean isSliceReceivedData() {
+        return this.sliceReceivedData;
+    }
+
+    public void setSliceReceivedData(boolean sliceReceivedData) {
+        this.sliceReceivedData = sliceReceivedData;
+    }
+
+    public boolean isRecycleDataPackets() {
+        return this.recycleDataPackets;
+    }
+
+    public void setRecycleDataPackets(boolean recycleDataPackets) {
+        this.recycleDataPackets = recycleDataPackets;
+    }
+
+    public boolean isUseDataPacketViews() {
+        return this.useDataPacketViews;
+    }
+
+    public void setUseDataPacketViews(boolean useDataPacketViews) {
+        this.useDataPacketViews = useDataPacketViews;
+    }
+
+    public OrderedMemoryAwareThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+
+    public void setExecutor(OrderedMemoryAwareThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+}
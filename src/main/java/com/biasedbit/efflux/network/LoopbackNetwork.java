@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.packet.CompoundControlPacket;
+import com.biasedbit.efflux.packet.ControlPacket;
+import com.biasedbit.efflux.packet.DataPacket;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory "network" connecting {@link LoopbackTransport}s in the same JVM, with no sockets involved.
+ * <p/>
+ * Transports bind addresses on this network just as they would bind UDP ports, and packets written to an address are
+ * decoded and handed to the receiver of the transport bound to it; packets to unbound addresses are dropped. Delivery
+ * happens on the writing thread unless an {@link Executor} is provided.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class LoopbackNetwork {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(LoopbackNetwork.class);
+
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final Executor executor;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final ConcurrentMap<SocketAddress, LoopbackTransport> transports;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public LoopbackNetwork() {
+        this(null);
+    }
+
+    /**
+     * @param executor Executor on which packets are delivered, or {@code null} to deliver on the writing thread.
+     */
+    public LoopbackNetwork(Executor executor) {
+        this.executor = executor;
+        this.transports = new ConcurrentHashMap<SocketAddress, LoopbackTransport>();
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public LoopbackTransport createTransport(SocketAddress dataAddress, SocketAddress controlAddress) {
+        return new LoopbackTransport(this, dataAddress, controlAddress);
+    }
+
+    public boolean isBound(SocketAddress address) {
+        return this.transports.containsKey(address);
+    }
+
+    // protected helpers ----------------------------------------------------------------------------------------------
+
+    protected boolean bind(SocketAddress address, LoopbackTransport transport) {
+        LoopbackTransport previous = this.transports.putIfAbsent(address, transport);
+        return (previous == null) || (previous == transport);
+    }
+
+    protected void unbind(SocketAddress address, LoopbackTransport transport) {
+        this.transports.remove(address, transport);
+    }
+
+    protected void send(final SocketAddress origin, ChannelBuffer packet, final SocketAddress destination) {
+        final LoopbackTransport target = this.transports.get(destination);
+        if (target == null) {
+            // Just like UDP, nobody listening means the packet is lost.
+            return;
+        }
+
+        // Copy, as a real network would; the sender is free to reuse its buffer (and payload) as soon as this returns.
+        final ChannelBuffer copy = packet.copy();
+        if (this.executor == null) {
+            this.deliver(target, origin, copy, destination);
+        } else {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(target, origin, copy, destination);
+                }
+            });
+        }
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private void deliver(LoopbackTransport target, SocketAddress origin, ChannelBuffer packet,
+                         SocketAddress destination) {
+        RtpPacketReceiver receiver = target.getReceiver();
+        if ((receiver == null) || (packet.readableBytes() < 2)) {
+            return;
+        }
+
+        boolean control;
+        if (target.getDataAddress().equals(target.getControlAddress())) {
+            // Multiplexed, tell them apart like MultiplexedPacketDecoder does.
+            control = MultiplexedPacketDecoder.isControlPacket(packet);
+        } else {
+            control = destination.equals(target.getControlAddress());
+        }
+
+        try {
+            if (control) {
+                List<ControlPacket> controlPackets = new ArrayList<ControlPacket>(2);
+                while (packet.readableBytes() > 0) {
+                    controlPackets.add(ControlPacket.decode(packet));
+                }
+                receiver.controlPacketReceived(origin, new CompoundControlPacket(controlPackets));
+            } else {
+                // Payload can be sliced as the buffer is already a private copy.
+                receiver.dataPacketReceived(origin, DataPacket.decode(packet, true));
+            }
+        } catch (Exception e) {
+            LOG.debug("Discarded packet from {} to {} that failed to decode or be handled.", e, origin, destination);
+        }
+    }
+}
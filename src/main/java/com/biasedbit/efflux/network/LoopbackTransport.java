@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.SocketAddress;
+
+/**
+ * Transport over a {@link LoopbackNetwork}, for running (and benchmarking) many sessions in the same JVM without
+ * kernel UDP overhead or port exhaustion.
+ * <p/>
+ * Addresses are only used as keys on the loopback network, so they need not be (and usually shouldn't be) resolvable
+ * or bindable on the host. Using the same data and control address multiplexes RTP and RTCP, as with rtcp-mux.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class LoopbackTransport implements RtpTransport {
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final LoopbackNetwork network;
+    private final SocketAddress dataAddress;
+    private final SocketAddress controlAddress;
+    private volatile RtpPacketReceiver receiver;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public LoopbackTransport(LoopbackNetwork network, SocketAddress dataAddress, SocketAddress controlAddress) {
+        this.network = network;
+        this.dataAddress = dataAddress;
+        this.controlAddress = controlAddress;
+    }
+
+    // RtpTransport ---------------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean open(RtpPacketReceiver receiver) {
+        if (!this.network.bind(this.dataAddress, this)) {
+            return false;
+        }
+        if (!this.network.bind(this.controlAddress, this)) {
+            this.network.unbind(this.dataAddress, this);
+            return false;
+        }
+
+        this.receiver = receiver;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        this.receiver = null;
+        this.network.unbind(this.dataAddress, this);
+        this.network.unbind(this.controlAddress, this);
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return this.receiver == null ? null : this.dataAddress;
+    }
+
+    @Override
+    public void writeData(ChannelBuffer packet, SocketAddress destination) {
+        this.network.send(this.dataAddress, packet, destination);
+    }
+
+    @Override
+    public void writeData(ChannelBuffer[] packets, SocketAddress destination) {
+        for (ChannelBuffer packet : packets) {
+            this.network.send(this.dataAddress, packet, destination);
+        }
+    }
+
+    @Override
+    public void writeControl(ChannelBuffer packet, SocketAddress destination) {
+        this.network.send(this.controlAddress, packet, destination);
+    }
+
+    @Override
+    public void addRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+        // Every packet sent to this transport's addresses belongs to its receiver, nothing to do.
+    }
+
+    @Override
+    public void removeRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+        // Every packet sent to this transport's addresses belongs to its receiver, nothing to do.
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public SocketAddress getDataAddress() {
+        return this.dataAddress;
+    }
+
+    public SocketAddress getControlAddress() {
+        return this.controlAddress;
+    }
+
+    public RtpPacketReceiver getReceiver() {
+        return this.receiver;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.MessageEvent;
+
+/**
+ * Decoder for channels where RTP and RTCP share the same port (rtcp-mux).
+ * <p/>
+ * Each datagram is told apart by its second octet: RTCP packet types 192 to 223 never collide with an RTP marker bit
+ * and payload type combination in use, so those go to the control decoder and everything else goes to the data
+ * decoder. Both decoders fire their output from this handler's position in the pipeline.
+ * <a href="http://tools.ietf.org/html/rfc5761#section-4">RFC 5761, Section 4</a>
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class MultiplexedPacketDecoder implements ChannelUpstreamHandler {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    protected static final Logger LOG = Logger.getLogger(MultiplexedPacketDecoder.class);
+
+    private static final int MIN_CONTROL_PACKET_TYPE = 192;
+    private static final int MAX_CONTROL_PACKET_TYPE = 223;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final ChannelUpstreamHandler dataDecoder;
+    private final ChannelUpstreamHandler controlDecoder;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public MultiplexedPacketDecoder(ChannelUpstreamHandler dataDecoder, ChannelUpstreamHandler controlDecoder) {
+        this.dataDecoder = dataDecoder;
+        this.controlDecoder = controlDecoder;
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    /**
+     * @param buffer Received datagram; its indexes are left untouched.
+     *
+     * @return {@code true} if the datagram holds an RTCP packet, {@code false} if it holds an RTP packet.
+     */
+    public static boolean isControlPacket(ChannelBuffer buffer) {
+        int packetType = buffer.getUnsignedByte(buffer.readerIndex() + 1);
+        return (packetType >= MIN_CONTROL_PACKET_TYPE) && (packetType <= MAX_CONTROL_PACKET_TYPE);
+    }
+
+    // ChannelUpstreamHandler -----------------------------------------------------------------------------------------
+
+    @Override
+    public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+        // Only handle MessageEvent.
+        if (!(evt instanceof MessageEvent)) {
+            ctx.sendUpstream(evt);
+            return;
+        }
+
+        // Only decode if it's a ChannelBuffer.
+        MessageEvent e = (MessageEvent) evt;
+        if (!(e.getMessage() instanceof ChannelBuffer)) {
+            return;
+        }
+
+        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+        if (buffer.readableBytes() < 2) {
+            LOG.debug("Discarded datagram with {} bytes, too short to be either RTP or RTCP.", buffer.readableBytes());
+            return;
+        }
+
+        if (isControlPacket(buffer)) {
+            this.controlDecoder.handleUpstream(ctx, evt);
+        } else {
+            this.dataDecoder.handleUpstream(ctx, evt);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.SocketAddress;
+
+/**
+ * I/O back-end of a session: sends encoded RTP and RTCP packets and hands received ones, decoded, to a
+ * {@link RtpPacketReceiver}.
+ * <p/>
+ * Each session opens its own transport instance when initialised and closes it when terminated; implementations are
+ * free to share the underlying resources (sockets, threads) between instances.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public interface RtpTransport {
+
+    /**
+     * Starts sending and receiving packets.
+     *
+     * @param receiver Receiver of every packet that arrives through this transport.
+     *
+     * @return {@code true} if the transport is ready to be used, {@code false} otherwise.
+     */
+    boolean open(RtpPacketReceiver receiver);
+
+    /**
+     * Stops receiving packets and releases the resources this transport holds. Packets written before this call may
+     * still be sent.
+     */
+    void close();
+
+    /**
+     * @return Local address for data (RTP) packets, or {@code null} if this transport isn't open.
+     */
+    SocketAddress getLocalAddress();
+
+    /**
+     * Writes an encoded RTP packet. Implementations must not modify the buffer's indexes, as the same buffer may be
+     * written to many destinations.
+     *
+     * @param packet      Encoded RTP packet.
+     * @param destination Destination address.
+     */
+    void writeData(ChannelBuffer packet, SocketAddress destination);
+
+    /**
+     * Writes a batch of encoded RTP packets to the same destination, back to back and in order, so that the batch is
+     * flushed to the socket as a whole. Same restrictions as {@link #writeData(ChannelBuffer, SocketAddress)}.
+     *
+     * @param packets     Encoded RTP packets.
+     * @param destination Destination address.
+     */
+    void writeData(ChannelBuffer[] packets, SocketAddress destination);
+
+    /**
+     * Writes an encoded (possibly compound) RTCP packet. Implementations must not modify the buffer's indexes, as the
+     * same buffer may be written to many destinations.
+     *
+     * @param packet      Encoded RTCP packet.
+     * @param destination Destination address.
+     */
+    void writeControl(ChannelBuffer packet, SocketAddress destination);
+
+    /**
+     * Notifies the transport of a remote participant whose packets should reach this transport's receiver. Only
+     * relevant for transports that share their resources between sessions and must route packets to them.
+     *
+     * @param ssrc           SSRC of the remote participant.
+     * @param dataAddress    Data address of the remote participant.
+     * @param controlAddress Control address of the remote participant.
+     */
+    void addRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress);
+
+    /**
+     * Reverts {@link #addRemote(long, SocketAddress, SocketAddress)}.
+     *
+     * @param ssrc           SSRC of the remote participant.
+     * @param dataAddress    Data address of the remote participant.
+     * @param controlAddress Control address of the remote participant.
+     */
+    void removeRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress);
+}
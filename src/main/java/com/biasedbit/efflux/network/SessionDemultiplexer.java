@@ -0,0 +1,311 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.packet.AbstractReportPacket;
+import com.biasedbit.efflux.packet.ByePacket;
+import com.biasedbit.efflux.packet.CompoundControlPacket;
+import com.biasedbit.efflux.packet.ControlPacket;
+import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.packet.DataPacketView;
+import com.biasedbit.efflux.packet.SourceDescriptionPacket;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Last handler of a pipeline shared by many {@link RtpPacketReceiver}s (usually sessions), which routes each decoded
+ * packet straight to its receiver.
+ * <p/>
+ * Packets are routed by the SSRC of their source and, when that SSRC is unknown, by the address they came from. The
+ * first packet of an unknown SSRC matched by address binds that SSRC to the address' receiver, so later packets take
+ * the SSRC route; each receiver learns at most {@value #MAX_LEARNT_SSRCS} SSRCs this way, so remotes can't grow the
+ * routing tables without limit. Packets that match no route are discarded.
+ * <p/>
+ * Each SSRC can only be routed to one receiver at a time; the first one to claim it keeps it until it is removed.
+ * Addresses, on the other hand, may be shared by the remotes of several receivers (e.g. behind a media server or a
+ * NAT): an address claimed by more than one receiver routes nothing, and packets from it only go through SSRC routes.
+ * Lookups are lock-free; route changes serialise on this demultiplexer.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+@ChannelHandler.Sharable
+public class SessionDemultiplexer extends SimpleChannelUpstreamHandler {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(SessionDemultiplexer.class);
+    private static final int MAX_LEARNT_SSRCS = 16;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final ConcurrentMap<Long, RtpPacketReceiver> receiversBySsrc;
+    private final ConcurrentMap<SocketAddress, RtpPacketReceiver> receiversByAddress;
+    private final ConcurrentMap<RtpPacketReceiver, Routes> routesByReceiver;
+    // Every receiver that claimed each address; only unambiguous ones are in receiversByAddress. Guarded by this.
+    private final Map<SocketAddress, Set<RtpPacketReceiver>> addressClaims;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public SessionDemultiplexer() {
+        this.receiversBySsrc = new ConcurrentHashMap<Long, RtpPacketReceiver>();
+        this.receiversByAddress = new ConcurrentHashMap<SocketAddress, RtpPacketReceiver>();
+        this.routesByReceiver = new ConcurrentHashMap<RtpPacketReceiver, Routes>();
+        this.addressClaims = new HashMap<SocketAddress, Set<RtpPacketReceiver>>();
+    }
+
+    // SimpleChannelUpstreamHandler -----------------------------------------------------------------------------------
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        SocketAddress origin = e.getRemoteAddress();
+        if (e.getMessage() instanceof DataPacket) {
+            DataPacket packet = (DataPacket) e.getMessage();
+            try {
+                RtpPacketReceiver receiver = this.findReceiver(packet.getSsrc(), origin);
+                if (receiver != null) {
+                    receiver.dataPacketReceived(origin, packet);
+                }
+            } finally {
+                // Returns recycled packets to their pool, unless some listener retained them.
+                packet.release();
+            }
+        } else if (e.getMessage() instanceof DataPacketView) {
+            DataPacketView view = (DataPacketView) e.getMessage();
+            RtpPacketReceiver receiver = this.findReceiver(view.getSsrc(), origin);
+            if (receiver instanceof DataPacketViewReceiver) {
+                ((DataPacketViewReceiver) receiver).dataPacketViewReceived(origin, view);
+            } else if (receiver != null) {
+                receiver.dataPacketReceived(origin, view.toDataPacket());
+            }
+        } else if (e.getMessage() instanceof CompoundControlPacket) {
+            CompoundControlPacket packet = (CompoundControlPacket) e.getMessage();
+            RtpPacketReceiver receiver = this.findReceiver(getSsrc(packet), origin);
+            if (receiver != null) {
+                receiver.controlPacketReceived(origin, packet);
+            }
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+        // Just log and proceed...
+        LOG.error("Caught exception on channel {}.", e.getCause(), e.getChannel());
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    /**
+     * Routes packets from the source with the given SSRC to {@code receiver}.
+     *
+     * @param ssrc     SSRC of the remote source.
+     * @param receiver Receiver of the packets.
+     *
+     * @return {@code true} if the route was added (or already existed), {@code false} if the SSRC is already routed
+     *         to another receiver.
+     */
+    public synchronized boolean addRoute(long ssrc, RtpPacketReceiver receiver) {
+        RtpPacketReceiver previous = this.receiversBySsrc.putIfAbsent(ssrc, receiver);
+        if (previous != null) {
+            return previous == receiver;
+        }
+
+        this.getRoutes(receiver).ssrcs.add(ssrc);
+        return true;
+    }
+
+    /**
+     * Routes packets coming from the given address, whose SSRC has no route, to {@code receiver}.
+     *
+     * @param address  Address of the remote source.
+     * @param receiver Receiver of the packets.
+     *
+     * @return {@code true} if the address is routed to {@code receiver}, {@code false} if it's also claimed by another
+     *         receiver, in which case it routes nothing until only one of them is left.
+     */
+    public synchronized boolean addRoute(SocketAddress address, RtpPacketReceiver receiver) {
+        Set<RtpPacketReceiver> claims = this.addressClaims.get(address);
+        if (claims == null) {
+            claims = new HashSet<RtpPacketReceiver>();
+            this.addressClaims.put(address, claims);
+        }
+        if (claims.add(receiver)) {
+            this.getRoutes(receiver).addresses.add(address);
+        }
+
+        if (claims.size() == 1) {
+            this.receiversByAddress.put(address, receiver);
+            return true;
+        }
+
+        this.receiversByAddress.remove(address);
+        return false;
+    }
+
+    public synchronized void removeRoute(long ssrc, RtpPacketReceiver receiver) {
+        if (this.receiversBySsrc.remove(ssrc, receiver)) {
+            Routes routes = this.routesByReceiver.get(receiver);
+            if (routes != null) {
+                routes.ssrcs.remove(ssrc);
+                routes.learnt.remove(ssrc);
+            }
+        }
+    }
+
+    public synchronized void removeRoute(SocketAddress address, RtpPacketReceiver receiver) {
+        Routes routes = this.routesByReceiver.get(receiver);
+        if ((routes != null) && routes.addresses.remove(address)) {
+            this.releaseAddress(address, receiver);
+        }
+    }
+
+    /**
+     * Removes every route to {@code receiver}.
+     *
+     * @param receiver Receiver whose routes will be removed.
+     */
+    public synchronized void removeRoutes(RtpPacketReceiver receiver) {
+        Routes routes = this.routesByReceiver.remove(receiver);
+        if (routes == null) {
+            return;
+        }
+
+        for (Long ssrc : routes.ssrcs) {
+            this.receiversBySsrc.remove(ssrc, receiver);
+        }
+        for (SocketAddress address : routes.addresses) {
+            this.releaseAddress(address, receiver);
+        }
+    }
+
+    public RtpPacketReceiver getReceiver(long ssrc) {
+        return this.receiversBySsrc.get(ssrc);
+    }
+
+    public RtpPacketReceiver getReceiver(SocketAddress address) {
+        return this.receiversByAddress.get(address);
+    }
+
+    // private static helpers -----------------------------------------------------------------------------------------
+
+    private static long getSsrc(CompoundControlPacket packet) {
+        // First packet of a compound RTCP packet is always a report (or a BYE/SDES on poorly behaved stacks).
+        // http://tools.ietf.org/html/rfc3550#section-6.1
+        for (ControlPacket controlPacket : packet.getControlPackets()) {
+            switch (controlPacket.getType()) {
+                case SENDER_REPORT:
+                case RECEIVER_REPORT:
+                    return ((AbstractReportPacket) controlPacket).getSenderSsrc();
+                case SOURCE_DESCRIPTION:
+                    SourceDescriptionPacket sdesPacket = (SourceDescriptionPacket) controlPacket;
+                    if ((sdesPacket.getChunks() != null) && !sdesPacket.getChunks().isEmpty()) {
+                        return sdesPacket.getChunks().get(0).getSsrc();
+                    }
+                    break;
+                case BYE:
+                    ByePacket byePacket = (ByePacket) controlPacket;
+                    if ((byePacket.getSsrcList() != null) && !byePacket.getSsrcList().isEmpty()) {
+                        return byePacket.getSsrcList().get(0);
+                    }
+                    break;
+                default:
+                    // Keep looking.
+            }
+        }
+
+        return -1;
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private RtpPacketReceiver findReceiver(long ssrc, SocketAddress origin) {
+        if (ssrc >= 0) {
+            RtpPacketReceiver receiver = this.receiversBySsrc.get(ssrc);
+            if (receiver != null) {
+                return receiver;
+            }
+        }
+
+        RtpPacketReceiver receiver = this.receiversByAddress.get(origin);
+        if (receiver == null) {
+            LOG.trace("Discarded packet from {} with SSRC {}: no session to route it to.", origin, ssrc);
+        } else if (ssrc >= 0) {
+            this.learnRoute(ssrc, origin, receiver);
+        }
+
+        return receiver;
+    }
+
+    private synchronized void learnRoute(long ssrc, SocketAddress origin, RtpPacketReceiver receiver) {
+        // The address may have been released or become shared since it was looked up.
+        if (this.receiversByAddress.get(origin) != receiver) {
+            return;
+        }
+
+        Routes routes = this.getRoutes(receiver);
+        if ((routes.learnt.size() < MAX_LEARNT_SSRCS) && (this.receiversBySsrc.putIfAbsent(ssrc, receiver) == null)) {
+            routes.ssrcs.add(ssrc);
+            routes.learnt.add(ssrc);
+        }
+    }
+
+    private void releaseAddress(SocketAddress address, RtpPacketReceiver receiver) {
+        Set<RtpPacketReceiver> claims = this.addressClaims.get(address);
+        if ((claims == null) || !claims.remove(receiver)) {
+            return;
+        }
+
+        if (claims.isEmpty()) {
+            this.addressClaims.remove(address);
+            this.receiversByAddress.remove(address);
+        } else if (claims.size() == 1) {
+            // No longer ambiguous.
+            this.receiversByAddress.put(address, claims.iterator().next());
+        }
+    }
+
+    private Routes getRoutes(RtpPacketReceiver receiver) {
+        Routes routes = this.routesByReceiver.get(receiver);
+        if (routes == null) {
+            routes = new Routes();
+            this.routesByReceiver.put(receiver, routes);
+        }
+
+        return routes;
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    // Guarded by the demultiplexer's monitor.
+    private static final class Routes {
+        private final Set<Long> ssrcs = new HashSet<Long>();
+        private final Set<SocketAddress> addresses = new HashSet<SocketAddress>();
+        // Subset of ssrcs bound through an address route.
+        private final Set<Long> learnt = new HashSet<Long>();
+    }
+}
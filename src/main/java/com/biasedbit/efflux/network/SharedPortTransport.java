@@ -0,0 +1,368 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.logging.Logger;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.socket.DatagramChannel;
+import org.jboss.netty.channel.socket.DatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+
+import java.net.SocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * A single UDP port, carrying both RTP and RTCP (rtcp-mux), shared by many sessions.
+ * <p/>
+ * Instead of binding their own sockets, sessions use a {@link RtpTransport} obtained from
+ * {@link #createSessionTransport()}, which writes to the shared channel and registers routes for the session's remote
+ * participants (by SSRC and by address); incoming packets are decoded once and handed by the
+ * {@link SessionDemultiplexer} straight to the session they belong to. This keeps socket, file descriptor and
+ * selector usage constant regardless of the number of sessions.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class SharedPortTransport {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(SharedPortTransport.class);
+
+    // configuration defaults -----------------------------------------------------------------------------------------
+
+    private static final int SEND_BUFFER_SIZE = 1500;
+    private static final int RECEIVE_BUFFER_SIZE = 1500;
+    private static final boolean SLICE_RECEIVED_DATA = false;
+    private static final boolean USE_DATA_PACKET_VIEWS = false;
+    private static final boolean RECYCLE_DATA_PACKETS = false;
+
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final SocketAddress localAddress;
+    private final DatagramChannelFactory factory;
+    private final boolean internalFactory;
+    private int sendBufferSize;
+    private int receiveBufferSize;
+    private boolean sliceReceivedData;
+    private boolean useDataPacketViews;
+    private boolean recycleDataPackets;
+    private OrderedMemoryAwareThreadPoolExecutor executor;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final SessionDemultiplexer demultiplexer;
+    private ConnectionlessBootstrap bootstrap;
+    private DatagramChannel channel;
+    private volatile boolean running;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public SharedPortTransport(SocketAddress localAddress) {
+        this(localAddress, null);
+    }
+
+    public SharedPortTransport(SocketAddress localAddress, DatagramChannelFactory factory) {
+        this.localAddress = localAddress;
+        if (factory == null) {
+            this.factory = new NioDatagramChannelFactory(Executors.newCachedThreadPool());
+            this.internalFactory = true;
+        } else {
+            this.factory = factory;
+            this.internalFactory = false;
+        }
+
+        this.demultiplexer = new SessionDemultiplexer();
+        this.sendBufferSize = SEND_BUFFER_SIZE;
+        this.receiveBufferSize = RECEIVE_BUFFER_SIZE;
+        this.sliceReceivedData = SLICE_RECEIVED_DATA;
+        this.useDataPacketViews = USE_DATA_PACKET_VIEWS;
+        this.recycleDataPackets = RECYCLE_DATA_PACKETS;
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public synchronized boolean init() {
+        if (this.running) {
+            return true;
+        }
+
+        this.bootstrap = new ConnectionlessBootstrap(this.factory);
+        this.bootstrap.setOption("sendBufferSize", this.sendBufferSize);
+        this.bootstrap.setOption("receiveBufferSize", this.receiveBufferSize);
+        this.bootstrap.setOption("receiveBufferSizePredictorFactory",
+                                 new FixedReceiveBufferSizePredictorFactory(this.receiveBufferSize));
+        this.bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                ChannelPipeline pipeline = Channels.pipeline();
+                ChannelUpstreamHandler dataDecoder = DatagramTransport.createDataDecoder(useDataPacketViews,
+                                                                                         recycleDataPackets,
+                                                                                         sliceReceivedData);
+                pipeline.addLast("decoder", new MultiplexedPacketDecoder(dataDecoder, new ControlPacketDecoder()));
+                pipeline.addLast("dataEncoder", DataPacketEncoder.getInstance());
+                pipeline.addLast("controlEncoder", ControlPacketEncoder.getInstance());
+                if (executor != null) {
+                    pipeline.addLast("executorHandler", new ExecutionHandler(executor));
+                }
+                pipeline.addLast("handler", demultiplexer);
+                return pipeline;
+            }
+        });
+
+        try {
+            this.channel = (DatagramChannel) this.bootstrap.bind(this.localAddress);
+        } catch (Exception e) {
+            LOG.error("Failed to bind shared channel to {}.", e, this.localAddress);
+            if (this.internalFactory) {
+                this.bootstrap.releaseExternalResources();
+            }
+            return false;
+        }
+
+        LOG.debug("Shared channel bound to {}.", this.localAddress);
+        this.running = true;
+        return true;
+    }
+
+    public synchronized void terminate() {
+        if (!this.running) {
+            return;
+        }
+
+        this.running = false;
+        this.channel.close().awaitUninterruptibly();
+        if (this.internalFactory) {
+            this.bootstrap.releaseExternalResources();
+        }
+        LOG.debug("Shared channel bound to {} closed.", this.localAddress);
+    }
+
+    /**
+     * @return Whether this transport is bound and able to carry sessions.
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Routes every packet whose SSRC or origin address match {@code receiver}'s remote participant to it.
+     * <p/>
+     * Addresses shared with the remotes of other sessions don't route anything; packets from them are routed by SSRC.
+     *
+     * @return {@code false} if the SSRC is already routed to another receiver.
+     * @see SessionDemultiplexer#addRoute(long, RtpPacketReceiver)
+     * @see SessionDemultiplexer#addRoute(SocketAddress, RtpPacketReceiver)
+     */
+    public boolean addRoutes(RtpPacketReceiver receiver, long ssrc, SocketAddress dataAddress,
+                             SocketAddress controlAddress) {
+        boolean added = this.demultiplexer.addRoute(ssrc, receiver);
+        if ((dataAddress != null) && !this.demultiplexer.addRoute(dataAddress, receiver)) {
+            LOG.debug("Address {} is shared with another session on shared transport {}, routing by SSRC only.",
+                      dataAddress, this.localAddress);
+        }
+        if ((controlAddress != null) && !controlAddress.equals(dataAddress) &&
+            !this.demultiplexer.addRoute(controlAddress, receiver)) {
+            LOG.debug("Address {} is shared with another session on shared transport {}, routing by SSRC only.",
+                      controlAddress, this.localAddress);
+        }
+
+        return added;
+    }
+
+    public void removeRoutes(RtpPacketReceiver receiver, long ssrc, SocketAddress dataAddress,
+                             SocketAddress controlAddress) {
+        this.demultiplexer.removeRoute(ssrc, receiver);
+        if (dataAddress != null) {
+            this.demultiplexer.removeRoute(dataAddress, receiver);
+        }
+        if (controlAddress != null) {
+            this.demultiplexer.removeRoute(controlAddress, receiver);
+        }
+    }
+
+    public void removeRoutes(RtpPacketReceiver receiver) {
+        this.demultiplexer.removeRoutes(receiver);
+    }
+
+    /**
+     * @return A new transport, for a single session, over this shared port.
+     */
+    public RtpTransport createSessionTransport() {
+        return new SessionTransport();
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public SocketAddress getLocalAddress() {
+        return this.localAddress;
+    }
+
+    /**
+     * @return The shared channel, or {@code null} if this transport isn't running.
+     */
+    public DatagramChannel getChannel() {
+        return this.channel;
+    }
+
+    public SessionDemultiplexer getDemultiplexer() {
+        return this.demultiplexer;
+    }
+
+    public int getSendBufferSize() {
+        return this.sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        if (this.running) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        if (this.running) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public boolean isSliceReceivedData() {
+        return this.sliceReceivedData;
+    }
+
+    /**
+     * Configures whether payloads of received packets are slices of the received buffer rather than copies of it.
+     * <p/>
+     * Slicing avoids a copy per packet but keeps the whole received buffer alive for as long as any packet decoded
+     * from it is referenced, so it is off by default.
+     *
+     * @param sliceReceivedData Whether received payloads should be sliced rather than copied.
+     */
+    public void setSliceReceivedData(boolean sliceReceivedData) {
+        if (this.running) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.sliceReceivedData = sliceReceivedData;
+    }
+
+    public boolean isUseDataPacketViews() {
+        return this.useDataPacketViews;
+    }
+
+    public void setUseDataPacketViews(boolean useDataPacketViews) {
+        if (this.running) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.useDataPacketViews = useDataPacketViews;
+    }
+
+    public boolean isRecycleDataPackets() {
+        return this.recycleDataPackets;
+    }
+
+    public void setRecycleDataPackets(boolean recycleDataPackets) {
+        if (this.running) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.recycleDataPackets = recycleDataPackets;
+    }
+
+    public OrderedMemoryAwareThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+
+    public void setExecutor(OrderedMemoryAwareThreadPoolExecutor executor) {
+        if (this.running) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.executor = executor;
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private final class SessionTransport implements RtpTransport {
+
+        private volatile RtpPacketReceiver receiver;
+
+        @Override
+        public boolean open(RtpPacketReceiver receiver) {
+            if (!running) {
+                LOG.error("Shared transport on {} is not running.", localAddress);
+                return false;
+            }
+
+            this.receiver = receiver;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            RtpPacketReceiver current = this.receiver;
+            if (current != null) {
+                removeRoutes(current);
+                this.receiver = null;
+            }
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return channel == null ? null : channel.getLocalAddress();
+        }
+
+        @Override
+        public void writeData(ChannelBuffer packet, SocketAddress destination) {
+            channel.write(ChannelBuffers.unmodifiableBuffer(packet), destination);
+        }
+
+        @Override
+        public void writeData(ChannelBuffer[] packets, SocketAddress destination) {
+            for (ChannelBuffer packet : packets) {
+                channel.write(ChannelBuffers.unmodifiableBuffer(packet), destination);
+            }
+        }
+
+        @Override
+        public void writeControl(ChannelBuffer packet, SocketAddress destination) {
+            channel.write(ChannelBuffers.unmodifiableBuffer(packet), destination);
+        }
+
+        @Override
+        public void addRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+            if (!addRoutes(this.receiver, ssrc, dataAddress, controlAddress)) {
+                LOG.warn("SSRC {} ({} / {}) is already routed to another session on shared transport {}.",
+                         ssrc, dataAddress, controlAddress, localAddress);
+            }
+        }
+
+        @Override
+        public void removeRemote(long ssrc, SocketAddress dataAddress, SocketAddress controlAddress) {
+            removeRoutes(this.receiver, ssrc, dataAddress, controlAddress);
+        }
+    }
+}
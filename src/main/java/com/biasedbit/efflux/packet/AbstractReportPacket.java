@@ -16,6 +16,8 @@
 
 package com.biasedbit.efflux.packet;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -56,6 +58,18 @@ public abstract class AbstractReportPacket extends ControlPacket {
         return (byte) this.receptionReports.size();
     }
 
+    // protected helpers ----------------------------------------------------------------------------------------------
+
+    protected void writeReceptionReports(ChannelBuffer buffer) {
+        if (this.receptionReports == null) {
+            return;
+        }
+
+        for (ReceptionReport block : this.receptionReports) {
+            block.encodeInto(buffer);
+        }
+    }
+
     // getters & setters ----------------------------------------------------------------------------------------------
 
     public long getSenderSsrc() {
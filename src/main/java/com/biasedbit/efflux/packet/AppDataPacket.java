@@ -46,4 +46,13 @@ public class AppDataPacket extends ControlPacket {
     public ChannelBuffer encode() {
         return encode(0, 0, this);
     }
+
+    @Override
+    public int getEncodedSize(int currentCompoundLength, int fixedBlockSize) {
+        return 0;
+    }
+
+    @Override
+    public void encodeInto(ChannelBuffer buffer, int currentCompoundLength, int fixedBlockSize) {
+    }
 }
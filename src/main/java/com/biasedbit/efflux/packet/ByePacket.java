@@ -16,6 +16,7 @@
 
 package com.biasedbit.efflux.packet;
 
+import com.biasedbit.efflux.util.ByteUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.util.CharsetUtil;
@@ -68,95 +69,8 @@ public class ByePacket extends ControlPacket {
     }
 
     public static ChannelBuffer encode(int currentCompoundLength, int fixedBlockSize, ByePacket packet) {
-        if ((currentCompoundLength < 0) || ((currentCompoundLength % 4) > 0)) {
-            throw new IllegalArgumentException("Current compound length must be a non-negative multiple of 4");
-        }
-        if ((fixedBlockSize < 0) || ((fixedBlockSize % 4) > 0)) {
-            throw new IllegalArgumentException("Padding modulus must be a non-negative multiple of 4");
-        }
-
-        int size = 4;
-        ChannelBuffer buffer;
-        if (packet.ssrcList != null) {
-            size += packet.ssrcList.size() * 4;
-        }
-        byte[] reasonForLeavingBytes = null;
-        int reasonForLeavingPadding = 0;
-        if (packet.reasonForLeaving != null) {
-            reasonForLeavingBytes = packet.reasonForLeaving.getBytes(CharsetUtil.UTF_8);
-            if (reasonForLeavingBytes.length > 255) {
-                throw new IllegalArgumentException("Reason for leaving cannot exceed 255 bytes and this has " +
-                                                   reasonForLeavingBytes.length);
-            }
-
-            size += (1 + reasonForLeavingBytes.length);
-            // 'reason for leaving' must be 32bit aligned, so extra null octets might be needed.
-            reasonForLeavingPadding = 4 - ((1 + reasonForLeavingBytes.length) % 4);
-            if (reasonForLeavingPadding == 4) {
-                reasonForLeavingPadding = 0;
-            }
-            if (reasonForLeavingPadding > 0) {
-                size += reasonForLeavingPadding;
-            }
-        }
-
-        // If packet was configured to have padding, calculate padding and add it.
-        int padding = 0;
-        if (fixedBlockSize > 0) {
-            // If padding modulus is > 0 then the padding is equal to:
-            // (global size of the compound RTCP packet) mod (block size)
-            // Block size alignment might be necessary for some encryption algorithms
-            // RFC section 6.4.1
-            padding = fixedBlockSize - ((size + currentCompoundLength) % fixedBlockSize);
-            if (padding == fixedBlockSize) {
-                padding = 0;
-            }
-        }
-
-        size += padding;
-
-        // Allocate the buffer and write contents
-        buffer = ChannelBuffers.buffer(size);
-        // First byte: Version (2b), Padding (1b), SSRC (chunks) count (5b)
-        byte b = packet.getVersion().getByte();
-        if (padding > 0) {
-            b |= 0x20;
-        }
-        if (packet.ssrcList != null) {
-            b |= packet.ssrcList.size();
-        }
-        buffer.writeByte(b);
-        // Second byte: Packet Type
-        buffer.writeByte(packet.type.getByte());
-        // Third byte: total length of the packet, in multiples of 4 bytes (32bit words) - 1
-        int sizeInOctets = (size / 4) - 1;
-        buffer.writeShort(sizeInOctets);
-        // Payload: ssrc list
-        if (packet.ssrcList != null) {
-            for (Long ssrc : packet.ssrcList) {
-                buffer.writeInt(ssrc.intValue());
-            }
-        }
-        // If 'reason for leaving' was specified, add it.
-        if (reasonForLeavingBytes != null) {
-            buffer.writeByte(reasonForLeavingBytes.length);
-            buffer.writeBytes(reasonForLeavingBytes);
-            for (int i = 0; i < reasonForLeavingPadding; i++) {
-                buffer.writeByte(0x00);
-            }
-        }
-
-        if (padding > 0) {
-            // Final bytes: padding
-            for (int i = 0; i < (padding - 1); i++) {
-                buffer.writeByte(0x00);
-            }
-
-            // Final byte: the amount of padding bytes that should be discarded.
-            // Unless something's wrong, it will be a multiple of 4.
-            buffer.writeByte(padding);
-        }
-
+        ChannelBuffer buffer = ChannelBuffers.buffer(packet.getEncodedSize(currentCompoundLength, fixedBlockSize));
+        packet.encodeInto(buffer, currentCompoundLength, fixedBlockSize);
         return buffer;
     }
 
@@ -172,6 +86,33 @@ public class ByePacket extends ControlPacket {
         return encode(0, 0, this);
     }
 
+    @Override
+    public int getEncodedSize(int currentCompoundLength, int fixedBlockSize) {
+        int size = this.getUnpaddedSize();
+        return size + calculatePadding(currentCompoundLength, fixedBlockSize, size);
+    }
+
+    @Override
+    public void encodeInto(ChannelBuffer buffer, int currentCompoundLength, int fixedBlockSize) {
+        int size = this.getUnpaddedSize();
+        int padding = calculatePadding(currentCompoundLength, fixedBlockSize, size);
+        writeHeader(buffer, this, this.ssrcList == null ? 0 : this.ssrcList.size(), padding, size + padding);
+        // Payload: ssrc list
+        if (this.ssrcList != null) {
+            for (Long ssrc : this.ssrcList) {
+                buffer.writeInt(ssrc.intValue());
+            }
+        }
+        // If 'reason for leaving' was specified, add it (length, text and null octets for 32bit alignment).
+        if (this.reasonForLeaving != null) {
+            int length = this.getReasonForLeavingLength();
+            buffer.writeByte(length);
+            ByteUtils.writeUtf8(buffer, this.reasonForLeaving);
+            buffer.writeZero(((length + 4) & ~3) - 1 - length);
+        }
+        writePadding(buffer, padding);
+    }
+
     // public methods -------------------------------------------------------------------------------------------------
 
     public boolean addSsrc(long ssrc) {
@@ -186,6 +127,28 @@ public class ByePacket extends ControlPacket {
         return this.ssrcList.add(ssrc);
     }
 
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private int getReasonForLeavingLength() {
+        int length = ByteUtils.getUtf8Length(this.reasonForLeaving);
+        if (length > 255) {
+            throw new IllegalArgumentException("Reason for leaving cannot exceed 255 bytes and this has " + length);
+        }
+        return length;
+    }
+
+    private int getUnpaddedSize() {
+        int size = 4;
+        if (this.ssrcList != null) {
+            size += this.ssrcList.size() * 4;
+        }
+        if (this.reasonForLeaving != null) {
+            // 'reason for leaving' must be 32bit aligned, so extra null octets might be needed.
+            size += (this.getReasonForLeavingLength() + 4) & ~3;
+        }
+        return size;
+    }
+
     // getters & setters ----------------------------------------------------------------------------------------------
 
     public List<Long> getSsrcList() {
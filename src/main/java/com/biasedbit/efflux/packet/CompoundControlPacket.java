@@ -16,6 +16,9 @@
 
 package com.biasedbit.efflux.packet;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
 import java.util.Arrays;
 import java.util.List;
 
@@ -46,6 +49,40 @@ public class CompoundControlPacket {
 
     // public methods -------------------------------------------------------------------------------------------------
 
+    /**
+     * Encodes every packet in this compound packet, in order, into a single buffer that is allocated once, with its
+     * exact size computed up front.
+     *
+     * @return Buffer with the encoded compound packet.
+     */
+    public ChannelBuffer encode() {
+        ChannelBuffer buffer = ChannelBuffers.buffer(this.getEncodedSize());
+        this.encodeInto(buffer);
+        return buffer;
+    }
+
+    /**
+     * Encodes every packet in this compound packet, in order, straight into {@code buffer}.
+     *
+     * @param buffer Destination buffer, with at least {@link #getEncodedSize()} writable bytes.
+     */
+    public void encodeInto(ChannelBuffer buffer) {
+        for (ControlPacket packet : this.controlPackets) {
+            packet.encodeInto(buffer, 0, 0);
+        }
+    }
+
+    /**
+     * @return Size, in octets, of this compound packet once encoded.
+     */
+    public int getEncodedSize() {
+        int size = 0;
+        for (ControlPacket packet : this.controlPackets) {
+            size += packet.getEncodedSize(0, 0);
+        }
+        return size;
+    }
+
     public int getPacketCount() {
         return this.controlPackets.size();
     }
@@ -81,6 +81,77 @@ public abstract class ControlPacket {
 
     public abstract ChannelBuffer encode();
 
+    /**
+     * @param currentCompoundLength Length of the compound packet written so far (before this packet).
+     * @param fixedBlockSize        Block size to which the compound packet should be padded, or 0 for no padding.
+     *
+     * @return Size, in octets, of this packet once encoded (including padding, if any).
+     */
+    public abstract int getEncodedSize(int currentCompoundLength, int fixedBlockSize);
+
+    /**
+     * Encodes this packet straight into {@code buffer}, which must have at least
+     * {@link #getEncodedSize(int, int)} writable bytes.
+     *
+     * @param buffer                Destination buffer.
+     * @param currentCompoundLength Length of the compound packet written so far (before this packet).
+     * @param fixedBlockSize        Block size to which the compound packet should be padded, or 0 for no padding.
+     */
+    public abstract void encodeInto(ChannelBuffer buffer, int currentCompoundLength, int fixedBlockSize);
+
+    // protected helpers ----------------------------------------------------------------------------------------------
+
+    protected static int calculatePadding(int currentCompoundLength, int fixedBlockSize, int size) {
+        if ((currentCompoundLength < 0) || ((currentCompoundLength % 4) > 0)) {
+            throw new IllegalArgumentException("Current compound length must be a non-negative multiple of 4");
+        }
+        if ((fixedBlockSize < 0) || ((fixedBlockSize % 4) > 0)) {
+            throw new IllegalArgumentException("Padding modulus must be a non-negative multiple of 4");
+        }
+
+        // If packet was configured to have padding, calculate padding and add it.
+        if (fixedBlockSize == 0) {
+            return 0;
+        }
+
+        // If padding modulus is > 0 then the padding is equal to:
+        // (global size of the compound RTCP packet) mod (block size)
+        // Block size alignment might be necessary for some encryption algorithms
+        // RFC section 6.4.1
+        int padding = fixedBlockSize - ((size + currentCompoundLength) % fixedBlockSize);
+        if (padding == fixedBlockSize) {
+            return 0;
+        }
+        return padding;
+    }
+
+    protected static void writeHeader(ChannelBuffer buffer, ControlPacket packet, int innerBlocks, int padding,
+                                      int size) {
+        // First byte: Version (2b), Padding (1b), inner block count (5b)
+        byte b = packet.getVersion().getByte();
+        if (padding > 0) {
+            b |= 0x20;
+        }
+        b |= innerBlocks;
+        buffer.writeByte(b);
+        // Second byte: Packet Type
+        buffer.writeByte(packet.type.getByte());
+        // Third byte: total length of the packet, in multiples of 4 bytes (32bit words) - 1
+        buffer.writeShort((size / 4) - 1);
+    }
+
+    protected static void writePadding(ChannelBuffer buffer, int padding) {
+        if (padding == 0) {
+            return;
+        }
+
+        // Final bytes: padding
+        buffer.writeZero(padding - 1);
+        // Final byte: the amount of padding bytes that should be discarded.
+        // Unless something's wrong, it will be a multiple of 4.
+        buffer.writeByte(padding);
+    }
+
     // getters & setters ----------------------------------------------------------------------------------------------
 
     public RtpVersion getVersion() {
@@ -20,7 +20,9 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  *  0                   1                   2                   3
@@ -43,11 +45,24 @@ import java.util.List;
  * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
  * |                        header extension                       |
  * |                             ....                              |
+ * <p/>
+ * Header extensions in the RFC 8285 formats (profiles 0xBEDE and 0x100X, see {@link RtpHeaderExtensions}) are laid out
+ * as RFC 3550 mandates: after the CSRCs, with their length expressed in 32-bit words, so they interoperate with any
+ * other RTP stack. Extensions with any other profile keep the layout efflux has always used for them, which is only
+ * understood by efflux peers: before the CSRCs, with their length expressed in bytes. Decoding tells both apart by
+ * looking for a RFC 8285 profile right after the CSRCs.
  *
  * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
  */
 public class DataPacket {
 
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final int MAX_CONTRIBUTING_SOURCES = 15;
+    private static final int MAX_EXTENSION_ELEMENTS = 16;
+    private static final AtomicIntegerFieldUpdater<DataPacket> REFERENCE_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(DataPacket.class, "referenceCount");
+
     // internal vars --------------------------------------------------------------------------------------------------
 
     private RtpVersion version;
@@ -58,16 +73,36 @@ public class DataPacket {
     private long ssrc;
 
     private short extensionHeaderData;
-    private byte[] extensionData;
-
-    private List<Long> contributingSourceIds;
+    // Raw extension data, as received (or set through setExtensionHeader()); read in place, by absolute index.
+    private ChannelBuffer extensionData;
+    private int extensionDataOffset;
+    private int extensionDataLength;
+    // RFC 8285 elements to be written when encoding (alternative to raw extension data).
+    private int[] extensionElementIds;
+    private int[] extensionElementLengths;
+    private long[] extensionElementValues;
+    private ChannelBuffer[] extensionElementBuffers;
+    private int extensionElementCount;
+
+    private long[] contributingSourceIds;
+    private int contributingSourcesCount;
+    private List<Long> contributingSourceIdList;
 
     private ChannelBuffer data;
 
+    private final DataPacketRecycler recycler;
+    private volatile int referenceCount;
+
     // constructors ---------------------------------------------------------------------------------------------------
 
     public DataPacket() {
+        this(null);
+    }
+
+    DataPacket(DataPacketRecycler recycler) {
         this.version = RtpVersion.V2;
+        this.recycler = recycler;
+        this.referenceCount = 1;
     }
 
     // public static methods ------------------------------------------------------------------------------------------
@@ -77,12 +112,444 @@ public class DataPacket {
     }
 
     public static DataPacket decode(ChannelBuffer buffer) throws IndexOutOfBoundsException {
+        return decode(buffer, false);
+    }
+
+    /**
+     * Decodes a RTP packet from a buffer.
+     * <p/>
+     * When {@code sliceData} is {@code false}, the payload is copied to a newly allocated array and the packet is fully
+     * independent of {@code buffer}.
+     * <p/>
+     * When {@code sliceData} is {@code true}, no copy is made: the payload of the returned packet is a slice of
+     * {@code buffer} (trimmed of any padding octets) and its header extension data is read in place, so the packet
+     * shares the buffer's contents. The buffer is owned by the packet from that point on; whoever decoded it must
+     * neither modify it nor hand it over to be reused while the packet (or its data buffer) is still referenced. Code
+     * that wants to keep the payload while the underlying buffer is recycled must copy it (e.g. through
+     * {@link #getDataAsArray()}).
+     *
+     * @param buffer    Buffer containing a single RTP packet, positioned at its first octet.
+     * @param sliceData Whether the payload should be a slice of {@code buffer} rather than a copy.
+     *
+     * @return The decoded packet.
+     *
+     * @throws IndexOutOfBoundsException If the buffer does not contain a whole packet.
+     */
+    public static DataPacket decode(ChannelBuffer buffer, boolean sliceData) throws IndexOutOfBoundsException {
         if (buffer.readableBytes() < 12) {
             throw new IllegalArgumentException("A RTP packet must be at least 12 octets long");
         }
 
-        // Version, Padding, eXtension, CSRC Count
         DataPacket packet = new DataPacket();
+        int dataSize = decodeHeader(buffer, packet);
+        if (sliceData) {
+            packet.data = buffer.slice(buffer.readerIndex(), dataSize);
+        } else {
+            byte[] dataBytes = new byte[dataSize];
+            buffer.getBytes(buffer.readerIndex(), dataBytes);
+            packet.setData(dataBytes);
+            if (packet.extensionData != null) {
+                byte[] extensionBytes = new byte[packet.extensionDataLength];
+                buffer.getBytes(packet.extensionDataOffset, extensionBytes);
+                packet.extensionData = ChannelBuffers.wrappedBuffer(extensionBytes);
+                packet.extensionDataOffset = 0;
+            }
+        }
+
+        // Discard rest of buffer (payload and padding, if any).
+        buffer.skipBytes(buffer.readableBytes());
+
+        return packet;
+    }
+
+    /**
+     * Decodes a RTP packet from a buffer into a packet instance obtained from a recycler.
+     * <p/>
+     * Nothing is copied or allocated: the buffer itself becomes the payload of the packet, with its reader and writer
+     * indexes moved to the boundaries of the payload. The buffer is owned by the packet until the packet is returned
+     * to the recycler through {@link #release()}.
+     *
+     * @param buffer   Buffer containing a single RTP packet, positioned at its first octet.
+     * @param recycler Recycler from which the packet instance is obtained and to which it returns when released.
+     *
+     * @return The decoded packet, with a reference count of 1.
+     *
+     * @throws IndexOutOfBoundsException If the buffer does not contain a whole packet.
+     */
+    public static DataPacket decode(ChannelBuffer buffer, DataPacketRecycler recycler)
+            throws IndexOutOfBoundsException {
+        if (buffer.readableBytes() < 12) {
+            throw new IllegalArgumentException("A RTP packet must be at least 12 octets long");
+        }
+
+        DataPacket packet = recycler.acquire();
+        try {
+            int dataSize = decodeHeader(buffer, packet);
+            buffer.writerIndex(buffer.readerIndex() + dataSize);
+            packet.data = buffer;
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+
+        return packet;
+    }
+
+    public static ChannelBuffer encode(int fixedBlockSize, DataPacket packet) {
+        ChannelBuffer buffer = ChannelBuffers.buffer(getEncodedSize(fixedBlockSize, packet));
+        encodeInto(fixedBlockSize, packet, buffer);
+        return buffer;
+    }
+
+    /**
+     * Encodes a RTP packet at the writer index of an existing buffer, which must have at least
+     * {@link #getEncodedSize(int, DataPacket)} writable bytes. Used to encode many packets into a single buffer.
+     *
+     * @param fixedBlockSize Block size to which the packet should be padded, or 0 for no padding.
+     * @param packet         Packet to encode.
+     * @param buffer         Buffer to write to.
+     */
+    public static void encodeInto(int fixedBlockSize, DataPacket packet, ChannelBuffer buffer) {
+        int headerSize = packet.getEncodedHeaderSize();
+        int dataSize = packet.getDataSize();
+        int padding = calculatePadding(fixedBlockSize, headerSize + dataSize);
+
+        writeHeader(buffer, packet, padding);
+
+        // Write RTP data
+        if (dataSize > 0) {
+            buffer.writeBytes(packet.data, packet.data.readerIndex(), dataSize);
+        }
+
+        writePadding(buffer, padding);
+    }
+
+    /**
+     * @param fixedBlockSize Block size to which the packet should be padded, or 0 for no padding.
+     * @param packet         Packet to measure.
+     *
+     * @return Number of bytes the packet takes once encoded, padding included.
+     */
+    public static int getEncodedSize(int fixedBlockSize, DataPacket packet) {
+        int size = packet.getEncodedHeaderSize() + packet.getDataSize();
+        return size + calculatePadding(fixedBlockSize, size);
+    }
+
+    /**
+     * Encodes a RTP packet without copying its payload.
+     * <p/>
+     * Only the header (fixed fields, CSRCs and extension) and the padding, if any, are written to newly allocated
+     * buffers; the payload buffer is referenced as is (through a view of its readable bytes) and the three parts are
+     * combined in a composite buffer. The payload must thus not be modified until the returned buffer has been
+     * written.
+     *
+     * @param fixedBlockSize Block size to which the packet should be padded, or 0 for no padding.
+     * @param packet         Packet to encode.
+     *
+     * @return A (possibly composite) buffer with the encoded packet.
+     */
+    public static ChannelBuffer encodeWrapped(int fixedBlockSize, DataPacket packet) {
+        int headerSize = packet.getEncodedHeaderSize();
+        int dataSize = packet.getDataSize();
+        int padding = calculatePadding(fixedBlockSize, headerSize + dataSize);
+
+        ChannelBuffer header = ChannelBuffers.buffer(headerSize);
+        writeHeader(header, packet, padding);
+        if ((dataSize == 0) && (padding == 0)) {
+            return header;
+        }
+
+        ChannelBuffer data = dataSize == 0 ? ChannelBuffers.EMPTY_BUFFER :
+                             packet.data.slice(packet.data.readerIndex(), dataSize);
+        if (padding == 0) {
+            return ChannelBuffers.wrappedBuffer(header, data);
+        }
+
+        ChannelBuffer paddingBuffer = ChannelBuffers.buffer(padding);
+        writePadding(paddingBuffer, padding);
+        return ChannelBuffers.wrappedBuffer(header, data, paddingBuffer);
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public ChannelBuffer encode(int fixedBlockSize) {
+        return encode(fixedBlockSize, this);
+    }
+
+    public ChannelBuffer encode() {
+        return encode(0, this);
+    }
+
+    public ChannelBuffer encodeWrapped(int fixedBlockSize) {
+        return encodeWrapped(fixedBlockSize, this);
+    }
+
+    public ChannelBuffer encodeWrapped() {
+        return encodeWrapped(0, this);
+    }
+
+    public void encodeInto(ChannelBuffer buffer) {
+        encodeInto(0, this, buffer);
+    }
+
+    public int getEncodedSize() {
+        return getEncodedSize(0, this);
+    }
+
+    /**
+     * Increments the reference count of this packet.
+     * <p/>
+     * Packets decoded through a {@link DataPacketRecycler} are returned to it (and their contents cleared) as soon as
+     * they are dispatched to listeners. A listener that needs to hold on to such a packet (or its payload) after the
+     * callback returns must call this method before returning and {@link #release()} once it's done with the packet.
+     *
+     * @return This packet.
+     */
+    public DataPacket retain() {
+        int count;
+        do {
+            count = this.referenceCount;
+            if (count <= 0) {
+                throw new IllegalStateException("Cannot retain a packet that has already been released");
+            }
+        } while (!REFERENCE_COUNT.compareAndSet(this, count, count + 1));
+
+        return this;
+    }
+
+    /**
+     * Decrements the reference count of this packet. When it reaches zero, a packet obtained from a
+     * {@link DataPacketRecycler} is cleared and returned to it; any other packet is simply left for the garbage
+     * collector.
+     *
+     * @return {@code true} if this call released the last reference to the packet, {@code false} otherwise.
+     */
+    public boolean release() {
+        int count;
+        do {
+            count = this.referenceCount;
+            if (count <= 0) {
+                throw new IllegalStateException("Packet has already been released");
+            }
+        } while (!REFERENCE_COUNT.compareAndSet(this, count, count - 1));
+
+        if (count > 1) {
+            return false;
+        }
+
+        if (this.recycler != null) {
+            this.reset();
+            this.recycler.recycle(this);
+        }
+        return true;
+    }
+
+    public int getReferenceCount() {
+        return this.referenceCount;
+    }
+
+    public void addContributingSourceId(long contributingSourceId) {
+        if (this.contributingSourcesCount == MAX_CONTRIBUTING_SOURCES) {
+            throw new IllegalArgumentException("A RTP packet cannot have more than 15 CSRCs");
+        }
+        if (this.contributingSourceIds == null) {
+            this.contributingSourceIds = new long[MAX_CONTRIBUTING_SOURCES];
+        }
+
+        this.contributingSourceIds[this.contributingSourcesCount++] = contributingSourceId;
+        this.contributingSourceIdList = null;
+    }
+
+    public long getContributingSourceId(int index) {
+        if ((index < 0) || (index >= this.contributingSourcesCount)) {
+            throw new IndexOutOfBoundsException("Invalid CSRC index: " + index);
+        }
+
+        return this.contributingSourceIds[index];
+    }
+
+    public int getDataSize() {
+        if (this.data == null) {
+            return 0;
+        }
+
+        return this.data.readableBytes();
+    }
+
+    public int getExtensionDataSize() {
+        if (this.extensionElementCount > 0) {
+            return (this.getExtensionElementsSize(this.canUseOneByteElements()) + 3) & ~3;
+        }
+        if (this.extensionData == null) {
+            return 0;
+        }
+
+        return this.extensionDataLength;
+    }
+
+    public int getContributingSourcesCount() {
+        return this.contributingSourcesCount;
+    }
+
+    /**
+     * Sets raw header extension data, replacing any extension elements.
+     *
+     * @param extensionHeaderData Value of the "defined by profile" field.
+     * @param extensionData       Extension data; must be a whole number of 32-bit words if the profile is one of the
+     *                            RFC 8285 profiles, as those are laid out as RFC 3550 mandates.
+     */
+    public void setExtensionHeader(short extensionHeaderData, byte[] extensionData) {
+        if (extensionData.length > 65536) {
+            throw new IllegalArgumentException("Extension data cannot exceed 65536 bytes");
+        }
+        if (RtpHeaderExtensions.isElementProfile(extensionHeaderData) && ((extensionData.length % 4) != 0)) {
+            throw new IllegalArgumentException("RFC 8285 extension data length must be a multiple of 4 (32-bit words)");
+        }
+        this.clearExtensionElements();
+        this.extensionHeaderData = extensionHeaderData;
+        this.extensionData = ChannelBuffers.wrappedBuffer(extensionData);
+        this.extensionDataOffset = 0;
+        this.extensionDataLength = extensionData.length;
+    }
+
+    /**
+     * Sets (or replaces) a RFC 8285 header extension element with a numeric value, written big-endian in
+     * {@code length} octets when the packet is encoded.
+     * <p/>
+     * Elements are written with the one-byte header format if all IDs are in the range [1;14] and all lengths in the
+     * range [1;16], and with the two-byte header format otherwise. If the packet carries raw extension data (e.g. it
+     * was decoded from the network) in one of the RFC 8285 formats, its elements are kept and the new one is added to
+     * them; extension data in any other format is discarded.
+     *
+     * @param id     Element ID, in the range [1;255].
+     * @param value  Value of the element.
+     * @param length Number of octets used to write the value, in the range [1;8].
+     */
+    public void setExtensionElement(int id, long value, int length) {
+        if ((length < 1) || (length > 8)) {
+            throw new IllegalArgumentException("Valid range for numeric element length is [1;8]");
+        }
+        this.putExtensionElement(id, length, value, null);
+    }
+
+    /**
+     * Sets (or replaces) a RFC 8285 header extension element whose value is the readable bytes of {@code value}. The
+     * buffer is referenced, not copied, so it must not be modified until the packet has been encoded. See
+     * {@link #setExtensionElement(int, long, int)} for the rules on header format selection.
+     *
+     * @param id    Element ID, in the range [1;255].
+     * @param value Value of the element, up to 255 octets.
+     */
+    public void setExtensionElement(int id, ChannelBuffer value) {
+        if (value.readableBytes() > RtpHeaderExtensions.MAX_TWO_BYTE_LENGTH) {
+            throw new IllegalArgumentException("Element data cannot exceed 255 octets");
+        }
+        this.putExtensionElement(id, value.readableBytes(), 0, value);
+    }
+
+    public void setAbsSendTime(int id, long absSendTime) {
+        this.setExtensionElement(id, absSendTime & 0xffffff, 3);
+    }
+
+    public void setAudioLevel(int id, int level, boolean voiceActivity) {
+        if ((level < 0) || (level > 127)) {
+            throw new IllegalArgumentException("Valid range for audio level is [0;127]");
+        }
+        this.setExtensionElement(id, voiceActivity ? (level | 0x80) : level, 1);
+    }
+
+    public void setTransportSequenceNumber(int id, int sequenceNumber) {
+        this.setExtensionElement(id, sequenceNumber & 0xffff, 2);
+    }
+
+    /**
+     * @param id Element ID.
+     *
+     * @return Whether the packet's header extension (in one of the RFC 8285 formats) has an element with the given ID.
+     */
+    public boolean hasExtensionElement(int id) {
+        return (this.findExtensionElementIndex(id) >= 0) || (this.findRawExtensionElement(id) >= 0);
+    }
+
+    /**
+     * @param id Element ID.
+     *
+     * @return The data of the element with the given ID (a view over the packet's data, not a copy), or {@code null}
+     *         if there is no such element.
+     */
+    public ChannelBuffer getExtensionElement(int id) {
+        int index = this.findExtensionElementIndex(id);
+        if (index >= 0) {
+            ChannelBuffer value = this.extensionElementBuffers[index];
+            if (value != null) {
+                return value.slice(value.readerIndex(), this.extensionElementLengths[index]);
+            }
+            ChannelBuffer buffer = ChannelBuffers.buffer(this.extensionElementLengths[index]);
+            long v = this.extensionElementValues[index];
+            for (int shift = (this.extensionElementLengths[index] - 1) * 8; shift >= 0; shift -= 8) {
+                buffer.writeByte((int) (v >>> shift));
+            }
+            return buffer;
+        }
+
+        int offset = this.findRawExtensionElement(id);
+        if (offset < 0) {
+            return null;
+        }
+        int length = RtpHeaderExtensions.getElementLength(this.extensionData, this.extensionHeaderData, offset);
+        return this.extensionData.slice(offset, length);
+    }
+
+    /**
+     * @param id Element ID negotiated for abs-send-time.
+     *
+     * @return The 24 bit abs-send-time value, or -1 if the packet has no such (well formed) element.
+     */
+    public long getAbsSendTime(int id) {
+        return this.getExtensionElementValue(id, 3);
+    }
+
+    /**
+     * @param id Element ID negotiated for the client-to-mixer audio level (RFC 6464).
+     *
+     * @return The audio level, in -dBov, or -1 if the packet has no such (well formed) element.
+     */
+    public int getAudioLevel(int id) {
+        long value = this.getExtensionElementValue(id, 1);
+        return value < 0 ? -1 : (int) (value & 0x7f);
+    }
+
+    /**
+     * @param id Element ID negotiated for the client-to-mixer audio level (RFC 6464).
+     *
+     * @return The voice activity flag of the audio level element, {@code false} if the packet has no such element.
+     */
+    public boolean hasVoiceActivity(int id) {
+        long value = this.getExtensionElementValue(id, 1);
+        return (value >= 0) && ((value & 0x80) != 0);
+    }
+
+    /**
+     * @param id Element ID negotiated for transport-wide congestion control.
+     *
+     * @return The transport-wide sequence number, or -1 if the packet has no such (well formed) element.
+     */
+    public int getTransportSequenceNumber(int id) {
+        return (int) this.getExtensionElementValue(id, 2);
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    /**
+     * Decodes the header of a RTP packet into {@code packet}, leaving the buffer positioned at the first payload octet.
+     *
+     * @return Size of the payload, excluding padding.
+     */
+    private static int decodeHeader(ChannelBuffer buffer, DataPacket packet) {
+        int packetOffset = buffer.readerIndex();
+        int packetLength = buffer.readableBytes();
+
+        // Version, Padding, eXtension, CSRC Count
         byte b = buffer.readByte();
         packet.version = RtpVersion.fromByte(b);
         boolean padding = (b & 0x20) > 0; // mask 0010 0000
@@ -98,64 +565,74 @@ public class DataPacket {
         packet.timestamp = buffer.readUnsignedInt();
         packet.ssrc = buffer.readUnsignedInt();
 
-        // Read extension headers & data
-        if (extension) {
-            packet.extensionHeaderData = buffer.readShort();
-            packet.extensionData = new byte[buffer.readUnsignedShort()];
-            buffer.readBytes(packet.extensionData);
+        // Read extension headers & data before the CSRCs (length is expressed in bytes), unless laid out per RFC 3550.
+        boolean standardExtension = extension &&
+                                    RtpHeaderExtensions.hasStandardLayout(buffer, packetOffset, packetLength);
+        if (extension && !standardExtension) {
+            decodeExtension(buffer, packet, 1);
         }
 
         // Read CCRC's
         if (contributingSourcesCount > 0) {
-            packet.contributingSourceIds = new ArrayList<Long>(contributingSourcesCount);
+            if (packet.contributingSourceIds == null) {
+                packet.contributingSourceIds = new long[MAX_CONTRIBUTING_SOURCES];
+            }
             for (int i = 0; i < contributingSourcesCount; i++) {
-                long contributingSource = buffer.readUnsignedInt();
-                packet.contributingSourceIds.add(contributingSource);
+                packet.contributingSourceIds[i] = buffer.readUnsignedInt();
             }
         }
+        packet.contributingSourcesCount = contributingSourcesCount;
+        packet.contributingSourceIdList = null;
 
-        if (!padding) {
-            // No padding used, assume remaining data is the packet
-            byte[] remainingBytes = new byte[buffer.readableBytes()];
-            buffer.readBytes(remainingBytes);
-            packet.setData(remainingBytes);
-        } else {
+        // Read RFC 3550 extension headers & data (length is expressed in 32-bit words).
+        if (standardExtension) {
+            decodeExtension(buffer, packet, 4);
+        }
+
+        int dataSize = buffer.readableBytes();
+        if (padding) {
             // Padding bit was set, so last byte contains the number of padding octets that should be discarded.
-            short lastByte = buffer.getUnsignedByte(buffer.readerIndex() + buffer.readableBytes() - 1);
-            byte[] dataBytes = new byte[buffer.readableBytes() - lastByte];
-            buffer.readBytes(dataBytes);
-            packet.setData(dataBytes);
-            // Discard rest of buffer.
-            buffer.skipBytes(buffer.readableBytes());
+            dataSize -= buffer.getUnsignedByte(buffer.readerIndex() + buffer.readableBytes() - 1);
+            if (dataSize < 0) {
+                throw new IllegalArgumentException("Padding length exceeds RTP packet size");
+            }
         }
 
-        return packet;
+        return dataSize;
     }
 
-    public static ChannelBuffer encode(int fixedBlockSize, DataPacket packet) {
-        int size = 12; // Fixed width
-        if (packet.hasExtension()) {
-            size += 4 + packet.getExtensionDataSize();
-        }
-        size += packet.getContributingSourcesCount() * 4;
-        size += packet.getDataSize();
+    /**
+     * Locates the header extension at the reader index of {@code buffer}; its data is not copied, only located.
+     *
+     * @param unit Size, in bytes, of the unit in which the extension's length is expressed.
+     */
+    private static void decodeExtension(ChannelBuffer buffer, DataPacket packet, int unit) {
+        packet.extensionHeaderData = buffer.readShort();
+        int extensionLength = buffer.readUnsignedShort() * unit;
+        packet.extensionData = buffer;
+        packet.extensionDataOffset = buffer.readerIndex();
+        packet.extensionDataLength = extensionLength;
+        buffer.skipBytes(extensionLength);
+    }
 
+    private static int calculatePadding(int fixedBlockSize, int size) {
         // If packet was configured to have padding (fixed block size), calculate padding and add it.
-        int padding = 0;
-        if (fixedBlockSize > 0) {
-            // If padding modulus is > 0 then the padding is equal to:
-            // (global size of the compound RTCP packet) mod (block size)
-            // Block size alignment might be necessary for some encryption algorithms
-            // RFC section 6.4.1
-            padding = fixedBlockSize - (size % fixedBlockSize);
-            if (padding == fixedBlockSize) {
-                padding = 0;
-            }
+        if (fixedBlockSize <= 0) {
+            return 0;
         }
-        size += padding;
 
-        ChannelBuffer buffer = ChannelBuffers.buffer(size);
+        // If padding modulus is > 0 then the padding is equal to:
+        // (global size of the compound RTCP packet) mod (block size)
+        // Block size alignment might be necessary for some encryption algorithms
+        // RFC section 6.4.1
+        int padding = fixedBlockSize - (size % fixedBlockSize);
+        if (padding == fixedBlockSize) {
+            return 0;
+        }
+        return padding;
+    }
 
+    private static void writeHeader(ChannelBuffer buffer, DataPacket packet, int padding) {
         // Version, Padding, eXtension, CSRC Count
         byte b = packet.getVersion().getByte();
         if (padding > 0) {
@@ -178,87 +655,250 @@ public class DataPacket {
         buffer.writeInt((int) packet.timestamp);
         buffer.writeInt((int) packet.ssrc);
 
-        // Write extension headers & data
-        if (packet.hasExtension()) {
+        // Write extension headers & data before the CSRCs (length is expressed in bytes), unless laid out per RFC 3550.
+        boolean standardExtension = packet.hasStandardExtensionLayout();
+        if (packet.hasExtension() && !standardExtension) {
             buffer.writeShort(packet.extensionHeaderData);
-            buffer.writeShort(packet.extensionData.length);
-            buffer.writeBytes(packet.extensionData);
+            buffer.writeShort(packet.extensionDataLength);
+            buffer.writeBytes(packet.extensionData, packet.extensionDataOffset, packet.extensionDataLength);
         }
 
         // Write CCRC's
-        if (packet.getContributingSourcesCount() > 0) {
-            for (Long contributingSourceId : packet.getContributingSourceIds()) {
-                buffer.writeInt(contributingSourceId.intValue());
+        for (int i = 0; i < packet.contributingSourcesCount; i++) {
+            buffer.writeInt((int) packet.contributingSourceIds[i]);
+        }
+
+        // Write RFC 3550 extension headers & data (length is expressed in 32-bit words)
+        if (packet.extensionElementCount > 0) {
+            writeExtensionElements(buffer, packet);
+        } else if (standardExtension) {
+            buffer.writeShort(packet.extensionHeaderData);
+            buffer.writeShort(packet.extensionDataLength / 4);
+            buffer.writeBytes(packet.extensionData, packet.extensionDataOffset, packet.extensionDataLength);
+        }
+    }
+
+    private static void writeExtensionElements(ChannelBuffer buffer, DataPacket packet) {
+        boolean oneByte = packet.canUseOneByteElements();
+        int size = packet.getExtensionElementsSize(oneByte);
+        int paddedSize = (size + 3) & ~3;
+
+        buffer.writeShort(oneByte ? RtpHeaderExtensions.ONE_BYTE_PROFILE : RtpHeaderExtensions.TWO_BYTE_PROFILE);
+        buffer.writeShort(paddedSize / 4);
+        for (int i = 0; i < packet.extensionElementCount; i++) {
+            int length = packet.extensionElementLengths[i];
+            if (oneByte) {
+                buffer.writeByte((packet.extensionElementIds[i] << 4) | (length - 1));
+            } else {
+                buffer.writeByte(packet.extensionElementIds[i]);
+                buffer.writeByte(length);
+            }
+
+            ChannelBuffer value = packet.extensionElementBuffers[i];
+            if (value != null) {
+                buffer.writeBytes(value, value.readerIndex(), length);
+            } else {
+                long v = packet.extensionElementValues[i];
+                for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+                    buffer.writeByte((int) (v >>> shift));
+                }
             }
         }
+        buffer.writeZero(paddedSize - size);
+    }
 
-        // Write RTP data
-        if (packet.data != null) {
-            buffer.writeBytes(packet.data.array());
+    private static void writePadding(ChannelBuffer buffer, int padding) {
+        if (padding <= 0) {
+            return;
         }
 
-        if (padding > 0) {
-            // Final bytes: padding
-            for (int i = 0; i < (padding - 1); i++) {
-                buffer.writeByte(0x00);
+        // Final bytes: padding
+        for (int i = 0; i < (padding - 1); i++) {
+            buffer.writeByte(0x00);
+        }
+
+        // Final byte: the amount of padding bytes that should be discarded.
+        // Unless something's wrong, it will be a multiple of 4.
+        buffer.writeByte(padding);
+    }
+
+    private long getExtensionElementValue(int id, int expectedLength) {
+        int index = this.findExtensionElementIndex(id);
+        if (index >= 0) {
+            if (this.extensionElementLengths[index] != expectedLength) {
+                return -1;
             }
+            ChannelBuffer value = this.extensionElementBuffers[index];
+            if (value == null) {
+                return this.extensionElementValues[index];
+            }
+            return readUnsigned(value, value.readerIndex(), expectedLength);
+        }
 
-            // Final byte: the amount of padding bytes that should be discarded.
-            // Unless something's wrong, it will be a multiple of 4.
-            buffer.writeByte(padding);
+        int offset = this.findRawExtensionElement(id);
+        if ((offset < 0) ||
+            (RtpHeaderExtensions.getElementLength(this.extensionData, this.extensionHeaderData, offset) !=
+             expectedLength)) {
+            return -1;
         }
+        return readUnsigned(this.extensionData, offset, expectedLength);
+    }
 
-        return buffer;
+    private static long readUnsigned(ChannelBuffer buffer, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | buffer.getUnsignedByte(offset + i);
+        }
+        return value;
     }
 
-    // public methods -------------------------------------------------------------------------------------------------
+    private int findRawExtensionElement(int id) {
+        if (this.extensionData == null) {
+            return -1;
+        }
 
-    public ChannelBuffer encode(int fixedBlockSize) {
-        return encode(fixedBlockSize, this);
+        return RtpHeaderExtensions.findElement(this.extensionData, this.extensionDataOffset, this.extensionDataLength,
+                                               this.extensionHeaderData, id);
     }
 
-    public ChannelBuffer encode() {
-        return encode(0, this);
+    private int findExtensionElementIndex(int id) {
+        for (int i = 0; i < this.extensionElementCount; i++) {
+            if (this.extensionElementIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    public void addContributingSourceId(long contributingSourceId) {
-        if (this.contributingSourceIds == null) {
-            this.contributingSourceIds = new ArrayList<Long>();
+    private void putExtensionElement(int id, int length, long value, ChannelBuffer buffer) {
+        if ((id < 1) || (id > RtpHeaderExtensions.MAX_TWO_BYTE_ID)) {
+            throw new IllegalArgumentException("Valid range for element ID is [1;255]");
+        }
+
+        if (this.extensionData != null) {
+            this.importRawExtensionElements();
+        }
+
+        int index = this.findExtensionElementIndex(id);
+        if (index < 0) {
+            if (this.extensionElementCount == MAX_EXTENSION_ELEMENTS) {
+                throw new IllegalArgumentException("Cannot have more than " + MAX_EXTENSION_ELEMENTS + " elements");
+            }
+            if (this.extensionElementIds == null) {
+                this.extensionElementIds = new int[MAX_EXTENSION_ELEMENTS];
+                this.extensionElementLengths = new int[MAX_EXTENSION_ELEMENTS];
+                this.extensionElementValues = new long[MAX_EXTENSION_ELEMENTS];
+                this.extensionElementBuffers = new ChannelBuffer[MAX_EXTENSION_ELEMENTS];
+            }
+            index = this.extensionElementCount++;
         }
 
-        this.contributingSourceIds.add(contributingSourceId);
+        this.extensionElementIds[index] = id;
+        this.extensionElementLengths[index] = length;
+        this.extensionElementValues[index] = value;
+        this.extensionElementBuffers[index] = buffer;
     }
 
-    public int getDataSize() {
-        if (this.data == null) {
-            return 0;
+    private void importRawExtensionElements() {
+        ChannelBuffer raw = this.extensionData;
+        int profile = this.extensionHeaderData;
+        int offset = this.extensionDataOffset;
+        int end = offset + this.extensionDataLength;
+        this.extensionData = null;
+        this.extensionHeaderData = 0;
+
+        boolean oneByte = RtpHeaderExtensions.isOneByteProfile(profile);
+        if (!oneByte && !RtpHeaderExtensions.isTwoByteProfile(profile)) {
+            return;
         }
 
-        return this.data.capacity();
+        int i = offset;
+        while (i < end) {
+            int id = oneByte ? (raw.getUnsignedByte(i) >> 4) : raw.getUnsignedByte(i);
+            if (id == 0) {
+                i++;
+                continue;
+            }
+            if (oneByte && (id == 15)) {
+                break;
+            }
+
+            int dataOffset = RtpHeaderExtensions.findElement(raw, i, end - i, profile, id);
+            if (dataOffset < 0) {
+                break;
+            }
+            int length = RtpHeaderExtensions.getElementLength(raw, profile, dataOffset);
+            this.putExtensionElement(id, length, 0, raw.slice(dataOffset, length));
+            i = dataOffset + length;
+        }
     }
 
-    public int getExtensionDataSize() {
-        if (this.extensionData == null) {
-            return 0;
+    private void clearExtensionElements() {
+        for (int i = 0; i < this.extensionElementCount; i++) {
+            this.extensionElementBuffers[i] = null;
         }
+        this.extensionElementCount = 0;
+    }
 
-        return this.extensionData.length;
+    /**
+     * @return Whether the extension of this packet is to be laid out as RFC 3550 mandates (see class documentation).
+     */
+    private boolean hasStandardExtensionLayout() {
+        if (this.extensionElementCount > 0) {
+            return true;
+        }
+
+        // Raw data in a RFC 8285 format is always a whole number of words, unless decoded from an odd efflux packet.
+        return (this.extensionData != null) && RtpHeaderExtensions.isElementProfile(this.extensionHeaderData) &&
+               ((this.extensionDataLength % 4) == 0);
     }
 
-    public int getContributingSourcesCount() {
-        if (this.contributingSourceIds == null) {
-            return 0;
+    private boolean canUseOneByteElements() {
+        for (int i = 0; i < this.extensionElementCount; i++) {
+            if ((this.extensionElementIds[i] > RtpHeaderExtensions.MAX_ONE_BYTE_ID) ||
+                (this.extensionElementLengths[i] < 1) ||
+                (this.extensionElementLengths[i] > RtpHeaderExtensions.MAX_ONE_BYTE_LENGTH)) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return this.contributingSourceIds.size();
+    private int getExtensionElementsSize(boolean oneByte) {
+        int size = 0;
+        for (int i = 0; i < this.extensionElementCount; i++) {
+            size += (oneByte ? 1 : 2) + this.extensionElementLengths[i];
+        }
+        return size;
     }
 
-    public void setExtensionHeader(short extensionHeaderData, byte[] extensionData) {
-        if (extensionData.length > 65536) {
-            throw new IllegalArgumentException("Extension data cannot exceed 65536 bytes");
+    private void reset() {
+        this.version = RtpVersion.V2;
+        this.marker = false;
+        this.payloadType = 0;
+        this.sequenceNumber = 0;
+        this.timestamp = 0;
+        this.ssrc = 0;
+        this.extensionHeaderData = 0;
+        this.extensionData = null;
+        this.clearExtensionElements();
+        // Keep the array around so that it can be reused for the next packet.
+        this.contributingSourcesCount = 0;
+        this.contributingSourceIdList = null;
+        this.data = null;
+    }
+
+    void reuse() {
+        this.referenceCount = 1;
+    }
+
+    private int getEncodedHeaderSize() {
+        int size = 12; // Fixed width
+        if (this.hasExtension()) {
+            size += 4 + this.getExtensionDataSize();
         }
-        this.extensionHeaderData = extensionHeaderData;
-        this.extensionData = extensionData;
+        size += this.getContributingSourcesCount() * 4;
+        return size;
     }
 
     // getters & setters ----------------------------------------------------------------------------------------------
@@ -275,7 +915,7 @@ public class DataPacket {
     }
 
     public boolean hasExtension() {
-        return this.extensionData != null;
+        return (this.extensionData != null) || (this.extensionElementCount > 0);
     }
 
     public boolean hasMarker() {
@@ -325,19 +965,66 @@ public class DataPacket {
     }
 
     public short getExtensionHeaderData() {
+        if (this.extensionElementCount > 0) {
+            return (short) (this.canUseOneByteElements() ? RtpHeaderExtensions.ONE_BYTE_PROFILE :
+                                                           RtpHeaderExtensions.TWO_BYTE_PROFILE);
+        }
         return extensionHeaderData;
     }
 
+    /**
+     * @return The raw header extension data (a copy, unless it was set through
+     *         {@link #setExtensionHeader(short, byte[])}), or {@code null} if the packet has no raw extension data.
+     */
     public byte[] getExtensionData() {
-        return extensionData;
+        if (this.extensionData == null) {
+            return null;
+        }
+
+        if (this.extensionData.hasArray() && (this.extensionDataOffset == 0) &&
+            (this.extensionData.arrayOffset() == 0) &&
+            (this.extensionData.array().length == this.extensionDataLength)) {
+            return this.extensionData.array();
+        }
+
+        byte[] bytes = new byte[this.extensionDataLength];
+        this.extensionData.getBytes(this.extensionDataOffset, bytes);
+        return bytes;
     }
 
+    /**
+     * CSRCs are stored as primitives; prefer {@link #getContributingSourcesCount()} and
+     * {@link #getContributingSourceId(int)}, which don't allocate.
+     *
+     * @return An unmodifiable list with the CSRCs of this packet (built on first call), or {@code null} if it has none.
+     */
     public List<Long> getContributingSourceIds() {
-        return contributingSourceIds;
+        if (this.contributingSourcesCount == 0) {
+            return null;
+        }
+
+        if (this.contributingSourceIdList == null) {
+            List<Long> list = new ArrayList<Long>(this.contributingSourcesCount);
+            for (int i = 0; i < this.contributingSourcesCount; i++) {
+                list.add(this.contributingSourceIds[i]);
+            }
+            this.contributingSourceIdList = Collections.unmodifiableList(list);
+        }
+
+        return this.contributingSourceIdList;
     }
 
     public void setContributingSourceIds(List<Long> contributingSourceIds) {
-        this.contributingSourceIds = contributingSourceIds;
+        this.contributingSourcesCount = 0;
+        this.contributingSourceIdList = null;
+        if (contributingSourceIds != null) {
+            if (contributingSourceIds.size() > MAX_CONTRIBUTING_SOURCES) {
+                throw new IllegalArgumentException("A RTP packet cannot have more than 15 CSRCs");
+            }
+            for (Long contributingSourceId : contributingSourceIds) {
+                this.addContributingSourceId(contributingSourceId);
+            }
+        }
     }
 
     public ChannelBuffer getData() {
@@ -349,7 +1036,15 @@ public class DataPacket {
     }
 
     public byte[] getDataAsArray() {
-        return this.data.array();
+        // Avoid the copy when the backing array is exactly the payload (e.g. data set through setData(byte[])).
+        if (this.data.hasArray() && (this.data.arrayOffset() == 0) && (this.data.readerIndex() == 0) &&
+            (this.data.array().length == this.data.readableBytes())) {
+            return this.data.array();
+        }
+
+        byte[] array = new byte[this.data.readableBytes()];
+        this.data.getBytes(this.data.readerIndex(), array);
+        return array;
     }
 
     public void setData(byte[] data) {
@@ -369,7 +1064,7 @@ public class DataPacket {
                 .append(", SN=").append(this.sequenceNumber)
                 .append(", TS=").append(this.timestamp)
                 .append(", SSRC=").append(this.ssrc)
-                .append(", CSRCs=").append(this.contributingSourceIds)
+                .append(", CSRCs=").append(this.getContributingSourceIds())
                 .append(", data=").append(this.getDataSize()).append(" bytes}")
                 .toString();
     }
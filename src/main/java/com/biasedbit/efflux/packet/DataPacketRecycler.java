@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.packet;
+
+/**
+ * Bounded pool of {@link DataPacket} instances.
+ * <p/>
+ * Packets are obtained through {@link DataPacket#decode(org.jboss.netty.buffer.ChannelBuffer, DataPacketRecycler)}
+ * and return here when their reference count drops to zero (see {@link DataPacket#release()}). Packets released when
+ * the pool is full are left for the garbage collector. Usually one instance is used per channel, but packets may be
+ * released from any thread.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DataPacketRecycler {
+
+    // configuration defaults -----------------------------------------------------------------------------------------
+
+    private static final int CAPACITY = 64;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final DataPacket[] pool;
+    private int size;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public DataPacketRecycler() {
+        this(CAPACITY);
+    }
+
+    public DataPacketRecycler(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be > 0");
+        }
+        this.pool = new DataPacket[capacity];
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public int getPooledPackets() {
+        synchronized (this.pool) {
+            return this.size;
+        }
+    }
+
+    public int getCapacity() {
+        return this.pool.length;
+    }
+
+    // protected helpers ----------------------------------------------------------------------------------------------
+
+    DataPacket acquire() {
+        DataPacket packet = null;
+        synchronized (this.pool) {
+            if (this.size > 0) {
+                packet = this.pool[--this.size];
+                this.pool[this.size] = null;
+            }
+        }
+
+        if (packet == null) {
+            return new DataPacket(this);
+        }
+
+        packet.reuse();
+        return packet;
+    }
+
+    void recycle(DataPacket packet) {
+        synchronized (this.pool) {
+            if (this.size < this.pool.length) {
+                this.pool[this.size++] = packet;
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.packet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Read-only view over an encoded RTP packet.
+ * <p/>
+ * Header fields are read straight from the underlying buffer, laid out as {@link DataPacket} encodes them, whenever
+ * they are requested; no copies are made and nothing is allocated unless the payload or a full {@link DataPacket} is
+ * requested. This is meant for code that only looks at a few header fields (e.g. to make routing decisions) before
+ * forwarding or dropping the packet.
+ * <p/>
+ * The view does not modify the indexes of the buffer, but it relies on its contents remaining unchanged for as long as
+ * the view is used. Instances are not thread safe.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DataPacketView {
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final ChannelBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final int headerSize;
+    private final int dataSize;
+    // Absolute indexes of the extension (its profile field) and of the first CSRC.
+    private final int extensionOffset;
+    private final int contributingSourcesOffset;
+    private DataPacket packet;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    private DataPacketView(ChannelBuffer buffer, int offset, int length, int headerSize, int dataSize,
+                           int extensionOffset, int contributingSourcesOffset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.headerSize = headerSize;
+        this.dataSize = dataSize;
+        this.extensionOffset = extensionOffset;
+        this.contributingSourcesOffset = contributingSourcesOffset;
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a view over the readable bytes of a buffer containing a single RTP packet.
+     * <p/>
+     * Only the octets required to validate the packet's structure (CSRC count, extension length and padding) are
+     * read.
+     *
+     * @param buffer Buffer containing the packet.
+     *
+     * @return A view over the packet.
+     *
+     * @throws IllegalArgumentException If the buffer does not contain a structurally valid RTP packet.
+     */
+    public static DataPacketView wrap(ChannelBuffer buffer) throws IllegalArgumentException {
+        int offset = buffer.readerIndex();
+        int length = buffer.readableBytes();
+        if (length < 12) {
+            throw new IllegalArgumentException("A RTP packet must be at least 12 octets long");
+        }
+
+        byte b = buffer.getByte(offset);
+        RtpVersion.fromByte(b);
+        int headerSize = 12;
+        int extensionOffset = offset + headerSize;
+        int contributingSourcesOffset = offset + headerSize;
+        if ((b & 0x10) == 0) {
+            headerSize += (b & 0x0f) * 4;
+        } else if (RtpHeaderExtensions.hasStandardLayout(buffer, offset, length)) {
+            headerSize += (b & 0x0f) * 4;
+            extensionOffset = offset + headerSize;
+            headerSize += 4 + (buffer.getUnsignedShort(extensionOffset + 2) * 4);
+        } else {
+            if (length < (headerSize + 4)) {
+                throw new IllegalArgumentException("RTP packet too short for its header extension");
+            }
+            headerSize += 4 + buffer.getUnsignedShort(extensionOffset + 2);
+            contributingSourcesOffset = offset + headerSize;
+            headerSize += (b & 0x0f) * 4;
+        }
+        if (length < headerSize) {
+            throw new IllegalArgumentException("RTP packet too short for its header");
+        }
+
+        int dataSize = length - headerSize;
+        if ((b & 0x20) > 0) {
+            dataSize -= buffer.getUnsignedByte(offset + length - 1);
+            if (dataSize < 0) {
+                throw new IllegalArgumentException("Padding length exceeds RTP packet size");
+            }
+        }
+
+        return new DataPacketView(buffer, offset, length, headerSize, dataSize, extensionOffset,
+                                  contributingSourcesOffset);
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public RtpVersion getVersion() {
+        return RtpVersion.fromByte(this.buffer.getByte(this.offset));
+    }
+
+    public boolean hasPadding() {
+        return (this.buffer.getByte(this.offset) & 0x20) > 0;
+    }
+
+    public boolean hasExtension() {
+        return (this.buffer.getByte(this.offset) & 0x10) > 0;
+    }
+
+    public int getContributingSourcesCount() {
+        return this.buffer.getByte(this.offset) & 0x0f;
+    }
+
+    public boolean hasMarker() {
+        return (this.buffer.getByte(this.offset + 1) & 0x80) > 0;
+    }
+
+    public int getPayloadType() {
+        return this.buffer.getByte(this.offset + 1) & 0x7f;
+    }
+
+    public int getSequenceNumber() {
+        return this.buffer.getUnsignedShort(this.offset + 2);
+    }
+
+    public long getTimestamp() {
+        return this.buffer.getUnsignedInt(this.offset + 4);
+    }
+
+    public long getSsrc() {
+        return this.buffer.getUnsignedInt(this.offset + 8);
+    }
+
+    public long getContributingSourceId(int index) {
+        if ((index < 0) || (index >= this.getContributingSourcesCount())) {
+            throw new IndexOutOfBoundsException("Invalid CSRC index: " + index);
+        }
+
+        return this.buffer.getUnsignedInt(this.contributingSourcesOffset + (index * 4));
+    }
+
+    public short getExtensionHeaderData() {
+        if (!this.hasExtension()) {
+            return 0;
+        }
+
+        return this.buffer.getShort(this.extensionOffset);
+    }
+
+    public int getExtensionDataSize() {
+        if (!this.hasExtension()) {
+            return 0;
+        }
+
+        if (this.extensionOffset < this.contributingSourcesOffset) {
+            // Laid out before the CSRCs, length in bytes.
+            return this.buffer.getUnsignedShort(this.extensionOffset + 2);
+        }
+
+        return this.buffer.getUnsignedShort(this.extensionOffset + 2) * 4;
+    }
+
+    /**
+     * @param id Element ID.
+     *
+     * @return Absolute index (in the underlying buffer) of the data of the RFC 8285 header extension element with the
+     *         given ID, or -1 if there is no such element.
+     * @see RtpHeaderExtensions
+     */
+    public int findExtensionElement(int id) {
+        if (!this.hasExtension()) {
+            return -1;
+        }
+
+        return RtpHeaderExtensions.findElement(this.buffer, this.extensionOffset + 4, this.getExtensionDataSize(),
+                                               this.getExtensionHeaderData(), id);
+    }
+
+    /**
+     * @param id Element ID negotiated for abs-send-time.
+     *
+     * @return The 24 bit abs-send-time value, or -1 if the packet has no such (well formed) element.
+     */
+    public long getAbsSendTime(int id) {
+        int elementOffset = this.findExtensionElement(id, 3);
+        return elementOffset < 0 ? -1 : RtpHeaderExtensions.readAbsSendTime(this.buffer, elementOffset);
+    }
+
+    /**
+     * @param id Element ID negotiated for the client-to-mixer audio level (RFC 6464).
+     *
+     * @return The audio level, in -dBov, or -1 if the packet has no such (well formed) element.
+     */
+    public int getAudioLevel(int id) {
+        int elementOffset = this.findExtensionElement(id, 1);
+        return elementOffset < 0 ? -1 : RtpHeaderExtensions.readAudioLevel(this.buffer, elementOffset);
+    }
+
+    /**
+     * @param id Element ID negotiated for the client-to-mixer audio level (RFC 6464).
+     *
+     * @return The voice activity flag of the audio level element, {@code false} if the packet has no such element.
+     */
+    public boolean hasVoiceActivity(int id) {
+        int elementOffset = this.findExtensionElement(id, 1);
+        return (elementOffset >= 0) && RtpHeaderExtensions.readVoiceActivity(this.buffer, elementOffset);
+    }
+
+    /**
+     * @param id Element ID negotiated for transport-wide congestion control.
+     *
+     * @return The transport-wide sequence number, or -1 if the packet has no such (well formed) element.
+     */
+    public int getTransportSequenceNumber(int id) {
+        int elementOffset = this.findExtensionElement(id, 2);
+        return elementOffset < 0 ? -1 : RtpHeaderExtensions.readTransportSequenceNumber(this.buffer, elementOffset);
+    }
+
+    /**
+     * @return A slice of the underlying buffer with the payload of the packet (excluding padding).
+     */
+    public ChannelBuffer getData() {
+        return this.buffer.slice(this.offset + this.headerSize, this.dataSize);
+    }
+
+    /**
+     * Builds (on first call) a full {@link DataPacket} out of this view. The payload of the packet is a slice of the
+     * underlying buffer, so the same rules of {@link DataPacket#decode(ChannelBuffer, boolean)} apply.
+     *
+     * @return The packet this view represents.
+     */
+    public DataPacket toDataPacket() {
+        if (this.packet == null) {
+            this.packet = DataPacket.decode(this.buffer.slice(this.offset, this.length), true);
+        }
+
+        return this.packet;
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private int findExtensionElement(int id, int expectedLength) {
+        int elementOffset = this.findExtensionElement(id);
+        if ((elementOffset < 0) ||
+            (RtpHeaderExtensions.getElementLength(this.buffer, this.getExtensionHeaderData(), elementOffset) !=
+             expectedLength)) {
+            return -1;
+        }
+        return elementOffset;
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public ChannelBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getHeaderSize() {
+        return headerSize;
+    }
+
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    // low level overrides --------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("DataPacketView{V=").append(this.getVersion())
+                .append(", X=").append(this.hasExtension())
+                .append(", CC=").append(this.getContributingSourcesCount())
+                .append(", M=").append(this.hasMarker())
+                .append(", PT=").append(this.getPayloadType())
+                .append(", SN=").append(this.getSequenceNumber())
+                .append(", TS=").append(this.getTimestamp())
+                .append(", SSRC=").append(this.getSsrc())
+                .append(", data=").append(this.dataSize).append(" bytes}")
+                .toString();
+    }
+}
@@ -56,68 +56,8 @@ public class ReceiverReportPacket extends AbstractReportPacket {
     }
 
     public static ChannelBuffer encode(int currentCompoundLength, int fixedBlockSize, ReceiverReportPacket packet) {
-        if ((currentCompoundLength < 0) || ((currentCompoundLength % 4) > 0)) {
-            throw new IllegalArgumentException("Current compound length must be a non-negative multiple of 4");
-        }
-        if ((fixedBlockSize < 0) || ((fixedBlockSize % 4) > 0)) {
-            throw new IllegalArgumentException("Padding modulus must be a non-negative multiple of 4");
-        }
-
-        // Common header + sender ssrc
-        int size = 4 + 4;
-        ChannelBuffer buffer;
-        if (packet.receptionReports != null) {
-            size += packet.receptionReports.size() * 24;
-        }
-
-        // If packet was configured to have padding, calculate padding and add it.
-        int padding = 0;
-        if (fixedBlockSize > 0) {
-            // If padding modulus is > 0 then the padding is equal to:
-            // (global size of the compound RTCP packet) mod (block size)
-            // Block size alignment might be necessary for some encryption algorithms
-            // RFC section 6.4.1
-            padding = fixedBlockSize - ((size + currentCompoundLength) % fixedBlockSize);
-            if (padding == fixedBlockSize) {
-                padding = 0;
-            }
-        }
-        size += padding;
-
-        // Allocate the buffer and write contents
-        buffer = ChannelBuffers.buffer(size);
-        // First byte: Version (2b), Padding (1b), RR count (5b)
-        byte b = packet.getVersion().getByte();
-        if (padding > 0) {
-            b |= 0x20;
-        }
-        b |= packet.getReceptionReportCount();
-        buffer.writeByte(b);
-        // Second byte: Packet Type
-        buffer.writeByte(packet.type.getByte());
-        // Third byte: total length of the packet, in multiples of 4 bytes (32bit words) - 1
-        int sizeInOctets = (size / 4) - 1;
-        buffer.writeShort(sizeInOctets);
-        // Next 24 bytes: ssrc, ntp timestamp, rtp timestamp, octet count, packet count
-        buffer.writeInt((int) packet.senderSsrc);
-        // Payload: report blocks
-        if (packet.getReceptionReportCount() > 0) {
-            for (ReceptionReport block : packet.receptionReports) {
-                buffer.writeBytes(block.encode());
-            }
-        }
-
-        if (padding > 0) {
-            // Final bytes: padding
-            for (int i = 0; i < (padding - 1); i++) {
-                buffer.writeByte(0x00);
-            }
-
-            // Final byte: the amount of padding bytes that should be discarded.
-            // Unless something's wrong, it will be a multiple of 4.
-            buffer.writeByte(padding);
-        }
-
+        ChannelBuffer buffer = ChannelBuffers.buffer(packet.getEncodedSize(currentCompoundLength, fixedBlockSize));
+        packet.encodeInto(buffer, currentCompoundLength, fixedBlockSize);
         return buffer;
     }
 
@@ -133,6 +73,30 @@ public class ReceiverReportPacket extends AbstractReportPacket {
         return encode(0, 0, this);
     }
 
+    @Override
+    public int getEncodedSize(int currentCompoundLength, int fixedBlockSize) {
+        int size = this.getUnpaddedSize();
+        return size + calculatePadding(currentCompoundLength, fixedBlockSize, size);
+    }
+
+    @Override
+    public void encodeInto(ChannelBuffer buffer, int currentCompoundLength, int fixedBlockSize) {
+        int size = this.getUnpaddedSize();
+        int padding = calculatePadding(currentCompoundLength, fixedBlockSize, size);
+        writeHeader(buffer, this, this.getReceptionReportCount(), padding, size + padding);
+        buffer.writeInt((int) this.senderSsrc);
+        // Payload: report blocks
+        this.writeReceptionReports(buffer);
+        writePadding(buffer, padding);
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private int getUnpaddedSize() {
+        // Common header + sender ssrc
+        return 4 + 4 + (this.getReceptionReportCount() * ReceptionReport.ENCODED_SIZE);
+    }
+
     // low level overrides --------------------------------------------------------------------------------------------
 
     @Override
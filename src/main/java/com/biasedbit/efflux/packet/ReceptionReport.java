@@ -24,6 +24,10 @@ import org.jboss.netty.buffer.ChannelBuffers;
  */
 public class ReceptionReport {
 
+    // constants ------------------------------------------------------------------------------------------------------
+
+    public static final int ENCODED_SIZE = 24; // 4 + 1 + 3 + 4 + 4 + 4 + 4
+
     // internal vars --------------------------------------------------------------------------------------------------
 
     private long ssrc;
@@ -42,14 +46,8 @@ public class ReceptionReport {
     // public static methods ------------------------------------------------------------------------------------------
 
     public static ChannelBuffer encode(ReceptionReport block) {
-        ChannelBuffer buffer = ChannelBuffers.buffer(24); // 4 + 1 + 3 + 4 + 4 + 4 + 4
-        buffer.writeInt((int) block.ssrc);
-        buffer.writeByte(block.fractionLost);
-        buffer.writeMedium(block.cumulativeNumberOfPacketsLost);
-        buffer.writeInt((int) block.extendedHighestSequenceNumberReceived);
-        buffer.writeInt((int) block.interArrivalJitter);
-        buffer.writeInt((int) block.lastSenderReport);
-        buffer.writeInt((int) block.delaySinceLastSenderReport);
+        ChannelBuffer buffer = ChannelBuffers.buffer(ENCODED_SIZE);
+        block.encodeInto(buffer);
         return buffer;
     }
 
@@ -71,6 +69,21 @@ public class ReceptionReport {
         return encode(this);
     }
 
+    /**
+     * Writes this report block (always {@link #ENCODED_SIZE} octets) straight into {@code buffer}.
+     *
+     * @param buffer Destination buffer.
+     */
+    public void encodeInto(ChannelBuffer buffer) {
+        buffer.writeInt((int) this.ssrc);
+        buffer.writeByte(this.fractionLost);
+        buffer.writeMedium(this.cumulativeNumberOfPacketsLost);
+        buffer.writeInt((int) this.extendedHighestSequenceNumberReceived);
+        buffer.writeInt((int) this.interArrivalJitter);
+        buffer.writeInt((int) this.lastSenderReport);
+        buffer.writeInt((int) this.delaySinceLastSenderReport);
+    }
+
     // getters & setters ----------------------------------------------------------------------------------------------
 
     public long getSsrc() {
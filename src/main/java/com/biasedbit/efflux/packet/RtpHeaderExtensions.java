@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.packet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Helpers to read RTP header extension elements, as defined by RFC 8285 (one-byte and two-byte header formats),
+ * straight from the buffer that holds them.
+ * <p/>
+ * Elements are located on demand by walking the extension data; nothing is copied or allocated. Offsets returned and
+ * taken by these methods are absolute buffer indexes.
+ * <p/>
+ * One-byte header (profile 0xBEDE), IDs 1 to 14, 1 to 16 octets of data:
+ * <pre>
+ *  0 1 2 3 4 5 6 7
+ * +-+-+-+-+-+-+-+-+
+ * |  ID   |  len  |  (len = length - 1)
+ * +-+-+-+-+-+-+-+-+
+ * </pre>
+ * Two-byte header (profile 0x100X), IDs 1 to 255, 0 to 255 octets of data:
+ * <pre>
+ *  0                   1
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |       ID      |     length    |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * </pre>
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public final class RtpHeaderExtensions {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    public static final int ONE_BYTE_PROFILE = 0xbede;
+    public static final int TWO_BYTE_PROFILE = 0x1000;
+    public static final int MAX_ONE_BYTE_ID = 14;
+    public static final int MAX_ONE_BYTE_LENGTH = 16;
+    public static final int MAX_TWO_BYTE_ID = 255;
+    public static final int MAX_TWO_BYTE_LENGTH = 255;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    private RtpHeaderExtensions() {
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    public static boolean isOneByteProfile(int profile) {
+        return (profile & 0xffff) == ONE_BYTE_PROFILE;
+    }
+
+    public static boolean isTwoByteProfile(int profile) {
+        return (profile & 0xfff0) == TWO_BYTE_PROFILE;
+    }
+
+    /**
+     * @return Whether the profile is one of the RFC 8285 profiles (one-byte or two-byte header format).
+     */
+    public static boolean isElementProfile(int profile) {
+        return isOneByteProfile(profile) || isTwoByteProfile(profile);
+    }
+
+    /**
+     * Tells how the header extension of an encoded RTP packet is laid out. Extensions in the RFC 8285 formats follow
+     * the CSRCs and have their length expressed in 32-bit words, as RFC 3550 mandates; {@link DataPacket} lays out
+     * extensions in any other format before the CSRCs, with their length expressed in bytes.
+     *
+     * @param buffer Buffer holding the packet.
+     * @param offset Absolute index of the first octet of the packet.
+     * @param length Length of the packet.
+     *
+     * @return {@code true} if a RFC 8285 extension that fits in the packet follows the CSRCs, {@code false} otherwise.
+     */
+    public static boolean hasStandardLayout(ChannelBuffer buffer, int offset, int length) {
+        int extensionOffset = 12 + ((buffer.getByte(offset) & 0x0f) * 4);
+        if (length < (extensionOffset + 4)) {
+            return false;
+        }
+
+        int profile = buffer.getUnsignedShort(offset + extensionOffset);
+        int extensionLength = buffer.getUnsignedShort(offset + extensionOffset + 2) * 4;
+        return isElementProfile(profile) && ((extensionOffset + 4 + extensionLength) <= length);
+    }
+
+    /**
+     * Locates an element within header extension data.
+     *
+     * @param buffer  Buffer holding the extension data.
+     * @param offset  Absolute index of the first octet of extension data (right after the profile and length fields).
+     * @param length  Length of the extension data.
+     * @param profile Value of the "defined by profile" field of the extension.
+     * @param id      Identifier of the element to find.
+     *
+     * @return Absolute index of the first octet of the element's data, or -1 if the profile is not one of the RFC 8285
+     *         profiles, the element isn't present (ID 0 never is, it's padding) or the extension data is malformed.
+     */
+    public static int findElement(ChannelBuffer buffer, int offset, int length, int profile, int id) {
+        if (id <= 0) {
+            return -1;
+        }
+
+        int end = offset + length;
+        if (isOneByteProfile(profile)) {
+            int i = offset;
+            while (i < end) {
+                int elementId = buffer.getUnsignedByte(i) >> 4;
+                if (elementId == 0) {
+                    // Padding, a single octet whatever its length field says.
+                    i++;
+                    continue;
+                }
+                if (elementId == 15) {
+                    // Reserved ID, processing must stop.
+                    return -1;
+                }
+                int elementLength = (buffer.getUnsignedByte(i) & 0x0f) + 1;
+                if ((i + 1 + elementLength) > end) {
+                    return -1;
+                }
+                if (elementId == id) {
+                    return i + 1;
+                }
+                i += 1 + elementLength;
+            }
+        } else if (isTwoByteProfile(profile)) {
+            int i = offset;
+            while (i < end) {
+                int elementId = buffer.getUnsignedByte(i);
+                if (elementId == 0) {
+                    // Padding.
+                    i++;
+                    continue;
+                }
+
+                if ((i + 2) > end) {
+                    return -1;
+                }
+                int elementLength = buffer.getUnsignedByte(i + 1);
+                if ((i + 2 + elementLength) > end) {
+                    return -1;
+                }
+                if (elementId == id) {
+                    return i + 2;
+                }
+                i += 2 + elementLength;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param buffer        Buffer holding the extension data.
+     * @param profile       Value of the "defined by profile" field of the extension.
+     * @param elementOffset Index returned by {@link #findElement(ChannelBuffer, int, int, int, int)}.
+     *
+     * @return Length of the element's data.
+     */
+    public static int getElementLength(ChannelBuffer buffer, int profile, int elementOffset) {
+        if (isOneByteProfile(profile)) {
+            return (buffer.getUnsignedByte(elementOffset - 1) & 0x0f) + 1;
+        } else {
+            return buffer.getUnsignedByte(elementOffset - 1);
+        }
+    }
+
+    /**
+     * Reads an abs-send-time element: 6.18 fixed point seconds, 24 bits.
+     */
+    public static long readAbsSendTime(ChannelBuffer buffer, int elementOffset) {
+        return buffer.getUnsignedMedium(elementOffset);
+    }
+
+    /**
+     * Reads the level of a client-to-mixer audio level element (RFC 6464): 0 to 127, in -dBov.
+     */
+    public static int readAudioLevel(ChannelBuffer buffer, int elementOffset) {
+        return buffer.getUnsignedByte(elementOffset) & 0x7f;
+    }
+
+    /**
+     * Reads the voice activity flag of a client-to-mixer audio level element (RFC 6464).
+     */
+    public static boolean readVoiceActivity(ChannelBuffer buffer, int elementOffset) {
+        return (buffer.getUnsignedByte(elementOffset) & 0x80) != 0;
+    }
+
+    /**
+     * Reads a transport-wide congestion control sequence number element (16 bits).
+     */
+    public static int readTransportSequenceNumber(ChannelBuffer buffer, int elementOffset) {
+        return buffer.getUnsignedShort(elementOffset);
+    }
+}
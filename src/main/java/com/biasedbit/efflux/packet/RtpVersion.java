@@ -27,6 +27,9 @@ public enum RtpVersion {
     V1((byte) 0x40),
     V0((byte) 0x00);
 
+    // Cached since values() returns a new copy of the array on every call. Starts from version 2, the most common.
+    private static final RtpVersion[] VERSIONS = values();
+
     // internal vars --------------------------------------------------------------------------------------------------
 
     private final byte b;
@@ -41,8 +44,7 @@ public enum RtpVersion {
 
     public static RtpVersion fromByte(byte b) throws IllegalArgumentException {
         byte tmp = (byte) (b & 0xc0);
-        // Starts from version 2, which is the most common.
-        for (RtpVersion version : values()) {
+        for (RtpVersion version : VERSIONS) {
             if (version.getByte() == tmp) {
                 return version;
             }
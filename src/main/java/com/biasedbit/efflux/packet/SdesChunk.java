@@ -32,6 +32,8 @@ public class SdesChunk {
 
     private long ssrc;
     private List<SdesChunkItem> items;
+    // Encoded form, built on first encode and dropped whenever the chunk is modified.
+    private volatile ChannelBuffer encoded;
 
     // constructors ---------------------------------------------------------------------------------------------------
 
@@ -73,44 +75,8 @@ public class SdesChunk {
     }
 
     public static ChannelBuffer encode(SdesChunk chunk) {
-        ChannelBuffer buffer;
-        if (chunk.items == null) {
-            // Allocate 8 bytes: 4 for ssrc, 1 for null item and other 3 null octets for 32 bit alignment
-            buffer = ChannelBuffers.buffer(8);
-            buffer.writeInt((int) chunk.ssrc); // ssrc
-            buffer.writeInt(0); // 4 null octets (1 for null item and 3 for 32bit alignment)
-            return buffer;
-        } else {
-            // Start with SSRC
-            int size = 4;
-            // Add the length of each item
-            List<ChannelBuffer> encodedChunkItems = new ArrayList<ChannelBuffer>(chunk.items.size());
-            for (SdesChunkItem item : chunk.items) {
-                ChannelBuffer encodedChunk = item.encode();
-                encodedChunkItems.add(encodedChunk);
-                size += encodedChunk.readableBytes();
-            }
-            // Add the null item
-            size += 1;
-            // Calculate padding and add it (for 32bit alignment).
-            int padding = 4 - (size % 4);
-            if (padding == 4) {
-                padding = 0;
-            }
-            size += padding;
-
-            // Write the buffer contents: SSRC, chunks, null item and padding
-            buffer = ChannelBuffers.buffer(size);
-            buffer.writeInt((int) chunk.ssrc);
-            for (ChannelBuffer encodedChunk : encodedChunkItems) {
-                buffer.writeBytes(encodedChunk);
-            }
-            buffer.writeByte(0x00);
-            for (int i = 0; i < padding; i++) {
-                buffer.writeByte(0x00);
-            }
-        }
-
+        ChannelBuffer buffer = ChannelBuffers.buffer(chunk.getEncodedSize());
+        chunk.encodeInto(buffer);
         return buffer;
     }
 
@@ -120,6 +86,55 @@ public class SdesChunk {
         return encode(this);
     }
 
+    /**
+     * @return Size, in octets, of this chunk once encoded (SSRC, items, null item and 32 bit alignment padding).
+     */
+    public int getEncodedSize() {
+        ChannelBuffer cached = this.encoded;
+        if (cached != null) {
+            return cached.readableBytes();
+        }
+
+        // Start with SSRC
+        int size = 4;
+        if (this.items != null) {
+            // Add the length of each item
+            for (SdesChunkItem item : this.items) {
+                size += item.getEncodedSize();
+            }
+        }
+        // Add the null item and padding (for 32bit alignment); without items this is 4 null octets.
+        return (size + 1 + 3) & ~3;
+    }
+
+    /**
+     * Writes this chunk straight into {@code buffer}, which must have at least {@link #getEncodedSize()} writable
+     * bytes.
+     * <p/>
+     * The encoded form is kept after the first call so that encoding the same chunk over and over (such as the local
+     * participant's SDES, sent on every RTCP interval) is a plain byte copy. Any change made through this class drops
+     * the cached form.
+     *
+     * @param buffer Destination buffer.
+     */
+    public void encodeInto(ChannelBuffer buffer) {
+        ChannelBuffer cached = this.encoded;
+        if (cached == null) {
+            cached = ChannelBuffers.buffer(this.getEncodedSize());
+            cached.writeInt((int) this.ssrc);
+            if (this.items != null) {
+                for (SdesChunkItem item : this.items) {
+                    item.encodeInto(cached);
+                }
+            }
+            // Null item and padding up to the 32bit boundary.
+            cached.writeZero(cached.writableBytes());
+            this.encoded = cached;
+        }
+
+        buffer.writeBytes(cached, cached.readerIndex(), cached.readableBytes());
+    }
+
     public boolean addItem(SdesChunkItem item) {
         if (item.getType() == SdesChunkItem.Type.NULL) {
             throw new IllegalArgumentException("You don't need to manually add the null/end element");
@@ -129,6 +144,7 @@ public class SdesChunk {
             this.items = new ArrayList<SdesChunkItem>();
         }
 
+        this.encoded = null;
         return this.items.add(item);
     }
 
@@ -157,6 +173,7 @@ public class SdesChunk {
             throw new IllegalArgumentException("Valid range for SSRC is [0;0xffffffff]");
         }
         this.ssrc = ssrc;
+        this.encoded = null;
     }
 
     public List<SdesChunkItem> getItems() {
@@ -167,8 +184,15 @@ public class SdesChunk {
         return Collections.unmodifiableList(this.items);
     }
 
+    /**
+     * Replaces the items of this chunk. The list is used as is, so changing it afterwards will not be picked up by an
+     * already encoded chunk; call this method again instead.
+     *
+     * @param items New list of items.
+     */
     public void setItems(List<SdesChunkItem> items) {
         this.items = items;
+        this.encoded = null;
     }
 
     // low level overrides --------------------------------------------------------------------------------------------
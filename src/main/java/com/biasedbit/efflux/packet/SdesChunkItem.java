@@ -16,9 +16,9 @@
 
 package com.biasedbit.efflux.packet;
 
+import com.biasedbit.efflux.util.ByteUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.util.CharsetUtil;
 
 /**
  * @author <a:mailto="bruno.carvalho@wit-software.com" />Bruno de Carvalho</a>
@@ -40,34 +40,57 @@ public class SdesChunkItem {
     // public methods -------------------------------------------------------------------------------------------------
 
     public ChannelBuffer encode() {
+        ChannelBuffer buffer = ChannelBuffers.buffer(this.getEncodedSize());
+        this.encodeInto(buffer);
+        return buffer;
+    }
+
+    /**
+     * @return Size, in octets, of this item once encoded.
+     */
+    public int getEncodedSize() {
         // Technically, this never happens as you're not allowed to add NULL items to a SdesChunk instance, but...
         if (this.type == Type.NULL) {
-            ChannelBuffer buffer = ChannelBuffers.buffer(1);
+            return 1;
+        }
+
+        // Type (1b), length (1b), value (xb)
+        return 2 + this.getValueLength();
+    }
+
+    /**
+     * Writes this item straight into {@code buffer}, which must have at least {@link #getEncodedSize()} writable
+     * bytes.
+     *
+     * @param buffer Destination buffer.
+     */
+    public void encodeInto(ChannelBuffer buffer) {
+        if (this.type == Type.NULL) {
             buffer.writeByte(0x00);
-            return buffer;
+            return;
         }
 
-        byte[] valueBytes;
+        buffer.writeByte(this.type.getByte());
+        buffer.writeByte(this.getValueLength());
         if (this.value != null) {
             // RFC section 6.5 mandates that this must be UTF8
             // http://tools.ietf.org/html/rfc3550#section-6.5
-            valueBytes = this.value.getBytes(CharsetUtil.UTF_8);
-        } else {
-            valueBytes = new byte[]{};
+            ByteUtils.writeUtf8(buffer, this.value);
         }
+    }
 
-        if (valueBytes.length > 255) {
-            throw new IllegalArgumentException("Content (text) can be no longer than 255 bytes and this has " +
-                                               valueBytes.length);
-        }
+    // private helpers ------------------------------------------------------------------------------------------------
 
-        // Type (1b), length (1b), value (xb)
-        ChannelBuffer buffer = ChannelBuffers.buffer(2 + valueBytes.length);
-        buffer.writeByte(this.type.getByte());
-        buffer.writeByte(valueBytes.length);
-        buffer.writeBytes(valueBytes);
+    private int getValueLength() {
+        if (this.value == null) {
+            return 0;
+        }
 
-        return buffer;
+        int length = ByteUtils.getUtf8Length(this.value);
+        if (length > 255) {
+            throw new IllegalArgumentException("Content (text) can be no longer than 255 bytes and this has " + length);
+        }
+        return length;
     }
 
     // getters & setters ----------------------------------------------------------------------------------------------
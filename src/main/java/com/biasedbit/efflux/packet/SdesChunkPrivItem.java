@@ -16,9 +16,8 @@
 
 package com.biasedbit.efflux.packet;
 
+import com.biasedbit.efflux.util.ByteUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.util.CharsetUtil;
 
 /**
  * @author <a:mailto="bruno.carvalho@wit-software.com" />Bruno de Carvalho</a>
@@ -39,39 +38,41 @@ public class SdesChunkPrivItem extends SdesChunkItem {
     // public methods -------------------------------------------------------------------------------------------------
 
     @Override
-    public ChannelBuffer encode() {
-        byte[] prefixBytes;
+    public int getEncodedSize() {
+        // Type (1b), total item length (1b), prefix length (1b), prefix (xb), text (xb)
+        return 2 + this.getItemLength();
+    }
+
+    @Override
+    public void encodeInto(ChannelBuffer buffer) {
+        int itemLength = this.getItemLength();
+        buffer.writeByte(this.type.getByte());
+        buffer.writeByte(itemLength);
+        // RFC section 6.5 mandates that this must be UTF8
+        // http://tools.ietf.org/html/rfc3550#section-6.5
         if (this.prefix != null) {
-            // RFC section 6.5 mandates that this must be UTF8
-            // http://tools.ietf.org/html/rfc3550#section-6.5
-            prefixBytes = this.prefix.getBytes(CharsetUtil.UTF_8);
+            buffer.writeByte(ByteUtils.getUtf8Length(this.prefix));
+            ByteUtils.writeUtf8(buffer, this.prefix);
         } else {
-            prefixBytes = new byte[]{};
+            buffer.writeByte(0);
         }
-
-        byte[] valueBytes;
         if (this.value != null) {
-            // RFC section 6.5 mandates that this must be UTF8
-            // http://tools.ietf.org/html/rfc3550#section-6.5
-            valueBytes = this.value.getBytes(CharsetUtil.UTF_8);
-        } else {
-            valueBytes = new byte[]{};
+            ByteUtils.writeUtf8(buffer, this.value);
         }
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
 
-        if ((prefixBytes.length + valueBytes.length) > 254) {
+    private int getItemLength() {
+        int prefixLength = this.prefix == null ? 0 : ByteUtils.getUtf8Length(this.prefix);
+        int valueLength = this.value == null ? 0 : ByteUtils.getUtf8Length(this.value);
+        if ((prefixLength + valueLength) > 254) {
             throw new IllegalArgumentException("Content (prefix + text) can be no longer than 255 bytes and this has " +
-                                               valueBytes.length);
+                                               (prefixLength + valueLength));
         }
 
-        // Type (1b), total item length (1b), prefix length (1b), prefix (xb), text (xb)
-        ChannelBuffer buffer = ChannelBuffers.buffer(2 + 1 + prefixBytes.length + valueBytes.length);
-        buffer.writeByte(this.type.getByte());
-        buffer.writeByte(1 + prefixBytes.length + valueBytes.length);
-        buffer.writeByte(prefixBytes.length);
-        buffer.writeBytes(prefixBytes);
-        buffer.writeBytes(valueBytes);
-
-        return buffer;
+        // Prefix length (1b), prefix (xb), text (xb)
+        return 1 + prefixLength + valueLength;
     }
 
     // getters & setters ----------------------------------------------------------------------------------------------
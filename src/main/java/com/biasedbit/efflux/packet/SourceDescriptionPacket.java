@@ -60,73 +60,8 @@ public class SourceDescriptionPacket extends ControlPacket {
     }
 
     public static ChannelBuffer encode(int currentCompoundLength, int fixedBlockSize, SourceDescriptionPacket packet) {
-        if ((currentCompoundLength < 0) || ((currentCompoundLength % 4) > 0)) {
-            throw new IllegalArgumentException("Current compound length must be a non-negative multiple of 4");
-        }
-        if ((fixedBlockSize < 0) || ((fixedBlockSize % 4) > 0)) {
-            throw new IllegalArgumentException("Padding modulus must be a non-negative multiple of 4");
-        }
-
-        int size = 4;
-        ChannelBuffer buffer;
-        List<ChannelBuffer> encodedChunks = null;
-        if (packet.chunks != null) {
-            encodedChunks = new ArrayList<ChannelBuffer>(packet.chunks.size());
-            for (SdesChunk chunk : packet.chunks) {
-                ChannelBuffer encodedChunk = chunk.encode();
-                encodedChunks.add(encodedChunk);
-                size += encodedChunk.readableBytes();
-            }
-        }
-
-        // If packet was configured to have padding, calculate padding and add it.
-        int padding = 0;
-        if (fixedBlockSize > 0) {
-            // If padding modulus is > 0 then the padding is equal to:
-            // (global size of the compound RTCP packet) mod (block size)
-            // Block size alignment might be necessary for some encryption algorithms
-            // RFC section 6.4.1
-            padding = fixedBlockSize - ((size + currentCompoundLength) % fixedBlockSize);
-            if (padding == fixedBlockSize) {
-                padding = 0;
-            }
-        }
-        size += padding;
-
-        // Allocate the buffer and write contents
-        buffer = ChannelBuffers.buffer(size);
-        // First byte: Version (2b), Padding (1b), SSRC (chunks) count (5b)
-        byte b = packet.getVersion().getByte();
-        if (padding > 0) {
-            b |= 0x20;
-        }
-        if (packet.chunks != null) {
-            b |= packet.chunks.size();
-        }
-        buffer.writeByte(b);
-        // Second byte: Packet Type
-        buffer.writeByte(packet.type.getByte());
-        // Third byte: total length of the packet, in multiples of 4 bytes (32bit words) - 1
-        int sizeInOctets = (size / 4) - 1;
-        buffer.writeShort(sizeInOctets);
-        // Remaining bytes: encoded chunks
-        if (encodedChunks != null) {
-            for (ChannelBuffer encodedChunk : encodedChunks) {
-                buffer.writeBytes(encodedChunk);
-            }
-        }
-
-        if (padding > 0) {
-            // Final bytes: padding
-            for (int i = 0; i < (padding - 1); i++) {
-                buffer.writeByte(0x00);
-            }
-
-            // Final byte: the amount of padding bytes that should be discarded.
-            // Unless something's wrong, it will be a multiple of 4.
-            buffer.writeByte(padding);
-        }
-
+        ChannelBuffer buffer = ChannelBuffers.buffer(packet.getEncodedSize(currentCompoundLength, fixedBlockSize));
+        packet.encodeInto(buffer, currentCompoundLength, fixedBlockSize);
         return buffer;
     }
 
@@ -142,6 +77,26 @@ public class SourceDescriptionPacket extends ControlPacket {
         return encode(0, 0, this);
     }
 
+    @Override
+    public int getEncodedSize(int currentCompoundLength, int fixedBlockSize) {
+        int size = this.getUnpaddedSize();
+        return size + calculatePadding(currentCompoundLength, fixedBlockSize, size);
+    }
+
+    @Override
+    public void encodeInto(ChannelBuffer buffer, int currentCompoundLength, int fixedBlockSize) {
+        int size = this.getUnpaddedSize();
+        int padding = calculatePadding(currentCompoundLength, fixedBlockSize, size);
+        writeHeader(buffer, this, this.chunks == null ? 0 : this.chunks.size(), padding, size + padding);
+        // Remaining bytes: encoded chunks
+        if (this.chunks != null) {
+            for (SdesChunk chunk : this.chunks) {
+                chunk.encodeInto(buffer);
+            }
+        }
+        writePadding(buffer, padding);
+    }
+
     // public methods -------------------------------------------------------------------------------------------------
 
     public boolean addItem(SdesChunk chunk) {
@@ -154,6 +109,18 @@ public class SourceDescriptionPacket extends ControlPacket {
         return (this.chunks.size() < 31) && this.chunks.add(chunk);
     }
 
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private int getUnpaddedSize() {
+        int size = 4;
+        if (this.chunks != null) {
+            for (SdesChunk chunk : this.chunks) {
+                size += chunk.getEncodedSize();
+            }
+        }
+        return size;
+    }
+
     // getters & setters ----------------------------------------------------------------------------------------------
 
     public List<SdesChunk> getChunks() {
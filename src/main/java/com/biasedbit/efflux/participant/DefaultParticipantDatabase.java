@@ -20,15 +20,21 @@ import com.biasedbit.efflux.logging.Logger;
 import com.biasedbit.efflux.packet.DataPacket;
 import com.biasedbit.efflux.packet.SdesChunk;
 import com.biasedbit.efflux.packet.SdesChunkItem;
+import com.biasedbit.efflux.util.ConcurrentLongHashMap;
 import com.biasedbit.efflux.util.TimeUtils;
 
 import java.net.SocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -48,6 +54,7 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
     private final ParticipantEventListener listener;
     private int timeoutAfterNoPacketsReceived;
     private int timeoutAfterByeAndNoPacketsReceived;
+    private int maxParticipants;
 
     // internal vars --------------------------------------------------------------------------------------------------
 
@@ -57,10 +64,38 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
      */
     private final Collection<RtpParticipant> receivers;
     /**
-     * List of existing members.
+     * Immutable copy of {@link #receivers}, replaced as a whole whenever that changes, so that fan-outs can iterate it
+     * without locking.
      */
-    private final Map<Long, RtpParticipant> members;
+    private volatile RtpParticipant[] receiverSnapshot;
+    /**
+     * List of existing members, indexed by SSRC. Lookups are lock-free; {@link #lock} only guards the receivers and
+     * the creation or removal of members.
+     */
+    private final ConcurrentLongHashMap<RtpParticipant> members;
+    /**
+     * Indexes to match new sources and newly added receivers in constant time. Guarded by the write lock.
+     */
+    private final Map<SocketAddress, RtpParticipant> receiversByDataAddress;
+    private final Map<SocketAddress, RtpParticipant> receiversByControlAddress;
+    private final Map<String, RtpParticipant> receiversByCname;
+    private final Map<SocketAddress, RtpParticipant> membersByDataAddress;
+    private final Map<String, RtpParticipant> membersByCname;
+    /**
+     * SSRCs of members ordered by the instant at which they may expire, i.e. by last known activity. Guarded by the
+     * write lock.
+     */
+    private final PriorityQueue<Expiry> expiries;
+    private volatile long nextExpiry;
+    /**
+     * SSRCs of the members created for unexpected sources, oldest first; candidates for eviction while on probation.
+     * Entries for members since validated or removed are discarded lazily. Guarded by the write lock.
+     */
+    private final Queue<Long> probationary;
+    private final AtomicLong evictedCounter;
+    private final AtomicLong rejectedCounter;
     private final ReentrantReadWriteLock lock;
+    private volatile double averageRtcpSize;
 
     // constructors ---------------------------------------------------------------------------------------------------
 
@@ -69,7 +104,18 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
         this.listener = eventListener;
 
         this.receivers = new ArrayList<RtpParticipant>();
-        this.members = new HashMap<Long, RtpParticipant>();
+        this.receiverSnapshot = new RtpParticipant[0];
+        this.members = new ConcurrentLongHashMap<RtpParticipant>();
+        this.receiversByDataAddress = new HashMap<SocketAddress, RtpParticipant>();
+        this.receiversByControlAddress = new HashMap<SocketAddress, RtpParticipant>();
+        this.receiversByCname = new HashMap<String, RtpParticipant>();
+        this.membersByDataAddress = new HashMap<SocketAddress, RtpParticipant>();
+        this.membersByCname = new HashMap<String, RtpParticipant>();
+        this.expiries = new PriorityQueue<Expiry>();
+        this.nextExpiry = Long.MAX_VALUE;
+        this.probationary = new ArrayDeque<Long>();
+        this.evictedCounter = new AtomicLong();
+        this.rejectedCounter = new AtomicLong();
 
         this.lock = new ReentrantReadWriteLock();
 
@@ -86,43 +132,40 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
 
     @Override
     public Collection<RtpParticipant> getReceivers() {
-        return Collections.unmodifiableCollection(this.receivers);
+        return Collections.unmodifiableList(Arrays.asList(this.receiverSnapshot));
     }
 
     @Override
     public Map<Long, RtpParticipant> getMembers() {
-        return Collections.unmodifiableMap(this.members);
+        return Collections.unmodifiableMap(this.members.toMap());
+    }
+
+    @Override
+    public RtpParticipant[] getReceiverSnapshot() {
+        return this.receiverSnapshot;
     }
 
     @Override
     public void doWithReceivers(ParticipantOperation operation) {
-        this.lock.readLock().lock();
-        try {
-            for (RtpParticipant receiver : this.receivers) {
-                try {
-                    operation.doWithParticipant(receiver);
-                } catch (Exception e) {
-                    LOG.error("Failed to perform operation {} on receiver {}.", e, operation, receiver);
-                }
+        // No locking: receivers added or removed meanwhile will only be seen by the next call.
+        RtpParticipant[] receivers = this.receiverSnapshot;
+        for (int i = 0; i < receivers.length; i++) {
+            try {
+                operation.doWithParticipant(receivers[i]);
+            } catch (Exception e) {
+                LOG.error("Failed to perform operation {} on receiver {}.", e, operation, receivers[i]);
             }
-        } finally {
-            this.lock.readLock().unlock();
         }
     }
 
     @Override
     public void doWithParticipants(ParticipantOperation operation) {
-        this.lock.readLock().lock();
-        try {
-            for (RtpParticipant member : this.members.values()) {
-                try {
-                    operation.doWithParticipant(member);
-                } catch (Exception e) {
-                    LOG.error("Failed to perform operation {} on member {}.", e, operation, member);
-                }
+        for (RtpParticipant member : this.members.values()) {
+            try {
+                operation.doWithParticipant(member);
+            } catch (Exception e) {
+                LOG.error("Failed to perform operation {} on member {}.", e, operation, member);
             }
-        } finally {
-            this.lock.readLock().unlock();
         }
     }
 
@@ -134,22 +177,21 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
 
         this.lock.writeLock().lock();
         try {
-            // Iterate through the members, trying to find a match for this participant through the RTP ports or CNAME.
-            boolean isMember = false;
-            for (RtpParticipant member : this.members.values()) {
-                boolean sameDestinationAddresses =
-                        member.getDataDestination().equals(remoteParticipant.getDataDestination()) &&
-                        member.getControlDestination().equals(remoteParticipant.getControlDestination());
-                boolean sameCname = member.getInfo().getCname().equals(remoteParticipant.getInfo().getCname());
-                if (sameDestinationAddresses || sameCname) {
-                    // Instead of adding the newly provided participant, reuse the member
-                    this.receivers.add(member);
-                    isMember = true;
-                    break;
-                }
+            // Try to find a match for this participant among the members, through the RTP ports or CNAME.
+            RtpParticipant member = this.membersByDataAddress.get(remoteParticipant.getDataDestination());
+            if ((member != null) && !remoteParticipant.getControlDestination().equals(member.getControlDestination())) {
+                member = null;
+            }
+            if ((member == null) && (remoteParticipant.getInfo().getCname() != null)) {
+                member = this.membersByCname.get(remoteParticipant.getInfo().getCname());
             }
 
-            return isMember || this.receivers.add(remoteParticipant);
+            // Instead of adding the newly provided participant, reuse the member
+            RtpParticipant receiver = member == null ? remoteParticipant : member;
+            this.receivers.add(receiver);
+            this.indexReceiver(receiver);
+            this.publishReceivers();
+            return true;
         } finally {
             this.lock.writeLock().unlock();
         }
@@ -159,7 +201,13 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
     public boolean removeReceiver(RtpParticipant remoteParticipant) {
         this.lock.writeLock().lock();
         try {
-            return this.receivers.remove(remoteParticipant);
+            if (!this.receivers.remove(remoteParticipant)) {
+                return false;
+            }
+
+            this.unindexReceiver(remoteParticipant);
+            this.publishReceivers();
+            return true;
         } finally {
             this.lock.writeLock().unlock();
         }
@@ -167,43 +215,50 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
 
     @Override
     public RtpParticipant getParticipant(long ssrc) {
-        this.lock.readLock().lock();
-        try {
-            return this.members.get(ssrc);
-        } finally {
-            this.lock.readLock().unlock();
-        }
+        return this.members.get(ssrc);
     }
 
     @Override
     public RtpParticipant getOrCreateParticipantFromDataPacket(SocketAddress origin, DataPacket packet) {
+        // Fast path, for every packet from a known source: no locking at all.
+        RtpParticipant existing = this.members.get(packet.getSsrc());
+        if (existing != null) {
+            return existing;
+        }
+
         this.lock.writeLock().lock();
         try {
             RtpParticipant participant = this.members.get(packet.getSsrc());
             if (participant == null) {
-                // Iterate through the receivers, trying to find a match for this participant through the RTP ports.
+                // Try to find a match for this participant among the receivers, through the RTP ports.
                 boolean isReceiver = false;
-                for (RtpParticipant receiver : this.receivers) {
-                    if (receiver.getDataDestination().equals(origin)) {
-                        // Will be added to the members list.
-                        receiver.getInfo().setSsrc(packet.getSsrc());
-                        participant = receiver;
-                        participant.setLastDataOrigin(origin);
-                        isReceiver = true;
-                        break;
-                    }
+                RtpParticipant receiver = this.receiversByDataAddress.get(origin);
+                if (receiver != null) {
+                    // Will be added to the members list.
+                    receiver.getInfo().setSsrc(packet.getSsrc());
+                    participant = receiver;
+                    participant.setLastDataOrigin(origin);
+                    isReceiver = true;
                 }
 
                 boolean created = false;
                 if (!isReceiver) {
+                    if (!this.makeRoomForMember()) {
+                        this.rejectedCounter.incrementAndGet();
+                        LOG.trace("Rejected SSRC {} in session with id '{}': maximum of {} participants reached.",
+                                  packet.getSsrc(), this.id, this.maxParticipants);
+                        return null;
+                    }
                     // Will be added to the members list but will NOT be a receiver. 
                     participant = RtpParticipant.createFromUnexpectedDataPacket(origin, packet);
                     created = true;
                 }
 
                 this.members.put(packet.getSsrc(), participant);
-
+                this.indexMember(participant);
+                this.scheduleExpiry(packet.getSsrc(), TimeUtils.now(), this.timeoutAfterNoPacketsReceived);
                 if (created) {
+                    this.putOnProbation(packet.getSsrc());
                     this.listener.participantCreatedFromDataPacket(participant);
                 }
             }
@@ -217,44 +272,54 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
 
     @Override
     public RtpParticipant getOrCreateParticipantFromSdesChunk(SocketAddress origin, SdesChunk chunk) {
+        // Members that haven't sent SDES yet take the slow path once, so their CNAME gets indexed.
+        RtpParticipant existing = this.members.get(chunk.getSsrc());
+        if ((existing != null) && existing.hasReceivedSdes()) {
+            return existing;
+        }
+
         this.lock.writeLock().lock();
         try {
+            String chunkCname = chunk.getItemValue(SdesChunkItem.Type.CNAME);
             RtpParticipant participant = this.members.get(chunk.getSsrc());
-            if (participant == null) {
-                // Iterate through the receivers, trying to find a match for this participant through the RTCP ports or
-                // CNAME.
+            if (participant != null) {
+                // Known member that just announced its CNAME.
+                putIfAbsent(this.membersByCname, chunkCname, participant);
+            } else {
+                // Try to find a match for this participant among the receivers, through the RTCP ports or CNAME.
                 boolean isReceiver = false;
-                for (RtpParticipant receiver : this.receivers) {
-                    // Verify if CNAME is the same
-                    boolean equalCname = false;
-                    String chunkCname = chunk.getItemValue(SdesChunkItem.Type.CNAME);
-                    if ((chunkCname != null) && chunkCname.equals(receiver.getInfo().getCname())) {
-                        equalCname = true;
-                    }
-
-                    // If either CNAME matches or control destination matches source, then there's a match in the
-                    // receivers list.
-                    if (receiver.getControlDestination().equals(origin) || equalCname) {
-                        // Will be added to the members list.
-                        receiver.getInfo().setSsrc(chunk.getSsrc());
-                        participant = receiver;
-                        participant.setLastControlOrigin(origin);
-                        participant.receivedSdes();
-                        participant.getInfo().updateFromSdesChunk(chunk);
-                        isReceiver = true;
-                        break;
-                    }
+                RtpParticipant receiver = this.receiversByControlAddress.get(origin);
+                if ((receiver == null) && (chunkCname != null)) {
+                    receiver = this.receiversByCname.get(chunkCname);
+                }
+                if (receiver != null) {
+                    // Will be added to the members list.
+                    receiver.getInfo().setSsrc(chunk.getSsrc());
+                    participant = receiver;
+                    participant.setLastControlOrigin(origin);
+                    participant.receivedSdes();
+                    this.updateFromSdesChunk(participant, chunk);
+                    isReceiver = true;
                 }
 
                 boolean created = false;
                 if (!isReceiver) {
+                    if (!this.makeRoomForMember()) {
+                        this.rejectedCounter.incrementAndGet();
+                        LOG.trace("Rejected SSRC {} in session with id '{}': maximum of {} participants reached.",
+                                  chunk.getSsrc(), this.id, this.maxParticipants);
+                        return null;
+                    }
                     // Will be added to the members list but will NOT be a receiver.
                     participant = RtpParticipant.createFromSdesChunk(origin, chunk);
                     created = true;
                 }
 
                 this.members.put(chunk.getSsrc(), participant);
+                this.indexMember(participant);
+                this.scheduleExpiry(chunk.getSsrc(), TimeUtils.now(), this.timeoutAfterNoPacketsReceived);
                 if (created) {
+                    this.putOnProbation(chunk.getSsrc());
                     this.listener.participantCreatedFromSdesChunk(participant);
                 }
             }
@@ -265,9 +330,37 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
         }
     }
 
+    @Override
+    public boolean updateParticipantFromSdesChunk(RtpParticipant participant, SdesChunk chunk) {
+        this.lock.writeLock().lock();
+        try {
+            return this.updateFromSdesChunk(participant, chunk);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
     @Override
     public int getReceiverCount() {
-        return this.receivers.size();
+        return this.receiverSnapshot.length;
+    }
+
+    @Override
+    public void setMaxParticipants(int maxParticipants) {
+        if (maxParticipants < 0) {
+            throw new IllegalArgumentException("Maximum participants must be >= 0");
+        }
+        this.maxParticipants = maxParticipants;
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return this.evictedCounter.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejectedCounter.get();
     }
 
     @Override
@@ -276,30 +369,273 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
     }
 
     @Override
-    public void cleanup() {
+    public int getSenderCount(long since) {
+        int senders = 0;
+        for (RtpParticipant member : this.members.values()) {
+            if ((member.getLastDataReceptionInstant() > 0) && (member.getLastDataReceptionInstant() >= since)) {
+                senders++;
+            }
+        }
+
+        return senders;
+    }
+
+    @Override
+    public double getAverageRtcpSize() {
+        return this.averageRtcpSize;
+    }
+
+    @Override
+    public synchronized void updateAverageRtcpSize(int packetSize) {
+        if (this.averageRtcpSize == 0) {
+            // First packet seen, nothing to average with.
+            this.averageRtcpSize = packetSize;
+        } else {
+            this.averageRtcpSize = (packetSize / 16.0) + ((15 * this.averageRtcpSize) / 16.0);
+        }
+    }
+
+    @Override
+    public void byeReceived(RtpParticipant participant) {
         this.lock.writeLock().lock();
+        try {
+            long ssrc = participant.getSsrc();
+            if (this.members.get(ssrc) == participant) {
+                this.scheduleExpiry(ssrc, TimeUtils.now(), this.timeoutAfterByeAndNoPacketsReceived);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the members whose deadline has passed: those that sent a BYE and then
+     * {@link #timeoutAfterByeAndNoPacketsReceived} seconds went by, and those that went silent for
+     * {@link #timeoutAfterNoPacketsReceived} seconds.
+     * <p/>
+     * Only the members whose deadline is due are looked at; those that were heard from meanwhile get a new deadline.
+     */
+    @Override
+    public void cleanup() {
         long now = TimeUtils.now();
+        if (now < this.nextExpiry) {
+            return;
+        }
+
+        this.lock.writeLock().lock();
         try {
-            Iterator<RtpParticipant> iterator = this.members.values().iterator();
-            while (iterator.hasNext()) {
-                RtpParticipant participant = iterator.next();
-                int timeout = this.timeoutAfterByeAndNoPacketsReceived * 1000;
-                if (participant.receivedBye() && TimeUtils
-                        .hasExpired(now, participant.getLastReceptionInstant(), timeout)) {
+            Expiry expiry;
+            while (((expiry = this.expiries.peek()) != null) && (expiry.deadline <= now)) {
+                this.expiries.poll();
+                RtpParticipant participant = this.members.get(expiry.ssrc);
+                if (participant == null) {
+                    // Already gone.
+                    continue;
+                }
+
+                long lastActivity = Math.max(participant.getLastReceptionInstant(), expiry.since);
+                boolean receivedBye = participant.receivedBye();
+                int timeout = this.getTimeout(participant);
+                if (!TimeUtils.hasExpired(now, lastActivity, timeout)) {
+                    this.scheduleExpiry(expiry.ssrc, lastActivity, timeout);
+                    continue;
+                }
+
+                this.removeMember(expiry.ssrc, participant);
+                if (receivedBye) {
                     LOG.trace("Removed {} from session with id '{}' after reception of BYE and {}s of inactivity.",
-                              participant, this.id, this.timeoutAfterByeAndNoPacketsReceived);
-                    iterator.remove();
-                    if (participant.isReceiver()) {
-                        this.receivers.remove(participant);
+                              participant, this.id, timeout);
+                    // Explicitly added receivers are only dropped once they leave; a silent receiver may just be
+                    // on the receiving end, and is matched again if it's heard from.
+                    if (participant.isReceiver() && this.receivers.remove(participant)) {
+                        this.unindexReceiver(participant);
+                        this.publishReceivers();
                     }
-                    this.listener.participantDeleted(participant);
+                } else {
+                    LOG.trace("Removed {} from session with id '{}' after {}s of inactivity.",
+                              participant, this.id, timeout);
                 }
+                this.listener.participantDeleted(participant);
             }
+
+            this.updateNextExpiry();
         } finally {
             this.lock.writeLock().unlock();
         }
     }
 
+    // private static helpers -----------------------------------------------------------------------------------------
+
+    private static <K> void putIfAbsent(Map<K, RtpParticipant> index, K key, RtpParticipant participant) {
+        if ((key != null) && !index.containsKey(key)) {
+            index.put(key, participant);
+        }
+    }
+
+    private static <K> void removeIfMapped(Map<K, RtpParticipant> index, K key, RtpParticipant participant) {
+        if ((key != null) && (index.get(key) == participant)) {
+            index.remove(key);
+        }
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    /**
+     * Ensures there's room for one more member if the database is full, by evicting the oldest member still on
+     * probation or, if there's none, the least recently active member.
+     *
+     * @return {@code false} if there was no member to evict.
+     */
+    private boolean makeRoomForMember() {
+        if ((this.maxParticipants == 0) || (this.members.size() < this.maxParticipants)) {
+            return true;
+        }
+
+        Long ssrc;
+        while ((ssrc = this.probationary.poll()) != null) {
+            RtpParticipant candidate = this.members.get(ssrc);
+            if ((candidate != null) && !candidate.isValidated()) {
+                this.evict(ssrc, candidate, "on probation");
+                return true;
+            }
+        }
+
+        // The expiry queue is ordered by last known activity, which is only refreshed lazily: entries whose member
+        // was heard from since are re-queued, until one whose member really was idle the longest comes up.
+        Expiry expiry;
+        while ((expiry = this.expiries.poll()) != null) {
+            RtpParticipant candidate = this.members.get(expiry.ssrc);
+            if (candidate == null) {
+                continue;
+            }
+
+            long lastActivity = candidate.getLastReceptionInstant();
+            if (lastActivity > expiry.since) {
+                this.scheduleExpiry(expiry.ssrc, lastActivity, this.getTimeout(candidate));
+                continue;
+            }
+
+            this.evict(expiry.ssrc, candidate, "least recently active");
+            this.updateNextExpiry();
+            return true;
+        }
+
+        this.updateNextExpiry();
+        return false;
+    }
+
+    private void evict(long ssrc, RtpParticipant participant, String reason) {
+        this.removeMember(ssrc, participant);
+        this.evictedCounter.incrementAndGet();
+        LOG.trace("Evicted {} ({}) from session with id '{}' to make room for a new participant.",
+                  participant, reason, this.id);
+        this.listener.participantDeleted(participant);
+    }
+
+    private void removeMember(long ssrc, RtpParticipant participant) {
+        this.members.remove(ssrc);
+        this.unindexMember(participant);
+    }
+
+    private int getTimeout(RtpParticipant participant) {
+        return participant.receivedBye() ? this.timeoutAfterByeAndNoPacketsReceived :
+               this.timeoutAfterNoPacketsReceived;
+    }
+
+    private void putOnProbation(long ssrc) {
+        if (this.maxParticipants == 0) {
+            return;
+        }
+
+        this.probationary.add(ssrc);
+        if (this.probationary.size() > (this.maxParticipants * 2)) {
+            // Too many stale entries, drop them.
+            Iterator<Long> iterator = this.probationary.iterator();
+            while (iterator.hasNext()) {
+                RtpParticipant participant = this.members.get(iterator.next());
+                if ((participant == null) || participant.isValidated()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private void scheduleExpiry(long ssrc, long since, int timeout) {
+        if (this.expiries.size() > ((this.members.size() * 2) + 16)) {
+            // Entries of members removed before their deadline (evicted, or removed after a BYE while an inactivity
+            // entry was pending) are otherwise only dropped when they come due; don't let them pile up.
+            Iterator<Expiry> iterator = this.expiries.iterator();
+            while (iterator.hasNext()) {
+                if (!this.members.containsKey(iterator.next().ssrc)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        this.expiries.add(new Expiry(ssrc, since, since + (timeout * 1000L)));
+        this.updateNextExpiry();
+    }
+
+    private void updateNextExpiry() {
+        Expiry first = this.expiries.peek();
+        this.nextExpiry = first == null ? Long.MAX_VALUE : first.deadline;
+    }
+
+    private void publishReceivers() {
+        this.receiverSnapshot = this.receivers.toArray(new RtpParticipant[this.receivers.size()]);
+    }
+
+    // When several participants share a key, the first one indexed wins, as the first one in a linear scan would.
+
+    private void indexReceiver(RtpParticipant receiver) {
+        putIfAbsent(this.receiversByDataAddress, receiver.getDataDestination(), receiver);
+        putIfAbsent(this.receiversByControlAddress, receiver.getControlDestination(), receiver);
+        putIfAbsent(this.receiversByCname, receiver.getInfo().getCname(), receiver);
+    }
+
+    private void unindexReceiver(RtpParticipant receiver) {
+        removeIfMapped(this.receiversByDataAddress, receiver.getDataDestination(), receiver);
+        removeIfMapped(this.receiversByControlAddress, receiver.getControlDestination(), receiver);
+        removeIfMapped(this.receiversByCname, receiver.getInfo().getCname(), receiver);
+    }
+
+    /**
+     * Updates a participant's description and, if its CNAME changed, moves it to the new CNAME in the indexes it was
+     * in. Must be called with the write lock held.
+     */
+    private boolean updateFromSdesChunk(RtpParticipant participant, SdesChunk chunk) {
+        String previousCname = participant.getInfo().getCname();
+        if (!participant.getInfo().updateFromSdesChunk(chunk)) {
+            return false;
+        }
+
+        String cname = participant.getInfo().getCname();
+        if ((cname == null) ? (previousCname == null) : cname.equals(previousCname)) {
+            return true;
+        }
+
+        if (this.members.get(participant.getSsrc()) == participant) {
+            removeIfMapped(this.membersByCname, previousCname, participant);
+            putIfAbsent(this.membersByCname, cname, participant);
+        }
+        if (this.receivers.contains(participant)) {
+            removeIfMapped(this.receiversByCname, previousCname, participant);
+            putIfAbsent(this.receiversByCname, cname, participant);
+        }
+
+        return true;
+    }
+
+    private void indexMember(RtpParticipant member) {
+        putIfAbsent(this.membersByDataAddress, member.getDataDestination(), member);
+        putIfAbsent(this.membersByCname, member.getInfo().getCname(), member);
+    }
+
+    private void unindexMember(RtpParticipant member) {
+        removeIfMapped(this.membersByDataAddress, member.getDataDestination(), member);
+        removeIfMapped(this.membersByCname, member.getInfo().getCname(), member);
+    }
+
     // getters & setters ----------------------------------------------------------------------------------------------
 
     public int getTimeoutAfterNoPacketsReceived() {
@@ -317,4 +653,26 @@ public class DefaultParticipantDatabase implements ParticipantDatabase {
     public void setTimeoutAfterByeAndNoPacketsReceived(int timeoutAfterByeAndNoPacketsReceived) {
         this.timeoutAfterByeAndNoPacketsReceived = timeoutAfterByeAndNoPacketsReceived;
     }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static final class Expiry implements Comparable<Expiry> {
+
+        // Only the SSRC is kept, so entries don't hold on to members removed before their deadline.
+        private final long ssrc;
+        // Last activity accounted for when the deadline was computed.
+        private final long since;
+        private final long deadline;
+
+        private Expiry(long ssrc, long since, long deadline) {
+            this.ssrc = ssrc;
+            this.since = since;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Expiry o) {
+            return this.deadline < o.deadline ? -1 : (this.deadline == o.deadline ? 0 : 1);
+        }
+    }
 }
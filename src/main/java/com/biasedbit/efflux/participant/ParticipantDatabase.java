@@ -34,6 +34,14 @@ public interface ParticipantDatabase {
 
     Map<Long, RtpParticipant> getMembers();
 
+    /**
+     * Returns the receivers as an array that is never modified, for fan-outs on the send path to iterate without
+     * locking nor allocating. Implementations replace it as a whole when receivers change, so it may be stale.
+     *
+     * @return Current receivers. Must not be modified.
+     */
+    RtpParticipant[] getReceiverSnapshot();
+
     void doWithReceivers(ParticipantOperation operation);
 
     void doWithParticipants(ParticipantOperation operation);
@@ -48,9 +56,68 @@ public interface ParticipantDatabase {
 
     RtpParticipant getOrCreateParticipantFromSdesChunk(SocketAddress origin, SdesChunk chunk);
 
+    /**
+     * Updates the description of a participant from a SDES chunk. Unlike updating its {@link RtpParticipantInfo}
+     * directly, this keeps the participant findable by its CNAME if the chunk changes it.
+     *
+     * @param participant Participant to update.
+     * @param chunk       SDES chunk received from the participant.
+     *
+     * @return {@code true} if the description changed.
+     */
+    boolean updateParticipantFromSdesChunk(RtpParticipant participant, SdesChunk chunk);
+
     int getReceiverCount();
 
+    /**
+     * Caps the number of members created for unexpected sources. When full, a new source takes the place of the oldest
+     * member still on probation (see {@link RtpParticipant#isValidated()}) or, if there's none, of the least recently
+     * active member.
+     *
+     * @param maxParticipants Maximum number of members, or 0 for no limit.
+     */
+    void setMaxParticipants(int maxParticipants);
+
+    /**
+     * @return Number of members removed to make room for new sources.
+     */
+    long getEvictedCount();
+
+    /**
+     * @return Number of new sources rejected because the database was full and no member could be evicted.
+     */
+    long getRejectedCount();
+
     int getParticipantCount();
 
+    /**
+     * @param since Instant, in milliseconds.
+     *
+     * @return Number of members from which data packets have been received since {@code since}.
+     */
+    int getSenderCount(long since);
+
+    /**
+     * @return Average size, in bytes (lower layer headers included), of the RTCP packets sent and received.
+     */
+    double getAverageRtcpSize();
+
+    /**
+     * Updates the average RTCP packet size (RFC 3550, section 6.3.3) with a packet sent or received.
+     *
+     * @param packetSize Size of the compound packet, in bytes (lower layer headers included).
+     */
+    void updateAverageRtcpSize(int packetSize);
+
+    /**
+     * Signals that a BYE was received from a participant, which shortens the time it's kept around for.
+     *
+     * @param participant Participant that left.
+     */
+    void byeReceived(RtpParticipant participant);
+
+    /**
+     * Removes the participants that left or went silent. Called periodically.
+     */
     void cleanup();
 }
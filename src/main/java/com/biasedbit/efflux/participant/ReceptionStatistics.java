@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.participant;
+
+import com.biasedbit.efflux.packet.ReceptionReport;
+
+/**
+ * Reception statistics of a source, as described in RFC 3550, appendices A.1 (sequence number validation and
+ * extended highest sequence number), A.3 (expected and lost packets) and A.8 (interarrival jitter).
+ * <p/>
+ * Updates are cheap (no allocation, no locks) and meant to come from a single thread, the one receiving the source's
+ * packets; the interval state used for fraction lost is only touched by {@link #fillReceptionReport(ReceptionReport)},
+ * which is meant to be called from the thread generating the reports. Getters can be called from any thread and may
+ * see a slightly stale view.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class ReceptionStatistics {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final int RTP_SEQ_MOD = 1 << 16;
+    private static final int MAX_DROPOUT = 3000;
+    private static final int MAX_MISORDER = 100;
+    private static final int MIN_SEQUENTIAL = 2;
+    private static final int MAX_CUMULATIVE_LOST = 0x00ffffff;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private boolean initialised;
+    private volatile int maxSequence;
+    private volatile long cycles;
+    private int baseSequence;
+    private int badSequence;
+    private int probation;
+    private volatile long received;
+    private long expectedPrior;
+    private long receivedPrior;
+    private volatile short fractionLost;
+    // Jitter state: transit time of the last packet and jitter, both in timestamp units (jitter scaled by 16).
+    private long arrivalBase;
+    private int lastTransit;
+    private boolean hasTransit;
+    private volatile long scaledJitter;
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    /**
+     * Updates the statistics with a newly received packet.
+     *
+     * @param sequenceNumber Sequence number of the packet.
+     * @param timestamp      RTP timestamp of the packet.
+     * @param clockRate      Clock rate of the packet's payload type, in Hz; if 0, jitter isn't updated.
+     * @param arrival        Instant of arrival, in nanoseconds.
+     *
+     * @return {@code true} if the packet was counted as valid, {@code false} if it was held back (source still on
+     *         probation or a large sequence number jump that needs confirmation).
+     */
+    public boolean update(int sequenceNumber, long timestamp, int clockRate, long arrival) {
+        int sequence = sequenceNumber & 0xffff;
+        if (!this.initialised) {
+            // First packet: the source is on probation until MIN_SEQUENTIAL packets in sequence are seen.
+            this.initialised = true;
+            this.initSequence(sequence);
+            this.maxSequence = sequence - 1;
+            this.probation = MIN_SEQUENTIAL;
+            this.arrivalBase = arrival;
+        }
+
+        if (!this.updateSequence(sequence)) {
+            return false;
+        }
+
+        if (clockRate > 0) {
+            this.updateJitter(timestamp, clockRate, arrival);
+        }
+
+        return true;
+    }
+
+    /**
+     * Fills a reception report block with the current statistics and starts a new reporting interval, i.e. the next
+     * fraction lost will only account for packets from now on.
+     *
+     * @param block Block to fill; its SSRC, LSR and DLSR fields are left untouched.
+     */
+    public void fillReceptionReport(ReceptionReport block) {
+        long extendedMax = this.getExtendedHighestSequenceNumber();
+        long expected = this.getExpected();
+        long received = this.received;
+
+        // Fraction lost over the last interval (A.3).
+        long expectedInterval = expected - this.expectedPrior;
+        long receivedInterval = received - this.receivedPrior;
+        long lostInterval = expectedInterval - receivedInterval;
+        this.expectedPrior = expected;
+        this.receivedPrior = received;
+        if ((expectedInterval == 0) || (lostInterval <= 0)) {
+            this.fractionLost = 0;
+        } else {
+            this.fractionLost = (short) ((lostInterval << 8) / expectedInterval);
+        }
+
+        block.setFractionLost(this.fractionLost);
+        block.setCumulativeNumberOfPacketsLost((int) Math.max(0, Math.min(this.getCumulativeLost(),
+                                                                          MAX_CUMULATIVE_LOST)));
+        block.setExtendedHighestSequenceNumberReceived(extendedMax & 0xffffffffL);
+        block.setInterArrivalJitter(this.getJitter());
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private void initSequence(int sequence) {
+        this.baseSequence = sequence;
+        this.maxSequence = sequence;
+        this.badSequence = RTP_SEQ_MOD + 1;
+        this.cycles = 0;
+        this.received = 0;
+        this.receivedPrior = 0;
+        this.expectedPrior = 0;
+    }
+
+    private boolean updateSequence(int sequence) {
+        int delta = (sequence - this.maxSequence) & 0xffff;
+
+        if (this.probation > 0) {
+            // Packet is in sequence.
+            if (sequence == ((this.maxSequence + 1) & 0xffff)) {
+                this.probation--;
+                this.maxSequence = sequence;
+                if (this.probation == 0) {
+                    this.initSequence(sequence);
+                    this.received++;
+                    return true;
+                }
+            } else {
+                this.probation = MIN_SEQUENTIAL - 1;
+                this.maxSequence = sequence;
+            }
+            return false;
+        } else if (delta < MAX_DROPOUT) {
+            // In order, with permissible gap.
+            if (sequence < this.maxSequence) {
+                // Sequence number wrapped, count another 64k cycle.
+                this.cycles += RTP_SEQ_MOD;
+            }
+            this.maxSequence = sequence;
+        } else if (delta <= (RTP_SEQ_MOD - MAX_MISORDER)) {
+            // The sequence number made a very large jump.
+            if (sequence == this.badSequence) {
+                // Two sequential packets: assume that the other side restarted without telling us so just re-sync
+                // (i.e., pretend this was the first packet).
+                this.initSequence(sequence);
+            } else {
+                this.badSequence = (sequence + 1) & (RTP_SEQ_MOD - 1);
+                return false;
+            }
+        }
+        // else: duplicate or reordered packet, counted but doesn't move the highest sequence number.
+
+        this.received++;
+        return true;
+    }
+
+    private void updateJitter(long timestamp, int clockRate, long arrival) {
+        // Arrival time in timestamp units, relative to the first packet; only differences matter.
+        long arrivalUnits = (((arrival - this.arrivalBase) / 1000) * clockRate) / 1000000;
+        int transit = (int) (arrivalUnits - timestamp);
+        if (this.hasTransit) {
+            int d = transit - this.lastTransit;
+            if (d < 0) {
+                d = -d;
+            }
+            // J(i) = J(i-1) + (|D(i-1,i)| - J(i-1))/16, kept scaled by 16 to avoid floating point (A.8).
+            this.scaledJitter += d - ((this.scaledJitter + 8) >> 4);
+        }
+        this.lastTransit = transit;
+        this.hasTransit = true;
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    /**
+     * @return Highest sequence number received, extended with the count of sequence number cycles.
+     */
+    public long getExtendedHighestSequenceNumber() {
+        return this.cycles + this.maxSequence;
+    }
+
+    /**
+     * @return Packets expected since the first valid one, from the sequence number span.
+     */
+    public long getExpected() {
+        if (this.received == 0) {
+            return 0;
+        }
+
+        return this.getExtendedHighestSequenceNumber() - this.baseSequence + 1;
+    }
+
+    /**
+     * @return Valid packets received, duplicates included.
+     */
+    public long getReceived() {
+        return this.received;
+    }
+
+    /**
+     * @return Packets lost since the first valid one; may be negative when duplicates are received.
+     */
+    public long getCumulativeLost() {
+        return this.getExpected() - this.received;
+    }
+
+    /**
+     * @return Fraction of packets lost during the last reporting interval, as an 8 bit fixed point number.
+     */
+    public short getFractionLost() {
+        return this.fractionLost;
+    }
+
+    /**
+     * @return Interarrival jitter, in timestamp units.
+     */
+    public long getJitter() {
+        return this.scaledJitter >> 4;
+    }
+}
@@ -45,13 +45,18 @@ public class RtpParticipant {
     private SocketAddress controlDestination;
     private SocketAddress lastDataOrigin;
     private SocketAddress lastControlOrigin;
-    private long lastReceptionInstant;
+    private volatile long lastReceptionInstant;
+    private volatile long lastDataReceptionInstant;
     private long byeReceptionInstant;
     private int lastSequenceNumber;
     private boolean receivedSdes;
     private final AtomicLong receivedByteCounter;
     private final AtomicLong receivedPacketCounter;
     private final AtomicInteger validPacketCounter;
+    private final ReceptionStatistics receptionStatistics;
+    private volatile long lastSenderReport;
+    private volatile long lastSenderReportReceptionInstant;
+    private volatile long roundTripTime;
 
     // constructors ---------------------------------------------------------------------------------------------------
 
@@ -66,6 +71,8 @@ public class RtpParticipant {
         this.receivedByteCounter = new AtomicLong();
         this.receivedPacketCounter = new AtomicLong();
         this.validPacketCounter = new AtomicInteger();
+        this.receptionStatistics = new ReceptionStatistics();
+        this.roundTripTime = -1;
     }
 
     // public static methods ------------------------------------------------------------------------------------------
@@ -153,6 +160,47 @@ public class RtpParticipant {
         this.lastReceptionInstant = TimeUtils.now();
     }
 
+    /**
+     * Accounts for a data packet received from this participant.
+     *
+     * @param sequenceNumber Sequence number of the packet.
+     * @param timestamp      RTP timestamp of the packet.
+     * @param size           Size of the packet's payload.
+     * @param clockRate      Clock rate of the packet's payload type, or 0 if unknown.
+     */
+    public void dataPacketReceived(int sequenceNumber, long timestamp, int size, int clockRate) {
+        long now = TimeUtils.now();
+        this.lastReceptionInstant = now;
+        this.lastDataReceptionInstant = now;
+        this.receivedPacketCounter.incrementAndGet();
+        this.receivedByteCounter.addAndGet(size);
+        boolean valid = this.receptionStatistics.update(sequenceNumber, timestamp, clockRate, TimeUtils.nowNanos());
+        if (valid && (this.validPacketCounter.get() < VALID_PACKETS_UNTIL_VALID_PARTICIPANT)) {
+            this.validPacketCounter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the reception of a sender report from this participant, to be echoed in the LSR and DLSR fields of the
+     * next reception report about it.
+     *
+     * @param ntpTimestamp NTP timestamp of the sender report.
+     */
+    public void senderReportReceived(long ntpTimestamp) {
+        this.lastSenderReportReceptionInstant = TimeUtils.nowNanos();
+        this.lastSenderReport = TimeUtils.toCompactNtp(ntpTimestamp);
+    }
+
+    /**
+     * A participant is validated once {@value #VALID_PACKETS_UNTIL_VALID_PARTICIPANT} of its data packets were
+     * accepted by its reception statistics, i.e. arrived in sequence. Until then it's on probation.
+     *
+     * @return {@code true} if this participant is no longer on probation.
+     */
+    public boolean isValidated() {
+        return this.validPacketCounter.get() >= VALID_PACKETS_UNTIL_VALID_PARTICIPANT;
+    }
+
     public boolean isReceiver() {
         return (this.dataDestination != null) && (this.controlDestination != null);
     }
@@ -171,6 +219,10 @@ public class RtpParticipant {
         return lastReceptionInstant;
     }
 
+    public long getLastDataReceptionInstant() {
+        return lastDataReceptionInstant;
+    }
+
     public long getByeReceptionInstant() {
         return byeReceptionInstant;
     }
@@ -191,6 +243,37 @@ public class RtpParticipant {
         return this.receivedPacketCounter.get();
     }
 
+    public ReceptionStatistics getReceptionStatistics() {
+        return receptionStatistics;
+    }
+
+    /**
+     * @return Middle 32 bits of the NTP timestamp of the last sender report received from this participant, or 0 if
+     *         none was received.
+     */
+    public long getLastSenderReport() {
+        return lastSenderReport;
+    }
+
+    /**
+     * @return Instant, as given by {@link TimeUtils#nowNanos()}, at which the last sender report was received.
+     */
+    public long getLastSenderReportReceptionInstant() {
+        return lastSenderReportReceptionInstant;
+    }
+
+    /**
+     * @return Round-trip time between the local participant and this one, in microseconds, as measured from the last
+     *         reception report this participant sent about the local participant; -1 if unknown.
+     */
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    public void setRoundTripTime(long roundTripTime) {
+        this.roundTripTime = roundTripTime;
+    }
+
     public long getReceivedBytes() {
         return this.receivedByteCounter.get();
     }
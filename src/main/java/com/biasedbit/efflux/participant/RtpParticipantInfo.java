@@ -43,6 +43,7 @@ public class RtpParticipantInfo {
     private String note;
     private String privPrefix;
     private String priv;
+    private volatile int version;
 
     // constructors ---------------------------------------------------------------------------------------------------
 
@@ -80,6 +81,7 @@ public class RtpParticipantInfo {
         boolean modified = false;
         if (this.ssrc != chunk.getSsrc()) {
             this.ssrc = chunk.getSsrc();
+            this.version++;
             modified = true;
         }
         if (chunk.getItems() == null) {
@@ -154,6 +156,16 @@ public class RtpParticipantInfo {
 
     // getters & setters ----------------------------------------------------------------------------------------------
 
+    /**
+     * Modification counter, bumped by every setter. Lets callers that derive something from this info (such as the
+     * encoded local SDES chunk) tell whether it has changed without comparing every field.
+     *
+     * @return Current version of this info.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
     public long getSsrc() {
         return this.ssrc;
     }
@@ -170,6 +182,7 @@ public class RtpParticipantInfo {
         }
 
         this.ssrc = ssrc;
+        this.version++;
     }
 
     public String getCname() {
@@ -178,6 +191,7 @@ public class RtpParticipantInfo {
 
     public void setCname(String cname) {
         this.cname = cname;
+        this.version++;
     }
 
     public String getName() {
@@ -186,6 +200,7 @@ public class RtpParticipantInfo {
 
     public void setName(String name) {
         this.name = name;
+        this.version++;
     }
 
     public String getEmail() {
@@ -194,6 +209,7 @@ public class RtpParticipantInfo {
 
     public void setEmail(String email) {
         this.email = email;
+        this.version++;
     }
 
     public String getPhone() {
@@ -202,6 +218,7 @@ public class RtpParticipantInfo {
 
     public void setPhone(String phone) {
         this.phone = phone;
+        this.version++;
     }
 
     public String getLocation() {
@@ -210,6 +227,7 @@ public class RtpParticipantInfo {
 
     public void setLocation(String location) {
         this.location = location;
+        this.version++;
     }
 
     public String getTool() {
@@ -218,6 +236,7 @@ public class RtpParticipantInfo {
 
     public void setTool(String tool) {
         this.tool = tool;
+        this.version++;
     }
 
     public String getNote() {
@@ -226,6 +245,7 @@ public class RtpParticipantInfo {
 
     public void setNote(String note) {
         this.note = note;
+        this.version++;
     }
 
     public String getPrivPrefix() {
@@ -239,6 +259,7 @@ public class RtpParticipantInfo {
     public void setPriv(String prefix, String priv) {
         this.privPrefix = prefix;
         this.priv = priv;
+        this.version++;
     }
 
     // low level overrides --------------------------------------------------------------------------------------------
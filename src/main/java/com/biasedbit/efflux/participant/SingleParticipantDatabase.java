@@ -40,10 +40,17 @@ public class SingleParticipantDatabase implements ParticipantDatabase {
     private String id;
     private RtpParticipant participant;
 
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    // Read without locking on the send path; replaced as a whole by setParticipant().
+    private volatile RtpParticipant[] receiverSnapshot;
+    private volatile double averageRtcpSize;
+
     // constructors ---------------------------------------------------------------------------------------------------
 
     public SingleParticipantDatabase(String id) {
         this.id = id;
+        this.receiverSnapshot = new RtpParticipant[0];
     }
 
     // ParticipantDatabase --------------------------------------------------------------------------------------------
@@ -66,6 +73,11 @@ public class SingleParticipantDatabase implements ParticipantDatabase {
         return map;
     }
 
+    @Override
+    public RtpParticipant[] getReceiverSnapshot() {
+        return this.receiverSnapshot;
+    }
+
     @Override
     public void doWithReceivers(ParticipantOperation operation) {
         try {
@@ -121,6 +133,12 @@ public class SingleParticipantDatabase implements ParticipantDatabase {
         return null;
     }
 
+    @Override
+    public boolean updateParticipantFromSdesChunk(RtpParticipant participant, SdesChunk chunk) {
+        // Nothing is indexed by CNAME.
+        return participant.getInfo().updateFromSdesChunk(chunk);
+    }
+
     @Override
     public int getReceiverCount() {
         return 1;
@@ -131,6 +149,47 @@ public class SingleParticipantDatabase implements ParticipantDatabase {
         return 1;
     }
 
+    @Override
+    public int getSenderCount(long since) {
+        long lastData = this.participant.getLastDataReceptionInstant();
+        return (lastData > 0) && (lastData >= since) ? 1 : 0;
+    }
+
+    @Override
+    public double getAverageRtcpSize() {
+        return this.averageRtcpSize;
+    }
+
+    @Override
+    public synchronized void updateAverageRtcpSize(int packetSize) {
+        if (this.averageRtcpSize == 0) {
+            // First packet seen, nothing to average with.
+            this.averageRtcpSize = packetSize;
+        } else {
+            this.averageRtcpSize = (packetSize / 16.0) + ((15 * this.averageRtcpSize) / 16.0);
+        }
+    }
+
+    @Override
+    public void setMaxParticipants(int maxParticipants) {
+        // Nothing to do here, there's only one.
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return 0;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return 0;
+    }
+
+    @Override
+    public void byeReceived(RtpParticipant participant) {
+        // Nothing to do here.
+    }
+
     @Override
     public void cleanup() {
         // Nothing to do here.
@@ -140,5 +199,6 @@ public class SingleParticipantDatabase implements ParticipantDatabase {
 
     public void setParticipant(RtpParticipant remoteParticipant) {
         this.participant = remoteParticipant;
+        this.receiverSnapshot = new RtpParticipant[]{remoteParticipant};
     }
 }
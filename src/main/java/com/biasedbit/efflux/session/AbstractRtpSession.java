@@ -17,18 +17,16 @@
 package com.biasedbit.efflux.session;
 
 import com.biasedbit.efflux.logging.Logger;
-import com.biasedbit.efflux.network.ControlHandler;
-import com.biasedbit.efflux.network.ControlPacketDecoder;
-import com.biasedbit.efflux.network.ControlPacketEncoder;
-import com.biasedbit.efflux.network.DataHandler;
-import com.biasedbit.efflux.network.DataPacketDecoder;
-import com.biasedbit.efflux.network.DataPacketEncoder;
+import com.biasedbit.efflux.network.DatagramTransport;
+import com.biasedbit.efflux.network.RtpTransport;
+import com.biasedbit.efflux.network.SharedPortTransport;
 import com.biasedbit.efflux.packet.AbstractReportPacket;
 import com.biasedbit.efflux.packet.AppDataPacket;
 import com.biasedbit.efflux.packet.ByePacket;
 import com.biasedbit.efflux.packet.CompoundControlPacket;
 import com.biasedbit.efflux.packet.ControlPacket;
 import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.packet.DataPacketView;
 import com.biasedbit.efflux.packet.ReceiverReportPacket;
 import com.biasedbit.efflux.packet.ReceptionReport;
 import com.biasedbit.efflux.packet.SdesChunk;
@@ -39,24 +37,23 @@ import com.biasedbit.efflux.participant.ParticipantDatabase;
 import com.biasedbit.efflux.participant.ParticipantOperation;
 import com.biasedbit.efflux.participant.RtpParticipant;
 import com.biasedbit.efflux.participant.RtpParticipantInfo;
-import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
-import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
-import org.jboss.netty.channel.socket.DatagramChannel;
+import com.biasedbit.efflux.util.ClockRates;
+import com.biasedbit.efflux.util.TimeUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
 import org.jboss.netty.channel.socket.oio.OioDatagramChannelFactory;
-import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timeout;
 import org.jboss.netty.util.TimerTask;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -73,6 +70,13 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
 
     protected static final Logger LOG = Logger.getLogger(AbstractRtpSession.class);
     protected static final String VERSION = "efflux_0.4_15092010";
+    protected static final int PACING_MTU = 1500;
+    // Packets a paced session may have waiting; past this, sends are refused rather than delayed further.
+    protected static final int PACING_QUEUE_DEPTH = 1024;
+    // IPv4 + UDP headers, counted in the average RTCP packet size.
+    protected static final int UDP_IP_OVERHEAD = 28;
+    // Reception report count is a 5 bit field.
+    protected static final int MAX_REPORT_BLOCKS = 31;
 
     // configuration defaults -----------------------------------------------------------------------------------------
 
@@ -86,6 +90,13 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
     protected static final boolean AUTOMATED_RTCP_HANDLING = true;
     protected static final boolean TRY_TO_UPDATE_ON_EVERY_SDES = true;
     protected static final int PARTICIPANT_DATABASE_CLEANUP = 10;
+    protected static final int CLOCK_RATE = 0;
+    protected static final int MAX_PARTICIPANTS = 0;
+    protected static final boolean SLICE_RECEIVED_DATA = false;
+    protected static final boolean COPY_DATA_ON_SEND = true;
+    protected static final boolean RECYCLE_DATA_PACKETS = false;
+    protected static final boolean USE_DATA_PACKET_VIEWS = false;
+    protected static final boolean USE_RTCP_MUX = false;
 
     // configuration --------------------------------------------------------------------------------------------------
 
@@ -103,6 +114,16 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
     protected boolean automatedRtcpHandling;
     protected boolean tryToUpdateOnEverySdes;
     protected int participantDatabaseCleanup;
+    protected boolean sliceReceivedData;
+    protected boolean copyDataOnSend;
+    protected boolean recycleDataPackets;
+    protected boolean useDataPacketViews;
+    protected boolean useRtcpMux;
+    protected SharedPortTransport sharedTransport;
+    protected DatagramChannelFactory channelFactory;
+    protected SendPacer sendPacer;
+    protected int clockRate;
+    protected int maxParticipants;
 
     // internal vars --------------------------------------------------------------------------------------------------
 
@@ -110,19 +131,31 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
     protected final RtpParticipant localParticipant;
     protected final ParticipantDatabase participantDatabase;
     protected final List<RtpSessionDataListener> dataListeners;
+    protected final List<RtpSessionDataViewListener> dataViewListeners;
     protected final List<RtpSessionControlListener> controlListeners;
     protected final List<RtpSessionEventListener> eventListeners;
-    protected ConnectionlessBootstrap dataBootstrap;
-    protected ConnectionlessBootstrap controlBootstrap;
-    protected DatagramChannel dataChannel;
-    protected DatagramChannel controlChannel;
+    protected RtpTransport transport;
+    protected boolean internalTransport;
     protected final AtomicInteger sequence;
     protected final AtomicBoolean sentOrReceivedPackets;
     protected final AtomicInteger collisions;
     protected final AtomicLong sentByteCounter;
     protected final AtomicLong sentPacketCounter;
     protected int periodicRtcpSendInterval;
+    protected long lastRtcpSendInstant;
+    // Whether no periodic report was sent since joining the session (RFC 3550, section 6.2).
+    protected boolean initialRtcp;
+    protected volatile long lastDataSendInstant;
+    // RTP timestamp of the last data packet sent and the (monotonic) instant it was sent at, to map NTP time to RTP.
+    protected volatile long lastSentRtpTimestamp;
+    protected volatile long lastSentRtpTimestampInstant;
+    protected final Random random;
+    protected int reportCursor;
     protected final boolean internalTimer;
+    protected SourceDescriptionPacket localSdesPacket;
+    protected long localSdesSsrc;
+    protected int localSdesInfoVersion;
+    protected SendPacer.Flow pacedFlow;
 
     // constructors ---------------------------------------------------------------------------------------------------
 
@@ -165,6 +198,7 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
 
         this.running = new AtomicBoolean(false);
         this.dataListeners = new CopyOnWriteArrayList<RtpSessionDataListener>();
+        this.dataViewListeners = new CopyOnWriteArrayList<RtpSessionDataViewListener>();
         this.controlListeners = new CopyOnWriteArrayList<RtpSessionControlListener>();
         this.eventListeners = new CopyOnWriteArrayList<RtpSessionEventListener>();
         this.sequence = new AtomicInteger(0);
@@ -172,6 +206,7 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         this.collisions = new AtomicInteger(0);
         this.sentPacketCounter = new AtomicLong(0);
         this.sentByteCounter = new AtomicLong(0);
+        this.random = new Random();
 
         this.useNio = USE_NIO;
         this.discardOutOfOrder = DISCARD_OUT_OF_ORDER;
@@ -182,6 +217,13 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         this.automatedRtcpHandling = AUTOMATED_RTCP_HANDLING;
         this.tryToUpdateOnEverySdes = TRY_TO_UPDATE_ON_EVERY_SDES;
         this.participantDatabaseCleanup = PARTICIPANT_DATABASE_CLEANUP;
+        this.clockRate = CLOCK_RATE;
+        this.maxParticipants = MAX_PARTICIPANTS;
+        this.sliceReceivedData = SLICE_RECEIVED_DATA;
+        this.copyDataOnSend = COPY_DATA_ON_SEND;
+        this.recycleDataPackets = RECYCLE_DATA_PACKETS;
+        this.useDataPacketViews = USE_DATA_PACKET_VIEWS;
+        this.useRtcpMux = USE_RTCP_MUX;
     }
 
     // RtpSession -----------------------------------------------------------------------------------------------------
@@ -202,70 +244,36 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
             return true;
         }
 
-        DatagramChannelFactory factory;
-        if (this.useNio) {
-            factory = new OioDatagramChannelFactory(Executors.newCachedThreadPool());
-        } else {
-            factory = new NioDatagramChannelFactory(Executors.newCachedThreadPool());
-        }
-
-        this.dataBootstrap = new ConnectionlessBootstrap(factory);
-        this.dataBootstrap.setOption("sendBufferSize", this.sendBufferSize);
-        this.dataBootstrap.setOption("receiveBufferSize", this.receiveBufferSize);
-        this.dataBootstrap.setOption("receiveBufferSizePredictorFactory",
-                                     new FixedReceiveBufferSizePredictorFactory(this.receiveBufferSize));
-        this.dataBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
-            public ChannelPipeline getPipeline() throws Exception {
-                ChannelPipeline pipeline = Channels.pipeline();
-                pipeline.addLast("decoder", new DataPacketDecoder());
-                pipeline.addLast("encoder", DataPacketEncoder.getInstance());
-                if (executor != null) {
-                    pipeline.addLast("executorHandler", new ExecutionHandler(executor));
-                }
-                pipeline.addLast("handler", new DataHandler(AbstractRtpSession.this));
-                return pipeline;
-            }
-        });
-        this.controlBootstrap = new ConnectionlessBootstrap(factory);
-        this.controlBootstrap.setOption("sendBufferSize", this.sendBufferSize);
-        this.controlBootstrap.setOption("receiveBufferSize", this.receiveBufferSize);
-        this.controlBootstrap.setOption("receiveBufferSizePredictorFactory",
-                                        new FixedReceiveBufferSizePredictorFactory(this.receiveBufferSize));
-        this.controlBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
-            public ChannelPipeline getPipeline() throws Exception {
-                ChannelPipeline pipeline = Channels.pipeline();
-                pipeline.addLast("decoder", new ControlPacketDecoder());
-                pipeline.addLast("encoder", ControlPacketEncoder.getInstance());
-                if (executor != null) {
-                    pipeline.addLast("executorHandler", new ExecutionHandler(executor));
-                }
-                pipeline.addLast("handler", new ControlHandler(AbstractRtpSession.this));
-                return pipeline;
-            }
-        });
+        if ((this.sendPacer != null) && !this.sendPacer.isRunning()) {
+            LOG.error("Send pacer for session with id {} is not running.", this.id);
+            return false;
+        }
 
-        SocketAddress dataAddress = this.localParticipant.getDataDestination();
-        SocketAddress controlAddress = this.localParticipant.getControlDestination();
+        this.participantDatabase.setMaxParticipants(this.maxParticipants);
 
-        try {
-            this.dataChannel = (DatagramChannel) this.dataBootstrap.bind(dataAddress);
-        } catch (Exception e) {
-            LOG.error("Failed to bind data channel for session with id " + this.id, e);
-            this.dataBootstrap.releaseExternalResources();
-            this.controlBootstrap.releaseExternalResources();
-            return false;
+        if ((this.transport == null) || this.internalTransport) {
+            this.transport = this.createTransport();
+            this.internalTransport = true;
         }
-        try {
-            this.controlChannel = (DatagramChannel) this.controlBootstrap.bind(controlAddress);
-        } catch (Exception e) {
-            LOG.error("Failed to bind control channel for session with id " + this.id, e);
-            this.dataChannel.close();
-            this.dataBootstrap.releaseExternalResources();
-            this.controlBootstrap.releaseExternalResources();
+        if (!this.transport.open(this)) {
+            LOG.error("Failed to open transport for session with id {}.", this.id);
             return false;
         }
+        this.participantDatabase.doWithReceivers(new ParticipantOperation() {
+            @Override
+            public void doWithParticipant(RtpParticipant participant) throws Exception {
+                transport.addRemote(participant.getSsrc(), participant.getDataDestination(),
+                                    participant.getControlDestination());
+            }
+        });
 
-        LOG.debug("Data & Control channels bound for RtpSession with id {}.", this.id);
+        LOG.debug("Transport opened for RtpSession with id {}.", this.id);
+        if (this.sendPacer != null) {
+            // bandwidthLimit is in kbps; allow bursts of 10ms worth of data, but never less than a full packet.
+            long bytesPerSecond = (this.bandwidthLimit * 1000L) / 8;
+            this.pacedFlow = this.sendPacer.createFlow(bytesPerSecond, Math.max(bytesPerSecond / 100, PACING_MTU),
+                                                       PACING_QUEUE_DEPTH);
+        }
         // Send first RTCP packet.
         this.joinSession(this.localParticipant.getSsrc());
         this.running.set(true);
@@ -284,7 +292,9 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         }, this.participantDatabaseCleanup, TimeUnit.SECONDS);
         // Add the RTCP generator.
         if (this.automatedRtcpHandling) {
-            this.timer.newTimeout(this, this.updatePeriodicRtcpSendInterval(), TimeUnit.SECONDS);
+            // The join report counts as the first one.
+            this.lastRtcpSendInstant = TimeUtils.now();
+            this.timer.newTimeout(this, this.updatePeriodicRtcpSendInterval(), TimeUnit.MILLISECONDS);
         }
 
         if (this.internalTimer) {
@@ -322,11 +332,90 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
 
         packet.setPayloadType(this.payloadType);
         packet.setSsrc(this.localParticipant.getSsrc());
+        if (this.pacedFlow != null) {
+            // Numbered when actually sent, so that a refused packet doesn't leave a gap in the sequence.
+            return this.pacedSendData(packet);
+        }
+
         packet.setSequenceNumber(this.sequence.incrementAndGet());
         this.internalSendData(packet);
+        this.dataSent(packet.getTimestamp(), 1, packet.getDataSize());
         return true;
     }
 
+    @Override
+    public boolean sendDataPackets(List<DataPacket> packets) {
+        if (!this.running.get()) {
+            return false;
+        }
+
+        // Packets without payload are never sent, so they mustn't take a sequence number either.
+        List<DataPacket> nonEmpty = packets;
+        for (int i = 0; i < packets.size(); i++) {
+            if (packets.get(i).getDataSize() == 0) {
+                nonEmpty = new ArrayList<DataPacket>(packets.size() - 1);
+                for (DataPacket packet : packets) {
+                    if (packet.getDataSize() > 0) {
+                        nonEmpty.add(packet);
+                    }
+                }
+                break;
+            }
+        }
+        packets = nonEmpty;
+        if (packets.isEmpty()) {
+            return true;
+        }
+
+        long ssrc = this.localParticipant.getSsrc();
+        for (DataPacket packet : packets) {
+            packet.setPayloadType(this.payloadType);
+            packet.setSsrc(ssrc);
+        }
+        if (this.pacedFlow != null) {
+            // Pacing spreads the batch out, so each packet goes on its own; they're queued all or none, and numbered
+            // when actually sent.
+            return this.pacedSendData(packets);
+        }
+
+        // Reserve the whole range of sequence numbers at once, so that the batch is contiguous.
+        int sequenceNumber = this.sequence.getAndAdd(packets.size());
+        int bytes = 0;
+        for (DataPacket packet : packets) {
+            packet.setSequenceNumber(++sequenceNumber);
+            bytes += packet.getDataSize();
+        }
+        this.internalSendData(packets);
+        this.dataSent(packets.get(packets.size() - 1).getTimestamp(), packets.size(), bytes);
+        return true;
+    }
+
+    @Override
+    public boolean sendFrame(List<byte[]> fragments, long timestamp) {
+        if (!this.running.get()) {
+            return false;
+        }
+
+        List<DataPacket> packets = new ArrayList<DataPacket>(fragments.size());
+        for (byte[] fragment : fragments) {
+            // Empty fragments wouldn't be sent, so they must not take the marker from the last one that is.
+            if ((fragment == null) || (fragment.length == 0)) {
+                continue;
+            }
+
+            DataPacket packet = new DataPacket();
+            // Other fields will be set by sendDataPackets()
+            packet.setTimestamp(timestamp);
+            packet.setData(fragment);
+            packets.add(packet);
+        }
+        if (!packets.isEmpty()) {
+            packets.get(packets.size() - 1).setMarker(true);
+        }
+
+        return this.sendDataPackets(packets);
+    }
+
     @Override
     public boolean sendControlPacket(ControlPacket packet) {
         // Only allow sending explicit RTCP packets if all the following conditions are met:
@@ -361,13 +450,29 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
 
     @Override
     public boolean addReceiver(RtpParticipant remoteParticipant) {
-        return (remoteParticipant.getSsrc() != this.localParticipant.getSsrc()) &&
-               this.participantDatabase.addReceiver(remoteParticipant);
+        if ((remoteParticipant.getSsrc() == this.localParticipant.getSsrc()) ||
+            !this.participantDatabase.addReceiver(remoteParticipant)) {
+            return false;
+        }
+
+        if (this.running.get()) {
+            this.transport.addRemote(remoteParticipant.getSsrc(), remoteParticipant.getDataDestination(),
+                                     remoteParticipant.getControlDestination());
+        }
+        return true;
     }
 
     @Override
     public boolean removeReceiver(RtpParticipant remoteParticipant) {
-        return this.participantDatabase.removeReceiver(remoteParticipant);
+        if (!this.participantDatabase.removeReceiver(remoteParticipant)) {
+            return false;
+        }
+
+        if (this.running.get()) {
+            this.transport.removeRemote(remoteParticipant.getSsrc(), remoteParticipant.getDataDestination(),
+                                        remoteParticipant.getControlDestination());
+        }
+        return true;
     }
 
     @Override
@@ -390,6 +495,16 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         this.dataListeners.remove(listener);
     }
 
+    @Override
+    public void addDataViewListener(RtpSessionDataViewListener listener) {
+        this.dataViewListeners.add(listener);
+    }
+
+    @Override
+    public void removeDataViewListener(RtpSessionDataViewListener listener) {
+        this.dataViewListeners.remove(listener);
+    }
+
     @Override
     public void addControlListener(RtpSessionControlListener listener) {
         this.controlListeners.add(listener);
@@ -418,65 +533,55 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
             return;
         }
 
-        if (packet.getPayloadType() != this.payloadType) {
-            // Silently discard packets of wrong payload.
+        this.handleDataPacket(origin, packet);
+    }
+
+    // DataPacketBatchReceiver ----------------------------------------------------------------------------------------
+
+    @Override
+    public void dataPacketsReceived(SocketAddress[] origins, DataPacket[] packets, int count) {
+        if (!this.running.get()) {
             return;
         }
 
-        if (packet.getSsrc() == this.localParticipant.getSsrc()) {
-            // Sending data to ourselves? Consider this a loop and bail out!
-            if (origin.equals(this.localParticipant.getDataDestination())) {
-                this.terminate(new Throwable("Loop detected: session is directly receiving its own packets"));
-                return;
-            } else if (this.collisions.incrementAndGet() > this.maxCollisionsBeforeConsideringLoop) {
-                this.terminate(new Throwable("Loop detected after " + this.collisions.get() + " SSRC collisions"));
-                return;
-            }
+        for (int i = 0; i < count; i++) {
+            this.handleDataPacket(origins[i], packets[i]);
+        }
+    }
 
-            long oldSsrc = this.localParticipant.getSsrc();
-            long newSsrc = this.localParticipant.resolveSsrcConflict(packet.getSsrc());
+    // DataPacketViewReceiver -----------------------------------------------------------------------------------------
 
-            // A collision has been detected after packets were sent, resolve by updating the local SSRC and sending
-            // a BYE RTCP packet for the old SSRC.
-            // http://tools.ietf.org/html/rfc3550#section-8.2
-            // If no packet was sent and this is the first being received then we can avoid collisions by switching
-            // our own SSRC to something else (nothing else is required because the collision was prematurely detected
-            // and avoided).
-            // http://tools.ietf.org/html/rfc3550#section-8.1, last paragraph
-            if (this.sentOrReceivedPackets.getAndSet(true)) {
-                this.leaveSession(oldSsrc, "SSRC collision detected; rejoining with new SSRC.");
-                this.joinSession(newSsrc);
-            }
-
-            LOG.warn("SSRC collision with remote end detected on session with id {}; updating SSRC from {} to {}.",
-                     this.id, oldSsrc, newSsrc);
-            for (RtpSessionEventListener listener : this.eventListeners) {
-                listener.resolvedSsrcConflict(this, oldSsrc, newSsrc);
-            }
+    @Override
+    public void dataPacketViewReceived(SocketAddress origin, DataPacketView view) {
+        if (!this.running.get()) {
+            return;
         }
 
-        // Associate the packet with a participant or create one.
-        RtpParticipant participant = this.participantDatabase.getOrCreateParticipantFromDataPacket(origin, packet);
-        if (participant == null) {
-            // Depending on database implementation, it may chose not to create anything, in which case this packet
-            // must be discarded.
+        if (!this.acceptDataPacket(origin, view.getPayloadType(), view.getSsrc())) {
             return;
         }
 
-        // Should the packet be discarded due to out of order SN?
-        if ((participant.getLastSequenceNumber() >= packet.getSequenceNumber()) && this.discardOutOfOrder) {
-            LOG.trace("Discarded out of order packet from {} in session with id {} (last SN was {}, packet SN was {}).",
-                      participant, this.id, participant.getLastSequenceNumber(), packet.getSequenceNumber());
+        // Known participants (the usual case) are found without building the packet; only new ones require it.
+        RtpParticipant participant = this.participantDatabase.getParticipant(view.getSsrc());
+        if (participant == null) {
+            participant = this.participantDatabase.getOrCreateParticipantFromDataPacket(origin, view.toDataPacket());
+        }
+        if (participant != null) {
+            participant.dataPacketReceived(view.getSequenceNumber(), view.getTimestamp(), view.getDataSize(),
+                                           this.getClockRate(view.getPayloadType()));
+        }
+        if (!this.updateReceivedSequence(origin, participant, view.getSequenceNumber())) {
             return;
         }
 
-        // Update last SN for participant.
-        participant.setLastSequenceNumber(packet.getSequenceNumber());
-        participant.setLastDataOrigin(origin);
-
-        // Finally, dispatch the event to the data listeners.
-        for (RtpSessionDataListener listener : this.dataListeners) {
-            listener.dataPacketReceived(this, participant.getInfo(), packet);
+        for (RtpSessionDataViewListener listener : this.dataViewListeners) {
+            listener.dataPacketReceived(this, participant.getInfo(), view);
+        }
+        if (!this.dataListeners.isEmpty()) {
+            DataPacket packet = view.toDataPacket();
+            for (RtpSessionDataListener listener : this.dataListeners) {
+                listener.dataPacketReceived(this, participant.getInfo(), packet);
+            }
         }
     }
 
@@ -496,6 +601,8 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
             return;
         }
 
+        this.participantDatabase.updateAverageRtcpSize(packet.getEncodedSize() + UDP_IP_OVERHEAD);
+
         for (ControlPacket controlPacket : packet.getControlPackets()) {
             switch (controlPacket.getType()) {
                 case SENDER_REPORT:
@@ -526,48 +633,103 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
             return;
         }
 
-        final long currentSsrc = this.localParticipant.getSsrc();
-        final SourceDescriptionPacket sdesPacket = buildSdesPacket(currentSsrc);
-        this.participantDatabase.doWithReceivers(new ParticipantOperation() {
-            @Override
-            public void doWithParticipant(RtpParticipant participant) throws Exception {
-                AbstractReportPacket report = buildReportPacket(currentSsrc, participant);
-                internalSendControl(new CompoundControlPacket(report, sdesPacket));
-            }
-        });
+        // Timer reconsideration (RFC 3550, section 6.3.6): the group may have grown since this send was scheduled, in
+        // which case the interval is now longer and the send is pushed back.
+        long now = TimeUtils.now();
+        long nextSendInstant = this.lastRtcpSendInstant + this.updatePeriodicRtcpSendInterval();
+        if (nextSendInstant > now) {
+            this.timer.newTimeout(this, nextSendInstant - now, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // A single report, covering all the sources heard since the last one, goes out to every receiver.
+        long currentSsrc = this.localParticipant.getSsrc();
+        AbstractReportPacket report = this.buildReportPacket(currentSsrc, this.lastRtcpSendInstant);
+        CompoundControlPacket compoundPacket = new CompoundControlPacket(report, this.buildSdesPacket(currentSsrc));
+        this.participantDatabase.updateAverageRtcpSize(compoundPacket.getEncodedSize() + UDP_IP_OVERHEAD);
+        this.internalSendControl(compoundPacket);
+        this.lastRtcpSendInstant = now;
+        this.initialRtcp = false;
 
         if (!this.running.get()) {
             return;
         }
-        this.timer.newTimeout(this, this.updatePeriodicRtcpSendInterval(), TimeUnit.SECONDS);
+        this.timer.newTimeout(this, this.updatePeriodicRtcpSendInterval(), TimeUnit.MILLISECONDS);
     }
 
     // protected helpers ----------------------------------------------------------------------------------------------
 
-    protected void handleReportPacket(SocketAddress origin, AbstractReportPacket abstractReportPacket) {
-        if (abstractReportPacket.getReceptionReportCount() == 0) {
+    private void handleDataPacket(SocketAddress origin, DataPacket packet) {
+        if (!this.acceptDataPacket(origin, packet.getPayloadType(), packet.getSsrc())) {
             return;
         }
 
+        // Associate the packet with a participant or create one.
+        RtpParticipant participant = this.participantDatabase.getOrCreateParticipantFromDataPacket(origin, packet);
+        if (participant != null) {
+            participant.dataPacketReceived(packet.getSequenceNumber(), packet.getTimestamp(), packet.getDataSize(),
+                                           this.getClockRate(packet.getPayloadType()));
+        }
+        if (!this.updateReceivedSequence(origin, participant, packet.getSequenceNumber())) {
+            return;
+        }
+
+        // Finally, dispatch the event to the data listeners.
+        for (RtpSessionDataListener listener : this.dataListeners) {
+            listener.dataPacketReceived(this, participant.getInfo(), packet);
+        }
+    }
+
+    protected void handleReportPacket(SocketAddress origin, AbstractReportPacket abstractReportPacket) {
         RtpParticipant context = this.participantDatabase.getParticipant(abstractReportPacket.getSenderSsrc());
         if (context == null) {
             // Ignore; RTCP-SDES or RTP packet must first be received.
             return;
         }
+        // RTCP counts as activity too, so receive-only participants don't time out.
+        context.packetReceived();
+
+        // For sender reports, keep the timestamp to echo it back in our next report (LSR/DLSR).
+        if (abstractReportPacket.getType().equals(ControlPacket.Type.SENDER_REPORT)) {
+            SenderReportPacket senderReport = (SenderReportPacket) abstractReportPacket;
+            context.senderReportReceived(senderReport.getNtpTimestamp());
+        }
+
+        if (abstractReportPacket.getReceptionReportCount() == 0) {
+            return;
+        }
 
         for (ReceptionReport receptionReport : abstractReportPacket.getReceptionReports()) {
             // Ignore all reception reports except for the one who pertains to the local participant (only data that
             // matters here is the link between this participant and ourselves).
             if (receptionReport.getSsrc() == this.localParticipant.getSsrc()) {
-                // TODO
+                this.updateRoundTripTime(context, receptionReport);
             }
         }
+    }
 
-        // For sender reports, also handle the sender information.
-        if (abstractReportPacket.getType().equals(ControlPacket.Type.SENDER_REPORT)) {
-            SenderReportPacket senderReport = (SenderReportPacket) abstractReportPacket;
-            // TODO
+    /**
+     * Computes the round-trip time to a participant from a reception report it sent about us (RFC 3550, section
+     * 6.4.1): the time elapsed since our sender report it echoes, minus the time it held on to it.
+     *
+     * @param participant Participant that sent the report.
+     * @param report      Reception report about the local participant.
+     */
+    protected void updateRoundTripTime(RtpParticipant participant, ReceptionReport report) {
+        if (report.getLastSenderReport() == 0) {
+            // It hasn't received a sender report from us yet.
+            return;
         }
+
+        long arrival = TimeUtils.toCompactNtp(TimeUtils.nowNtp());
+        long roundTripTime = (arrival - report.getLastSenderReport() - report.getDelaySinceLastSenderReport())
+                             & 0xffffffffL;
+        if (roundTripTime > 0x7fffffffL) {
+            // Negative: clocks are off or the report is bogus.
+            return;
+        }
+
+        participant.setRoundTripTime(TimeUtils.compactNtpToMicros(roundTripTime));
     }
 
     protected void handleSdesPacket(SocketAddress origin, SourceDescriptionPacket packet) {
@@ -578,10 +740,11 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
                 // must be discarded.
                 return;
             }
+            participant.packetReceived();
             if (!participant.hasReceivedSdes() || this.tryToUpdateOnEverySdes) {
                 participant.receivedSdes();
                 // If this participant wasn't created from an SDES packet, then update its participant's description.
-                if (participant.getInfo().updateFromSdesChunk(chunk)) {
+                if (this.participantDatabase.updateParticipantFromSdesChunk(participant, chunk)) {
                     for (RtpSessionEventListener listener : this.eventListeners) {
                         listener.participantDataUpdated(this, participant);
                     }
@@ -594,7 +757,9 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         for (Long ssrc : packet.getSsrcList()) {
             RtpParticipant participant = this.participantDatabase.getParticipant(ssrc);
             if (participant != null) {
+                participant.packetReceived();
                 participant.byeReceived();
+                this.participantDatabase.byeReceived(participant);
                 for (RtpSessionEventListener listener : eventListeners) {
                     listener.participantLeft(this, participant);
                 }
@@ -604,27 +769,186 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
                   packet.getSsrcList(), this.id, packet. getReasonForLeaving());
     }
 
+    /**
+     * Performs the checks that apply to every incoming RTP packet before it's associated with a participant: payload
+     * type filtering and SSRC collision/loop detection (and resolution).
+     *
+     * @return {@code true} if the packet should be processed, {@code false} if it should be discarded.
+     */
+    protected boolean acceptDataPacket(SocketAddress origin, int payloadType, long ssrc) {
+        if (payloadType != this.payloadType) {
+            // Silently discard packets of wrong payload.
+            return false;
+        }
+
+        if (ssrc == this.localParticipant.getSsrc()) {
+            // Sending data to ourselves? Consider this a loop and bail out!
+            if (origin.equals(this.localParticipant.getDataDestination())) {
+                this.terminate(new Throwable("Loop detected: session is directly receiving its own packets"));
+                return false;
+            } else if (this.collisions.incrementAndGet() > this.maxCollisionsBeforeConsideringLoop) {
+                this.terminate(new Throwable("Loop detected after " + this.collisions.get() + " SSRC collisions"));
+                return false;
+            }
+
+            long oldSsrc = this.localParticipant.getSsrc();
+            long newSsrc = this.localParticipant.resolveSsrcConflict(ssrc);
+
+            // A collision has been detected after packets were sent, resolve by updating the local SSRC and sending
+            // a BYE RTCP packet for the old SSRC.
+            // http://tools.ietf.org/html/rfc3550#section-8.2
+            // If no packet was sent and this is the first being received then we can avoid collisions by switching
+            // our own SSRC to something else (nothing else is required because the collision was prematurely detected
+            // and avoided).
+            // http://tools.ietf.org/html/rfc3550#section-8.1, last paragraph
+            if (this.sentOrReceivedPackets.getAndSet(true)) {
+                this.leaveSession(oldSsrc, "SSRC collision detected; rejoining with new SSRC.");
+                // Sender reports for the new SSRC must not account for what was sent under the old one.
+                this.resetSendStats();
+                this.joinSession(newSsrc);
+            }
+
+            LOG.warn("SSRC collision with remote end detected on session with id {}; updating SSRC from {} to {}.",
+                     this.id, oldSsrc, newSsrc);
+            for (RtpSessionEventListener listener : this.eventListeners) {
+                listener.resolvedSsrcConflict(this, oldSsrc, newSsrc);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Updates a participant's reception state with the sequence number of a newly received packet.
+     *
+     * @return {@code true} if the packet should be dispatched, {@code false} if it should be discarded (either no
+     *         participant was found/created or the packet is out of order and such packets are being discarded).
+     */
+    protected boolean updateReceivedSequence(SocketAddress origin, RtpParticipant participant, int sequenceNumber) {
+        if (participant == null) {
+            // Depending on database implementation, it may chose not to create anything, in which case this packet
+            // must be discarded.
+            return false;
+        }
+
+        // Should the packet be discarded due to out of order SN?
+        if ((participant.getLastSequenceNumber() >= sequenceNumber) && this.discardOutOfOrder) {
+            LOG.trace("Discarded out of order packet from {} in session with id {} (last SN was {}, packet SN was {}).",
+                      participant, this.id, participant.getLastSequenceNumber(), sequenceNumber);
+            return false;
+        }
+
+        // Update last SN for participant.
+        participant.setLastSequenceNumber(sequenceNumber);
+        participant.setLastDataOrigin(origin);
+
+        return true;
+    }
+
     protected abstract ParticipantDatabase createDatabase();
 
+    /**
+     * Creates the transport used when none was provided through {@link #setTransport(RtpTransport)}: a transport over
+     * the configured {@link SharedPortTransport} or, by default, a {@link DatagramTransport} bound to the local
+     * participant's addresses and configured with this session's options.
+     *
+     * @return A new transport for this session.
+     */
+    protected RtpTransport createTransport() {
+        if (this.sharedTransport != null) {
+            return this.sharedTransport.createSessionTransport();
+        }
+
+        DatagramChannelFactory factory = this.channelFactory;
+        if (factory == null) {
+            if (this.useNio) {
+                factory = new OioDatagramChannelFactory(Executors.newCachedThreadPool());
+            } else {
+                factory = new NioDatagramChannelFactory(Executors.newCachedThreadPool());
+            }
+        }
+
+        DatagramTransport datagramTransport = new DatagramTransport(this.localParticipant.getDataDestination(),
+                                                                    this.localParticipant.getControlDestination(),
+                                                                    factory, this.channelFactory != null);
+        datagramTransport.setSendBufferSize(this.sendBufferSize);
+        datagramTransport.setReceiveBufferSize(this.receiveBufferSize);
+        datagramTransport.setUseRtcpMux(this.useRtcpMux);
+        datagramTransport.setSliceReceivedData(this.sliceReceivedData);
+        datagramTransport.setRecycleDataPackets(this.recycleDataPackets);
+        datagramTransport.setUseDataPacketViews(this.useDataPacketViews);
+        datagramTransport.setExecutor(this.executor);
+        return datagramTransport;
+    }
+
     protected void internalSendData(final DataPacket packet) {
-        this.participantDatabase.doWithReceivers(new ParticipantOperation() {
-            @Override
-            public void doWithParticipant(RtpParticipant participant) throws Exception {
-                if (participant.receivedBye()) {
-                    return;
-                }
-                try {
-                    writeToData(packet, participant.getDataDestination());
-                } catch (Exception e) {
-                    LOG.error("Failed to send RTP packet to participants in session with id {}.", id);
-                }
+        if (packet.getDataSize() == 0) {
+            return;
+        }
+
+        // Serialise once and hand each receiver its own read-only view of the same bytes.
+        ChannelBuffer encoded = this.encodeDataPacket(packet);
+        // Iterate over the receiver snapshot rather than through doWithReceivers(): no locking, no allocation.
+        RtpParticipant[] receivers = this.participantDatabase.getReceiverSnapshot();
+        for (int i = 0; i < receivers.length; i++) {
+            if (receivers[i].receivedBye()) {
+                continue;
+            }
+            try {
+                this.writeToData(encoded, receivers[i].getDataDestination());
+            } catch (Exception e) {
+                LOG.error("Failed to send RTP packet to participants in session with id {}.", e, this.id);
             }
+        }
+    }
 
-            @Override
-            public String toString() {
-                return "internalSendData() for session with id " + id;
+    /**
+     * Queues a packet on this session's paced flow, to be numbered and sent when the {@link #bandwidthLimit} allows it.
+     *
+     * @param packet Packet to send.
+     *
+     * @return {@code true} if the packet was queued, {@code false} if the flow is full or closed.
+     */
+    protected boolean pacedSendData(DataPacket packet) {
+        return this.pacedFlow.send(packet.getEncodedSize(), new PacedSend(packet));
+    }
+
+    /**
+     * Queues packets on this session's paced flow, back to back. Either all of them are queued or none is.
+     *
+     * @param packets Packets to send.
+     *
+     * @return {@code true} if the packets were queued, {@code false} if they don't fit in the flow or it's closed.
+     */
+    protected boolean pacedSendData(List<DataPacket> packets) {
+        int[] sizes = new int[packets.size()];
+        Runnable[] sends = new Runnable[packets.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            DataPacket packet = packets.get(i);
+            sizes[i] = packet.getEncodedSize();
+            sends[i] = new PacedSend(packet);
+        }
+
+        return this.pacedFlow.send(sizes, sends);
+    }
+
+    protected void internalSendData(List<DataPacket> packets) {
+        ChannelBuffer[] encoded = this.encodeDataPackets(packets);
+        if (encoded.length == 0) {
+            return;
+        }
+
+        RtpParticipant[] receivers = this.participantDatabase.getReceiverSnapshot();
+        for (int i = 0; i < receivers.length; i++) {
+            if (receivers[i].receivedBye()) {
+                continue;
             }
-        });
+            try {
+                this.writeToData(encoded, receivers[i].getDataDestination());
+            } catch (Exception e) {
+                LOG.error("Failed to send RTP packets to participants in session with id {}.", e, this.id);
+            }
+        }
     }
 
     protected void internalSendControl(ControlPacket packet, RtpParticipant participant) {
@@ -651,7 +975,8 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         }
     }
 
-    protected void internalSendControl(final ControlPacket packet) {
+    protected void internalSendControl(ControlPacket packet) {
+        final ChannelBuffer encoded = packet.encode();
         this.participantDatabase.doWithReceivers(new ParticipantOperation() {
             @Override
             public void doWithParticipant(RtpParticipant participant) throws Exception {
@@ -659,7 +984,7 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
                     return;
                 }
                 try {
-                    writeToControl(packet, participant.getControlDestination());
+                    writeToControl(encoded, participant.getControlDestination());
                 } catch (Exception e) {
                     LOG.error("Failed to send RTCP packet to participants in session with id {}.", id);
                 }
@@ -672,7 +997,8 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         });
     }
 
-    protected void internalSendControl(final CompoundControlPacket packet) {
+    protected void internalSendControl(CompoundControlPacket packet) {
+        final ChannelBuffer encoded = packet.encode();
         this.participantDatabase.doWithReceivers(new ParticipantOperation() {
             @Override
             public void doWithParticipant(RtpParticipant participant) throws Exception {
@@ -680,7 +1006,7 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
                     return;
                 }
                 try {
-                    writeToControl(packet, participant.getControlDestination());
+                    writeToControl(encoded, participant.getControlDestination());
                 } catch (Exception e) {
                     LOG.error("Failed to send RTCP compound packet to participants in session with id {}.", id);
                 }
@@ -693,16 +1019,95 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         });
     }
 
+    protected ChannelBuffer encodeDataPacket(DataPacket packet) {
+        if (this.copyDataOnSend) {
+            return packet.encode();
+        } else {
+            return packet.encodeWrapped();
+        }
+    }
+
+    /**
+     * Encodes a batch of packets, skipping the ones without payload. When payloads are copied, the whole batch is
+     * encoded into a single buffer and each packet is a slice of it: one allocation per batch rather than one per
+     * packet. That buffer is not pooled, as the transport may still be writing it after this session moves on.
+     *
+     * @param packets Packets to encode.
+     *
+     * @return Encoded packets.
+     */
+    protected ChannelBuffer[] encodeDataPackets(List<DataPacket> packets) {
+        int count = 0;
+        int size = 0;
+        for (DataPacket packet : packets) {
+            if (packet.getDataSize() > 0) {
+                count++;
+                size += packet.getEncodedSize();
+            }
+        }
+
+        ChannelBuffer[] encoded = new ChannelBuffer[count];
+        ChannelBuffer buffer = this.copyDataOnSend ? ChannelBuffers.buffer(size) : null;
+        int i = 0;
+        for (DataPacket packet : packets) {
+            if (packet.getDataSize() == 0) {
+                continue;
+            }
+
+            if (buffer == null) {
+                encoded[i++] = packet.encodeWrapped();
+            } else {
+                int offset = buffer.writerIndex();
+                packet.encodeInto(buffer);
+                encoded[i++] = buffer.slice(offset, buffer.writerIndex() - offset);
+            }
+        }
+
+        return encoded;
+    }
+
     protected void writeToData(DataPacket packet, SocketAddress destination) {
-        this.dataChannel.write(packet, destination);
+        this.writeToData(this.encodeDataPacket(packet), destination);
     }
 
     protected void writeToControl(ControlPacket packet, SocketAddress destination) {
-        this.controlChannel.write(packet, destination);
+        this.writeToControl(packet.encode(), destination);
     }
 
     protected void writeToControl(CompoundControlPacket packet, SocketAddress destination) {
-        this.controlChannel.write(packet, destination);
+        this.writeToControl(packet.encode(), destination);
+    }
+
+    /**
+     * Writes an already encoded RTP packet. The same encoded packet can be written to multiple destinations; the
+     * transport leaves the buffer's indexes untouched.
+     *
+     * @param encoded     Encoded RTP packet.
+     * @param destination Destination address.
+     */
+    protected void writeToData(ChannelBuffer encoded, SocketAddress destination) {
+        this.transport.writeData(encoded, destination);
+    }
+
+    /**
+     * Writes a batch of already encoded RTP packets to the same destination, in order.
+     *
+     * @param encoded     Encoded RTP packets.
+     * @param destination Destination address.
+     */
+    protected void writeToData(ChannelBuffer[] encoded, SocketAddress destination) {
+        this.transport.writeData(encoded, destination);
+    }
+
+    /**
+     * Writes an already encoded (possibly compound) RTCP packet. The same encoded packet can be written to multiple
+     * destinations; the transport leaves the buffer's indexes untouched.
+     *
+     * @param encoded     Encoded RTCP packet.
+     * @param destination Destination address.
+     */
+    protected void writeToControl(ChannelBuffer encoded, SocketAddress destination) {
+        this.transport.writeControl(encoded, destination);
     }
 
     protected void joinSession(long currentSsrc) {
@@ -716,7 +1121,9 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         SourceDescriptionPacket sdesPacket = this.buildSdesPacket(currentSsrc);
 
         CompoundControlPacket compoundPacket = new CompoundControlPacket(emptyReceiverReport, sdesPacket);
+        this.participantDatabase.updateAverageRtcpSize(compoundPacket.getEncodedSize() + UDP_IP_OVERHEAD);
         this.internalSendControl(compoundPacket);
+        this.initialRtcp = true;
     }
 
     protected void leaveSession(final long currentSsrc, String motive) {
@@ -732,47 +1139,135 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         this.internalSendControl(new CompoundControlPacket(sdesPacket, byePacket));
     }
 
-    protected AbstractReportPacket buildReportPacket(long currentSsrc, RtpParticipant context) {
+    /**
+     * Builds a SR (or a RR, if no data was sent in the last two reporting intervals) with reception report blocks for
+     * the sources heard since a given instant. A packet holds at most {@value #MAX_REPORT_BLOCKS} blocks; with more
+     * sources than that, consecutive reports rotate through them, so that each source gets reported on every few
+     * intervals.
+     *
+     * @param currentSsrc SSRC of the local participant.
+     * @param heardSince  Instant, in milliseconds, since which sources must have sent data to be reported on.
+     *
+     * @return The report packet.
+     */
+    protected AbstractReportPacket buildReportPacket(long currentSsrc, final long heardSince) {
         AbstractReportPacket packet;
-        if (this.getSentPackets() == 0) {
-            // If no packets were sent to this source, then send a receiver report.
+        if (!this.isSender(TimeUtils.now())) {
+            // If no packets were sent lately, then send a receiver report.
             packet = new ReceiverReportPacket();
         } else {
             // Otherwise, build a sender report.
             SenderReportPacket senderPacket = new SenderReportPacket();
-            senderPacket.setNtpTimestamp(0); // FIXME
-            senderPacket.setRtpTimestamp(System.currentTimeMillis()); // FIXME
+            long now = TimeUtils.nowNanos();
+            senderPacket.setNtpTimestamp(TimeUtils.ntpTimestampAt(now));
+            senderPacket.setRtpTimestamp(this.getRtpTimestampAt(now));
             senderPacket.setSenderPacketCount(this.getSentPackets());
             senderPacket.setSenderOctetCount(this.getSentBytes());
             packet = senderPacket;
         }
         packet.setSenderSsrc(currentSsrc);
 
-        // If this source sent data, then calculate the link quality to build a reception report block.
-        if (context.getReceivedPackets() > 0) {
-            ReceptionReport block = new ReceptionReport();
-            block.setSsrc(context.getInfo().getSsrc());
-            block.setDelaySinceLastSenderReport(0); // FIXME
-            block.setFractionLost((short) 0); // FIXME
-            block.setExtendedHighestSequenceNumberReceived(0); // FIXME
-            block.setInterArrivalJitter(0); // FIXME
-            block.setCumulativeNumberOfPacketsLost(0); // FIXME
-            packet.addReceptionReportBlock(block);
+        final List<RtpParticipant> sources = new ArrayList<RtpParticipant>();
+        this.participantDatabase.doWithParticipants(new ParticipantOperation() {
+            @Override
+            public void doWithParticipant(RtpParticipant participant) throws Exception {
+                long lastData = participant.getLastDataReceptionInstant();
+                if ((lastData > 0) && (lastData >= heardSince)) {
+                    sources.add(participant);
+                }
+            }
+        });
+        if (sources.isEmpty()) {
+            return packet;
+        }
+
+        int blocks = Math.min(sources.size(), MAX_REPORT_BLOCKS);
+        int first = sources.size() > MAX_REPORT_BLOCKS ? (this.reportCursor % sources.size()) : 0;
+        for (int i = 0; i < blocks; i++) {
+            packet.addReceptionReportBlock(this.buildReceptionReport(sources.get((first + i) % sources.size())));
         }
+        this.reportCursor = first + blocks;
 
         return packet;
     }
 
-    protected SourceDescriptionPacket buildSdesPacket(long currentSsrc) {
-        SourceDescriptionPacket sdesPacket = new SourceDescriptionPacket();
-        SdesChunk chunk = new SdesChunk(currentSsrc);
+    protected ReceptionReport buildReceptionReport(RtpParticipant source) {
+        ReceptionReport block = new ReceptionReport();
+        block.setSsrc(source.getInfo().getSsrc());
+        source.getReceptionStatistics().fillReceptionReport(block);
+
+        long lastSenderReport = source.getLastSenderReport();
+        if (lastSenderReport != 0) {
+            long delay = TimeUtils.nowNanos() - source.getLastSenderReportReceptionInstant();
+            block.setLastSenderReport(lastSenderReport);
+            block.setDelaySinceLastSenderReport(TimeUtils.nanosToCompactNtp(delay) & 0xffffffffL);
+        }
+
+        return block;
+    }
+
+    /**
+     * Maps an instant to the RTP timestamp that a packet sent at that instant would carry, extrapolating from the
+     * last packet sent with the clock rate of this session's payload type.
+     *
+     * @param monotonicNanos Instant, as given by {@link TimeUtils#nowNanos()}.
+     *
+     * @return RTP timestamp.
+     */
+    protected long getRtpTimestampAt(long monotonicNanos) {
+        long timestamp = this.lastSentRtpTimestamp;
+        long elapsedMicros = (monotonicNanos - this.lastSentRtpTimestampInstant) / 1000;
+        int clockRate = this.getClockRate(this.payloadType);
+        if ((clockRate > 0) && (elapsedMicros > 0)) {
+            timestamp += (elapsedMicros * clockRate) / 1000000;
+        }
+
+        return timestamp & 0xffffffffL;
+    }
+
+    /**
+     * @param payloadType Payload type of a received packet.
+     *
+     * @return Clock rate of the payload type: {@link #clockRate} for this session's payload type, if set, or else the
+     *         rate of the static payload type; 0 if unknown.
+     */
+    protected int getClockRate(int payloadType) {
+        if ((payloadType == this.payloadType) && (this.clockRate > 0)) {
+            return this.clockRate;
+        }
 
+        return ClockRates.getClockRate(payloadType);
+    }
+
+    /**
+     * Returns the SDES packet describing the local participant.
+     * <p/>
+     * The packet (and the encoded form of its chunk) is cached and only rebuilt when the SSRC or the local
+     * participant's {@link RtpParticipantInfo} changes, so the returned instance is shared and must not be modified.
+     *
+     * @param currentSsrc SSRC to describe.
+     *
+     * @return SDES packet for the local participant.
+     */
+    protected synchronized SourceDescriptionPacket buildSdesPacket(long currentSsrc) {
         RtpParticipantInfo info = this.localParticipant.getInfo();
         if (info.getCname() == null) {
             info.setCname(new StringBuilder()
                     .append("efflux/").append(this.id).append('@')
-                    .append(this.dataChannel.getLocalAddress()).toString());
+                    .append(this.transport.getLocalAddress()).toString());
+        }
+        if (info.getTool() == null) {
+            info.setTool(VERSION);
+        }
+
+        int infoVersion = info.getVersion();
+        if ((this.localSdesPacket != null) && (this.localSdesSsrc == currentSsrc) &&
+            (this.localSdesInfoVersion == infoVersion)) {
+            return this.localSdesPacket;
         }
+
+        SourceDescriptionPacket sdesPacket = new SourceDescriptionPacket();
+        SdesChunk chunk = new SdesChunk(currentSsrc);
         chunk.addItem(SdesChunkItems.createCnameItem(info.getCname()));
 
         if (info.getName() != null) {
@@ -791,16 +1286,16 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
             chunk.addItem(SdesChunkItems.createLocationItem(info.getLocation()));
         }
 
-        if (info.getTool() == null) {
-            info.setTool(VERSION);
-        }
         chunk.addItem(SdesChunkItems.createToolItem(info.getTool()));
 
         if (info.getNote() != null) {
-            chunk.addItem(SdesChunkItems.createLocationItem(info.getNote()));
+            chunk.addItem(SdesChunkItems.createNoteItem(info.getNote()));
         }
         sdesPacket.addItem(chunk);
 
+        this.localSdesPacket = sdesPacket;
+        this.localSdesSsrc = currentSsrc;
+        this.localSdesInfoVersion = infoVersion;
         return sdesPacket;
     }
 
@@ -815,15 +1310,16 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         }
 
         this.dataListeners.clear();
+        this.dataViewListeners.clear();
         this.controlListeners.clear();
 
-        // Close data channel, send BYE RTCP packets and close control channel.
-        this.dataChannel.close();
-        this.leaveSession(this.localParticipant.getSsrc(), "Session terminated.");
-        this.controlChannel.close();
+        if (this.pacedFlow != null) {
+            this.pacedFlow.close();
+        }
 
-        this.dataBootstrap.releaseExternalResources();
-        this.controlBootstrap.releaseExternalResources();
+        // Send BYE RTCP packets and close the transport.
+        this.leaveSession(this.localParticipant.getSsrc(), "Session terminated.");
+        this.transport.close();
         LOG.debug("RtpSession with id {} terminated.", this.id);
 
         for (RtpSessionEventListener listener : this.eventListeners) {
@@ -845,13 +1341,51 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         return this.sentByteCounter.addAndGet(delta);
     }
 
-    protected long incrementSentPackets() {
-        return this.sentPacketCounter.incrementAndGet();
+    /**
+     * Accounts for data actually written to the transport, for sender reports and the RTCP interval. Paced packets
+     * are only accounted for once they leave, and refused ones never are.
+     *
+     * @param timestamp RTP timestamp of the (last) packet.
+     * @param packets   Number of packets.
+     * @param bytes     Payload octets.
+     */
+    protected void dataSent(long timestamp, int packets, int bytes) {
+        long now = TimeUtils.nowNanos();
+        this.lastSentRtpTimestamp = timestamp;
+        this.lastSentRtpTimestampInstant = now;
+        this.lastDataSendInstant = TimeUtils.now();
+        this.sentPacketCounter.addAndGet(packets);
+        this.incrementSentBytes(bytes);
+    }
+
+    /**
+     * Computes a new, randomised, RTCP transmission interval from the current state of the session (RFC 3550,
+     * section 6.3.1), using {@link #bandwidthLimit} as the session bandwidth.
+     *
+     * @return The interval, in milliseconds.
+     */
+    protected long updatePeriodicRtcpSendInterval() {
+        long now = TimeUtils.now();
+        // Senders are the members that sent data in the last two reporting intervals.
+        long sendersSince = now - (2L * this.periodicRtcpSendInterval);
+        boolean weSent = this.isSender(now);
+        int members = this.participantDatabase.getParticipantCount() + 1;
+        int senders = this.participantDatabase.getSenderCount(sendersSince) + (weSent ? 1 : 0);
+        double rtcpBandwidth = RtcpInterval.RTCP_BANDWIDTH_FRACTION * ((this.bandwidthLimit * 1000.0) / 8);
+
+        double interval = RtcpInterval.calculate(members, senders, rtcpBandwidth, weSent,
+                                                 this.participantDatabase.getAverageRtcpSize(), this.initialRtcp);
+        return (this.periodicRtcpSendInterval = (int) (RtcpInterval.randomise(interval, this.random) * 1000));
     }
 
-    protected long updatePeriodicRtcpSendInterval() {
-        // TODO make this adaptative
-        return (this.periodicRtcpSendInterval = 5);
+    /**
+     * @param now Current instant, in milliseconds.
+     *
+     * @return {@code true} if this session sent data in the last two reporting intervals (RFC 3550, section 6.3.8).
+     */
+    protected boolean isSender(long now) {
+        long since = now - (2L * this.periodicRtcpSendInterval);
+        return (this.lastDataSendInstant > 0) && (this.lastDataSendInstant >= since);
     }
 
     // getters & setters ----------------------------------------------------------------------------------------------
@@ -897,10 +1431,17 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         return bandwidthLimit;
     }
 
+    /**
+     * @param bandwidthLimit Outgoing data rate, in kbps; only enforced when a {@link #setSendPacer(SendPacer) pacer}
+     *                       is set.
+     */
     public void setBandwidthLimit(int bandwidthLimit) {
         if (this.running.get()) {
             throw new IllegalArgumentException("Cannot modify property after initialisation");
         }
+        if (bandwidthLimit <= 0) {
+            throw new IllegalArgumentException("Bandwidth limit must be > 0");
+        }
         this.bandwidthLimit = bandwidthLimit;
     }
 
@@ -967,6 +1508,28 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         return this.sentPacketCounter.get();
     }
 
+    /**
+     * @return Number of participants evicted to make room for new ones, see {@link #setMaxParticipants}.
+     */
+    public long getEvictedParticipants() {
+        return this.participantDatabase.getEvictedCount();
+    }
+
+    /**
+     * @return Number of data packets refused because the paced send queue was full, see {@link #setBandwidthLimit}.
+     */
+    public long getDroppedPacedPackets() {
+        return this.pacedFlow == null ? 0 : this.pacedFlow.getDroppedCount();
+    }
+
+    /**
+     * @return Number of new sources ignored because the participant limit was reached, see
+     *         {@link #setMaxParticipants}.
+     */
+    public long getRejectedParticipants() {
+        return this.participantDatabase.getRejectedCount();
+    }
+
     public int getParticipantDatabaseCleanup() {
         return participantDatabaseCleanup;
     }
@@ -977,4 +1540,259 @@ public abstract class AbstractRtpSession implements RtpSession, TimerTask {
         }
         this.participantDatabaseCleanup = participantDatabaseCleanup;
     }
+
+    public boolean isSliceReceivedData() {
+        return sliceReceivedData;
+    }
+
+    /**
+     * Configures whether payloads of received packets are slices of the buffer read from the socket (no copy) or
+     * independent copies.
+     * <p/>
+     * Every datagram is read into a fresh buffer that is never reused by the network layer, so sliced payloads remain
+     * valid for as long as the application holds a reference to the packet.
+     * <p/>
+     * Disabled by default, so that payloads stay independent of the network layer's buffers unless asked otherwise.
+     *
+     * @param sliceReceivedData Whether received payloads should be sliced rather than copied.
+     */
+    public void setSliceReceivedData(boolean sliceReceivedData) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.sliceReceivedData = sliceReceivedData;
+    }
+
+    public boolean isCopyDataOnSend() {
+        return copyDataOnSend;
+    }
+
+    /**
+     * Configures whether outgoing payloads are copied into a single contiguous buffer along with the RTP header or
+     * whether the header is prepended to the payload buffer through a composite buffer (no copy).
+     * <p/>
+     * Payloads are copied by default, so callers are free to reuse their buffers as soon as a send method returns.
+     * <p/>
+     * When set to {@code false}, the session takes ownership of the payloads passed to {@link #sendData(byte[], long,
+     * boolean)}, {@link #sendFrame(List, long)} and {@link #sendDataPacket(DataPacket)}: the caller must not
+     * modify those arrays or buffers until the packet has been written, which may happen later on another thread when
+     * sends are paced. Note that the socket layer still copies the packet once when sending it.
+     *
+     * @param copyDataOnSend Whether outgoing payloads should be copied rather than wrapped.
+     */
+    public void setCopyDataOnSend(boolean copyDataOnSend) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.copyDataOnSend = copyDataOnSend;
+    }
+
+    public boolean isRecycleDataPackets() {
+        return recycleDataPackets;
+    }
+
+    /**
+     * Configures whether received packets are obtained from (and returned to) a per-channel pool rather than
+     * allocated for each datagram.
+     * <p/>
+     * When enabled, a packet handed to {@link RtpSessionDataListener#dataPacketReceived} is only valid during the
+     * callback: it is cleared and reused once all listeners return. Listeners that need to keep it must call
+     * {@link DataPacket#retain()} and later {@link DataPacket#release()}. This setting overrides
+     * {@link #setSliceReceivedData(boolean)}, as pooled packets always reference the received buffer.
+     *
+     * @param recycleDataPackets Whether received packets should be pooled.
+     */
+    public void setRecycleDataPackets(boolean recycleDataPackets) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.recycleDataPackets = recycleDataPackets;
+    }
+
+    public boolean isUseDataPacketViews() {
+        return useDataPacketViews;
+    }
+
+    /**
+     * Configures whether received packets are dispatched as {@link DataPacketView}s rather than fully decoded
+     * {@link DataPacket}s.
+     * <p/>
+     * When enabled, listeners registered through {@link #addDataViewListener(RtpSessionDataViewListener)} receive the
+     * views; a full packet is only built for packets from unknown sources or when there are also listeners registered
+     * through {@link #addDataListener(RtpSessionDataListener)}. This setting overrides
+     * {@link #setRecycleDataPackets(boolean)} and {@link #setSliceReceivedData(boolean)}.
+     *
+     * @param useDataPacketViews Whether received packets should be dispatched as views.
+     */
+    public void setUseDataPacketViews(boolean useDataPacketViews) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.useDataPacketViews = useDataPacketViews;
+    }
+
+    public boolean isUseRtcpMux() {
+        return useRtcpMux;
+    }
+
+    /**
+     * Configures whether RTP and RTCP share a single channel, bound to the local participant's data address, as per
+     * <a href="http://tools.ietf.org/html/rfc5761">RFC 5761</a>. This halves the sockets (and selector load) used by
+     * each session.
+     * <p/>
+     * RTCP is still sent to each participant's control destination, so when talking to rtcp-mux peers they should be
+     * created with the same port for data and control.
+     *
+     * @param useRtcpMux Whether RTP and RTCP should be multiplexed on the data channel.
+     */
+    public void setUseRtcpMux(boolean useRtcpMux) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.useRtcpMux = useRtcpMux;
+    }
+
+    public SharedPortTransport getSharedTransport() {
+        return sharedTransport;
+    }
+
+    /**
+     * Configures this session to send and receive through a {@link SharedPortTransport} rather than binding its own
+     * channels. The transport must already be running when this session is initialised; packets from this session's
+     * receivers (by SSRC and address) are then routed to it, and data and control are multiplexed on the transport's
+     * port.
+     *
+     * @param sharedTransport Transport to use, or {@code null} to bind dedicated channels.
+     */
+    public void setSharedTransport(SharedPortTransport sharedTransport) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.sharedTransport = sharedTransport;
+    }
+
+    public DatagramChannelFactory getChannelFactory() {
+        return channelFactory;
+    }
+
+    /**
+     * Configures the factory for this session's channels. When set, the factory (and its I/O threads) can be shared
+     * by many sessions and it is not released when this session terminates; otherwise each session creates, and
+     * releases, its own factory.
+     *
+     * @param channelFactory Factory to use, or {@code null} to have this session create its own.
+     */
+    public void setChannelFactory(DatagramChannelFactory channelFactory) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.channelFactory = channelFactory;
+    }
+
+    public RtpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Configures the transport through which this session sends and receives packets. The session opens it when
+     * initialised and closes it when terminated. When not set, a transport is created on initialisation from the
+     * other options (see {@link #createTransport()}).
+     *
+     * @param transport Transport to use, or {@code null} to have one created.
+     */
+    public void setTransport(RtpTransport transport) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.transport = transport;
+        this.internalTransport = false;
+    }
+
+    public SendPacer getSendPacer() {
+        return sendPacer;
+    }
+
+    /**
+     * Paces outgoing data packets so that they never exceed the {@link #setBandwidthLimit(int) bandwidth limit},
+     * spreading bursts (e.g. key frames) over time instead of sending them at line rate. The pacer must already be
+     * running when this session is initialised and can be shared by many sessions.
+     * <p/>
+     * Paced packets are encoded when they leave the pacer's queue, so without {@link #setCopyDataOnSend(boolean)}
+     * their payloads must be left untouched until then.
+     *
+     * @param sendPacer Pacer to use, or {@code null} to send packets as soon as they are handed to this session.
+     */
+    public void setSendPacer(SendPacer sendPacer) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        this.sendPacer = sendPacer;
+    }
+
+    public int getClockRate() {
+        return clockRate;
+    }
+
+    /**
+     * Sets the RTP clock rate of this session's payload type, used to compute the interarrival jitter of received
+     * packets. Only needed for dynamic payload types; static ones use the rates from RFC 3551.
+     *
+     * @param clockRate Clock rate, in Hz, or 0 to use the static payload type's.
+     */
+    public void setClockRate(int clockRate) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        if (clockRate < 0) {
+            throw new IllegalArgumentException("Clock rate must be >= 0");
+        }
+        this.clockRate = clockRate;
+    }
+
+    public int getMaxParticipants() {
+        return maxParticipants;
+    }
+
+    /**
+     * Limits the number of remote participants this session keeps track of, so that a peer sending packets with random
+     * SSRCs can't grow it without bound. Once the limit is reached, a new source replaces the oldest one that's still
+     * on probation (see {@link RtpParticipant#isValidated()}) or, if all of them were validated, the one that was
+     * heard from the longest ago.
+     * <p/>
+     * Sources matching an explicitly added receiver are always accepted.
+     *
+     * @param maxParticipants Maximum number of participants, or 0 for no limit.
+     */
+    public void setMaxParticipants(int maxParticipants) {
+        if (this.running.get()) {
+            throw new IllegalArgumentException("Cannot modify property after initialisation");
+        }
+        if (maxParticipants < 0) {
+            throw new IllegalArgumentException("Maximum participants must be >= 0");
+        }
+        this.maxParticipants = maxParticipants;
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private final class PacedSend implements Runnable {
+
+        private final DataPacket packet;
+
+        private PacedSend(DataPacket packet) {
+            this.packet = packet;
+        }
+
+        @Override
+        public void run() {
+            if (!running.get()) {
+                return;
+            }
+
+            // The pacer runs a flow's sends in order, one at a time, so packets are numbered in the order they leave.
+            this.packet.setSequenceNumber(sequence.incrementAndGet());
+            internalSendData(this.packet);
+            dataSent(this.packet.getTimestamp(), 1, this.packet.getDataSize());
+        }
+    }
 }
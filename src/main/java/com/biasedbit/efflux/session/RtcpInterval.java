@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.session;
+
+import java.util.Random;
+
+/**
+ * RTCP transmission interval, as computed by the algorithm in RFC 3550, sections 6.3 and A.7.
+ * <p/>
+ * The interval grows with the number of members so that, whatever the size of the group, the RTCP traffic of the
+ * whole session stays within its share (5%) of the session bandwidth; a quarter of that share is reserved for senders
+ * while they are a minority.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class RtcpInterval {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    /**
+     * Fraction of the session bandwidth taken by RTCP.
+     */
+    public static final double RTCP_BANDWIDTH_FRACTION = 0.05;
+    /**
+     * Minimum interval between reports, in seconds.
+     */
+    public static final double MIN_INTERVAL = 5.0;
+    private static final double SENDER_BANDWIDTH_FRACTION = 0.25;
+    private static final double RECEIVER_BANDWIDTH_FRACTION = 1 - SENDER_BANDWIDTH_FRACTION;
+    // Compensates the randomisation for the effect of timer reconsideration converging to a lower average.
+    private static final double COMPENSATION = Math.E - 1.5;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    private RtcpInterval() {
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    /**
+     * Computes the deterministic interval, before randomisation.
+     *
+     * @param members         Members of the session, including the local participant.
+     * @param senders         Members that sent data recently, including the local participant if it did.
+     * @param rtcpBandwidth   Bandwidth available for RTCP, in bytes per second.
+     * @param weSent          Whether the local participant sent data recently.
+     * @param averageRtcpSize Average size of the RTCP packets, in bytes.
+     * @param initial         Whether the local participant hasn't yet sent a report since joining the session, in
+     *                        which case the minimum is halved so that it's reported sooner (section 6.2).
+     *
+     * @return Interval, in seconds; never below {@link #MIN_INTERVAL} (or half of it, if {@code initial}).
+     */
+    public static double calculate(int members, int senders, double rtcpBandwidth, boolean weSent,
+                                   double averageRtcpSize, boolean initial) {
+        int n = members;
+        double bandwidth = rtcpBandwidth;
+        if (senders <= (members * SENDER_BANDWIDTH_FRACTION)) {
+            if (weSent) {
+                bandwidth *= SENDER_BANDWIDTH_FRACTION;
+                n = senders;
+            } else {
+                bandwidth *= RECEIVER_BANDWIDTH_FRACTION;
+                n -= senders;
+            }
+        }
+
+        double minimum = initial ? (MIN_INTERVAL / 2) : MIN_INTERVAL;
+        double interval = (averageRtcpSize * n) / bandwidth;
+        return interval < minimum ? minimum : interval;
+    }
+
+    /**
+     * Randomises an interval to [0.5, 1.5] times its value, to avoid synchronisation between members, and divides
+     * it by e - 3/2 to compensate for timer reconsideration.
+     *
+     * @param interval Deterministic interval.
+     * @param random   Source of randomness.
+     *
+     * @return Randomised interval, in the same unit as {@code interval}.
+     */
+    public static double randomise(double interval, Random random) {
+        return (interval * (random.nextDouble() + 0.5)) / COMPENSATION;
+    }
+}
@@ -16,19 +16,21 @@
 
 package com.biasedbit.efflux.session;
 
-import com.biasedbit.efflux.network.ControlPacketReceiver;
-import com.biasedbit.efflux.network.DataPacketReceiver;
+import com.biasedbit.efflux.network.DataPacketBatchReceiver;
+import com.biasedbit.efflux.network.DataPacketViewReceiver;
+import com.biasedbit.efflux.network.RtpPacketReceiver;
 import com.biasedbit.efflux.packet.CompoundControlPacket;
 import com.biasedbit.efflux.packet.ControlPacket;
 import com.biasedbit.efflux.packet.DataPacket;
 import com.biasedbit.efflux.participant.RtpParticipant;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
  */
-public interface RtpSession extends DataPacketReceiver, ControlPacketReceiver {
+public interface RtpSession extends RtpPacketReceiver, DataPacketBatchReceiver, DataPacketViewReceiver {
 
     String getId();
 
@@ -42,6 +44,27 @@ public interface RtpSession extends DataPacketReceiver, ControlPacketReceiver {
 
     boolean sendDataPacket(DataPacket packet);
 
+    /**
+     * Sends many packets in one go: sequence numbers are assigned as a block, the packets are encoded together and
+     * the whole batch is written to each receiver at once.
+     *
+     * @param packets Packets to send, in order.
+     *
+     * @return {@code true} if the packets were sent, {@code false} otherwise.
+     */
+    boolean sendDataPackets(List<DataPacket> packets);
+
+    /**
+     * Sends a frame fragmented into many packets, all with the same timestamp and with the marker bit set only on the
+     * last one. Empty fragments are skipped.
+     *
+     * @param fragments Payload of each packet, in order.
+     * @param timestamp Timestamp of the frame.
+     *
+     * @return {@code true} if the frame was sent, {@code false} otherwise.
+     */
+    boolean sendFrame(List<byte[]> fragments, long timestamp);
+
     boolean sendControlPacket(ControlPacket packet);
 
     boolean sendControlPacket(CompoundControlPacket packet);
@@ -60,6 +83,10 @@ public interface RtpSession extends DataPacketReceiver, ControlPacketReceiver {
 
     void removeDataListener(RtpSessionDataListener listener);
 
+    void addDataViewListener(RtpSessionDataViewListener listener);
+
+    void removeDataViewListener(RtpSessionDataViewListener listener);
+
     void addControlListener(RtpSessionControlListener listener);
 
     void removeControlListener(RtpSessionControlListener listener);
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.session;
+
+import com.biasedbit.efflux.packet.DataPacketView;
+import com.biasedbit.efflux.participant.RtpParticipantInfo;
+
+/**
+ * Listener for sessions that dispatch {@link DataPacketView}s (see
+ * {@link AbstractRtpSession#setUseDataPacketViews(boolean)}). The view is only valid during the callback.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public interface RtpSessionDataViewListener {
+
+    void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacketView packet);
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.session;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.participant.RtpParticipant;
+import org.jboss.netty.channel.socket.DatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates and tracks sessions that share a single set of resources: one channel factory with a fixed number of I/O
+ * workers, one timer and, optionally, one executor for handling received packets.
+ * <p/>
+ * Without a manager each session creates its own channel factory (with its own thread pool) and timer thread, so the
+ * thread count grows with the number of sessions. The shared resources are created when the first session is created
+ * and released when the last session created by this manager terminates.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class RtpSessionManager {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(RtpSessionManager.class);
+
+    // configuration defaults -----------------------------------------------------------------------------------------
+
+    private static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int EXECUTOR_THREADS = 0;
+
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final int workerCount;
+    private final int executorThreads;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private final Map<String, RtpSession> sessions;
+    private final RtpSessionEventListener terminationListener;
+    private DatagramChannelFactory channelFactory;
+    private HashedWheelTimer timer;
+    private OrderedMemoryAwareThreadPoolExecutor executor;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public RtpSessionManager() {
+        this(WORKER_COUNT, EXECUTOR_THREADS);
+    }
+
+    public RtpSessionManager(int workerCount) {
+        this(workerCount, EXECUTOR_THREADS);
+    }
+
+    /**
+     * @param workerCount     Number of I/O worker threads shared by all sessions.
+     * @param executorThreads Number of threads of the executor that handles received packets, off the I/O threads; if
+     *                        0, packets are handled in the I/O threads.
+     */
+    public RtpSessionManager(int workerCount, int executorThreads) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be > 0");
+        }
+        if (executorThreads < 0) {
+            throw new IllegalArgumentException("Executor threads must be >= 0");
+        }
+
+        this.workerCount = workerCount;
+        this.executorThreads = executorThreads;
+        this.sessions = new HashMap<String, RtpSession>();
+        this.terminationListener = new TerminationListener();
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public synchronized MultiParticipantSession createMultiParticipantSession(String id, int payloadType,
+                                                                             RtpParticipant localParticipant) {
+        this.checkId(id);
+        this.acquireResources();
+        MultiParticipantSession session = new MultiParticipantSession(id, payloadType, localParticipant, this.timer,
+                                                                      this.executor);
+        this.register(session);
+        return session;
+    }
+
+    public synchronized SingleParticipantSession createSingleParticipantSession(String id, int payloadType,
+                                                                               RtpParticipant localParticipant,
+                                                                               RtpParticipant remoteParticipant) {
+        this.checkId(id);
+        this.acquireResources();
+        SingleParticipantSession session = new SingleParticipantSession(id, payloadType, localParticipant,
+                                                                        remoteParticipant, this.timer, this.executor);
+        this.register(session);
+        return session;
+    }
+
+    public synchronized RtpSession getSession(String id) {
+        return this.sessions.get(id);
+    }
+
+    public synchronized Collection<RtpSession> getSessions() {
+        return Collections.unmodifiableCollection(new ArrayList<RtpSession>(this.sessions.values()));
+    }
+
+    public synchronized int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Terminates a session and stops tracking it. Sessions that are terminated through {@link RtpSession#terminate()}
+     * are removed automatically; this is needed for sessions that were never successfully initialised, which would
+     * otherwise keep the shared resources alive.
+     *
+     * @param session Session to remove.
+     */
+    public void removeSession(RtpSession session) {
+        session.terminate();
+        this.sessionTerminated(session);
+    }
+
+    /**
+     * Terminates every session created by this manager, which in turn releases the shared resources.
+     */
+    public void terminateAll() {
+        for (RtpSession session : this.getSessions()) {
+            session.terminate();
+        }
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private void checkId(String id) {
+        if (this.sessions.containsKey(id)) {
+            throw new IllegalArgumentException("A session with id " + id + " already exists");
+        }
+    }
+
+    private void acquireResources() {
+        if (this.channelFactory != null) {
+            return;
+        }
+
+        this.channelFactory = new NioDatagramChannelFactory(Executors.newCachedThreadPool(), this.workerCount);
+        this.timer = new HashedWheelTimer(1, TimeUnit.SECONDS);
+        if (this.executorThreads > 0) {
+            this.executor = new OrderedMemoryAwareThreadPoolExecutor(this.executorThreads, 0, 0);
+        }
+        LOG.debug("Created shared resources ({} I/O workers, {} executor threads).",
+                  this.workerCount, this.executorThreads);
+    }
+
+    private void register(AbstractRtpSession session) {
+        session.setChannelFactory(this.channelFactory);
+        session.addEventListener(this.terminationListener);
+        this.sessions.put(session.getId(), session);
+    }
+
+    private void sessionTerminated(RtpSession session) {
+        final DatagramChannelFactory channelFactory;
+        final HashedWheelTimer timer;
+        final OrderedMemoryAwareThreadPoolExecutor executor;
+        synchronized (this) {
+            if (this.sessions.get(session.getId()) != session) {
+                return;
+            }
+            this.sessions.remove(session.getId());
+            if (!this.sessions.isEmpty()) {
+                return;
+            }
+
+            // Last one out turns off the lights; the next session created will get a fresh set of resources.
+            channelFactory = this.channelFactory;
+            timer = this.timer;
+            executor = this.executor;
+            this.channelFactory = null;
+            this.timer = null;
+            this.executor = null;
+        }
+
+        // Sessions terminate from I/O, executor or timer threads, none of which can wait for their own pool to shut
+        // down, so release from a separate thread.
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                timer.stop();
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+                channelFactory.releaseExternalResources();
+                LOG.debug("Released shared resources.");
+            }
+        }, "RtpSessionManager-release");
+        releaser.setDaemon(true);
+        releaser.start();
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private final class TerminationListener implements RtpSessionEventListener {
+
+        @Override
+        public void participantJoinedFromData(RtpSession session, RtpParticipant participant) {
+        }
+
+        @Override
+        public void participantJoinedFromControl(RtpSession session, RtpParticipant participant) {
+        }
+
+        @Override
+        public void participantDataUpdated(RtpSession session, RtpParticipant participant) {
+        }
+
+        @Override
+        public void participantLeft(RtpSession session, RtpParticipant participant) {
+        }
+
+        @Override
+        public void participantDeleted(RtpSession session, RtpParticipant participant) {
+        }
+
+        @Override
+        public void resolvedSsrcConflict(RtpSession session, long oldSsrc, long newSsrc) {
+        }
+
+        @Override
+        public void sessionTerminated(RtpSession session, Throwable cause) {
+            RtpSessionManager.this.sessionTerminated(session);
+        }
+    }
+}
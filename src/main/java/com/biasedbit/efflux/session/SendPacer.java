@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.session;
+
+import com.biasedbit.efflux.logging.Logger;
+import com.biasedbit.efflux.util.TimeUtils;
+import com.biasedbit.efflux.util.TokenBucket;
+
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spreads outgoing packets over time so that each flow (typically a session) stays within its rate.
+ * <p/>
+ * Every flow has its own {@link TokenBucket} and queue of pending sends; a single thread serves all of them, sleeping
+ * until the instant the earliest flow is allowed to send. Sleeps have sub-millisecond precision (unlike the timers
+ * used for RTCP) and an idle pacer costs nothing, so one pacer can be shared by many sessions.
+ * <p/>
+ * Sends are run on the pacer's thread, so they should be quick; writing an encoded packet to a transport is.
+ * <p/>
+ * Each flow queues a bounded number of sends; once full, new sends are rejected (and counted as dropped) instead of
+ * letting the queue, and the delay it adds, grow without limit.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class SendPacer implements Runnable {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final Logger LOG = Logger.getLogger(SendPacer.class);
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    // Flows with pending sends, earliest allowed send first.
+    private final PriorityQueue<Flow> scheduled;
+    private Thread thread;
+    private volatile boolean running;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public SendPacer() {
+        this.scheduled = new PriorityQueue<Flow>();
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    public synchronized boolean init() {
+        if (this.running) {
+            return true;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "SendPacer-" + COUNTER.incrementAndGet());
+        this.thread.setDaemon(true);
+        this.thread.start();
+        return true;
+    }
+
+    /**
+     * Stops the pacer. Pending sends are discarded.
+     */
+    public void terminate() {
+        Thread thread;
+        synchronized (this) {
+            if (!this.running) {
+                return;
+            }
+
+            this.running = false;
+            for (Flow flow : this.scheduled) {
+                flow.pending.clear();
+                flow.scheduled = false;
+            }
+            this.scheduled.clear();
+            thread = this.thread;
+        }
+
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates a new flow, paced independently of all others.
+     *
+     * @param bytesPerSecond Rate of the flow.
+     * @param burst          Largest amount of bytes the flow may send back to back.
+     * @param maxPending     Largest number of sends the flow may have queued.
+     *
+     * @return The new flow.
+     */
+    public Flow createFlow(long bytesPerSecond, long burst, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Max pending sends must be > 0");
+        }
+
+        return new Flow(new TokenBucket(bytesPerSecond, burst, TimeUtils.nowNanos()), maxPending);
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    // Runnable -------------------------------------------------------------------------------------------------------
+
+    @Override
+    public void run() {
+        while (this.running) {
+            Runnable send = null;
+            long delay;
+            synchronized (this) {
+                Flow flow = this.scheduled.peek();
+                long now = TimeUtils.nowNanos();
+                if (flow == null) {
+                    delay = -1;
+                } else {
+                    delay = flow.sendAt - now;
+                    if (delay <= 0) {
+                        this.scheduled.poll();
+                        PendingSend pending = flow.pending.poll();
+                        flow.bucket.consume(pending.size, now);
+                        send = pending.send;
+                        if (flow.pending.isEmpty()) {
+                            flow.scheduled = false;
+                        } else {
+                            flow.sendAt = now + flow.bucket.getDelay(now);
+                            this.scheduled.add(flow);
+                        }
+                    }
+                }
+            }
+
+            if (send != null) {
+                try {
+                    send.run();
+                } catch (Exception e) {
+                    LOG.error("Paced send failed.", e);
+                }
+            } else if (delay < 0) {
+                // Nothing to send; woken up by the next enqueue.
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, delay);
+            }
+        }
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private synchronized boolean enqueue(Flow flow, int[] sizes, Runnable[] sends) {
+        if (!this.running || flow.closed) {
+            return false;
+        }
+
+        if ((flow.pending.size() + sends.length) > flow.maxPending) {
+            flow.dropped += sends.length;
+            return false;
+        }
+
+        for (int i = 0; i < sends.length; i++) {
+            flow.pending.add(new PendingSend(sizes[i], sends[i]));
+        }
+        if (!flow.scheduled) {
+            long now = TimeUtils.nowNanos();
+            flow.sendAt = now + flow.bucket.getDelay(now);
+            flow.scheduled = true;
+            this.scheduled.add(flow);
+            // Only needs waking up if it's now sleeping for too long.
+            if (this.scheduled.peek() == flow) {
+                LockSupport.unpark(this.thread);
+            }
+        }
+
+        return true;
+    }
+
+    private synchronized void close(Flow flow) {
+        flow.closed = true;
+        flow.pending.clear();
+        if (flow.scheduled) {
+            this.scheduled.remove(flow);
+            flow.scheduled = false;
+        }
+    }
+
+    private synchronized int getPendingCount(Flow flow) {
+        return flow.pending.size();
+    }
+
+    private synchronized long getDroppedCount(Flow flow) {
+        return flow.dropped;
+    }
+
+    // public classes -------------------------------------------------------------------------------------------------
+
+    /**
+     * Paced stream of sends. Sends are run in order, each as soon as the flow's rate allows it.
+     */
+    public final class Flow implements Comparable<Flow> {
+
+        private final TokenBucket bucket;
+        private final int maxPending;
+        private final Queue<PendingSend> pending;
+        // Instant at which the head of the queue may be sent; only valid while scheduled.
+        private long sendAt;
+        private boolean scheduled;
+        private boolean closed;
+        private long dropped;
+
+        private Flow(TokenBucket bucket, int maxPending) {
+            this.bucket = bucket;
+            this.maxPending = maxPending;
+            this.pending = new LinkedList<PendingSend>();
+        }
+
+        /**
+         * Queues a send.
+         *
+         * @param size Bytes that will be sent, taken from the flow's allowance.
+         * @param send Action that actually sends, run on the pacer's thread.
+         *
+         * @return {@code true} if the send was queued, {@code false} if the flow is full, closed or the pacer stopped.
+         */
+        public boolean send(int size, Runnable send) {
+            return enqueue(this, new int[]{size}, new Runnable[]{send});
+        }
+
+        /**
+         * Queues several sends, back to back. Either all of them are queued or none is.
+         *
+         * @param sizes Bytes that each send will send, taken from the flow's allowance.
+         * @param sends Actions that actually send, run in order on the pacer's thread.
+         *
+         * @return {@code true} if the sends were queued, {@code false} if they don't fit in the flow, the flow is
+         *         closed or the pacer stopped.
+         */
+        public boolean send(int[] sizes, Runnable[] sends) {
+            if (sizes.length != sends.length) {
+                throw new IllegalArgumentException("Sizes and sends must have the same length");
+            }
+
+            return enqueue(this, sizes, sends);
+        }
+
+        /**
+         * Discards pending sends and refuses new ones.
+         */
+        public void close() {
+            SendPacer.this.close(this);
+        }
+
+        public int getPendingCount() {
+            return SendPacer.this.getPendingCount(this);
+        }
+
+        /**
+         * @return Number of sends rejected because the flow's queue was full.
+         */
+        public long getDroppedCount() {
+            return SendPacer.this.getDroppedCount(this);
+        }
+
+        public long getBytesPerSecond() {
+            return this.bucket.getBytesPerSecond();
+        }
+
+        @Override
+        public int compareTo(Flow o) {
+            long diff = this.sendAt - o.sendAt;
+            return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+        }
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static final class PendingSend {
+
+        private final int size;
+        private final Runnable send;
+
+        private PendingSend(int size, Runnable send) {
+            this.size = size;
+            this.send = send;
+        }
+    }
+}
@@ -19,14 +19,17 @@ package com.biasedbit.efflux.session;
 import com.biasedbit.efflux.packet.CompoundControlPacket;
 import com.biasedbit.efflux.packet.ControlPacket;
 import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.packet.DataPacketView;
 import com.biasedbit.efflux.participant.ParticipantDatabase;
 import com.biasedbit.efflux.participant.RtpParticipant;
 import com.biasedbit.efflux.participant.SingleParticipantDatabase;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.jboss.netty.util.HashedWheelTimer;
 
 import java.net.SocketAddress;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -138,23 +141,33 @@ public class SingleParticipantSession extends AbstractRtpSession {
 
     @Override
     protected void internalSendData(DataPacket packet) {
+        if (packet.getDataSize() == 0) {
+            return;
+        }
+
         try {
-            // This assumes that the sender is sending is sending from the same ports where its expecting to receive.
-            // Can be dangerous if the other end fully respects the RFC and supports ICE, but this is nearly the only
-            // workaround that will work if the other end doesn't support ICE and is behind a NAT.
-            SocketAddress destination;
-            if (this.sendToLastOrigin && (this.receiver.getLastDataOrigin() != null)) {
-                destination = this.receiver.getLastDataOrigin();
-            } else {
-                destination = this.receiver.getDataDestination();
-            }
-            this.writeToData(packet, destination);
+            this.writeToData(this.encodeDataPacket(packet), this.getDataDestination());
             this.sentOrReceivedPackets.set(true);
         } catch (Exception e) {
             LOG.error("Failed to send {} to {} in session with id {}.", this.id, this.receiver.getInfo());
         }
     }
 
+    @Override
+    protected void internalSendData(List<DataPacket> packets) {
+        ChannelBuffer[] encoded = this.encodeDataPackets(packets);
+        if (encoded.length == 0) {
+            return;
+        }
+
+        try {
+            this.writeToData(encoded, this.getDataDestination());
+            this.sentOrReceivedPackets.set(true);
+        } catch (Exception e) {
+            LOG.error("Failed to send packets to {} in session with id {}.", e, this.receiver.getInfo(), this.id);
+        }
+    }
+
     @Override
     protected void internalSendControl(ControlPacket packet) {
         try {
@@ -190,17 +203,66 @@ public class SingleParticipantSession extends AbstractRtpSession {
 
     @Override
     public void dataPacketReceived(SocketAddress origin, DataPacket packet) {
+        if (!this.acceptSsrc(packet.getSsrc())) {
+            return;
+        }
+
+        super.dataPacketReceived(origin, packet);
+    }
+
+    // DataPacketBatchReceiver ----------------------------------------------------------------------------------------
+
+    @Override
+    public void dataPacketsReceived(SocketAddress[] origins, DataPacket[] packets, int count) {
+        // Filter in place, keeping the accepted packets at the head of the arrays.
+        int accepted = 0;
+        for (int i = 0; i < count; i++) {
+            if (this.acceptSsrc(packets[i].getSsrc())) {
+                origins[accepted] = origins[i];
+                packets[accepted] = packets[i];
+                accepted++;
+            }
+        }
+
+        super.dataPacketsReceived(origins, packets, accepted);
+    }
+
+    // DataPacketViewReceiver -----------------------------------------------------------------------------------------
+
+    @Override
+    public void dataPacketViewReceived(SocketAddress origin, DataPacketView view) {
+        if (!this.acceptSsrc(view.getSsrc())) {
+            return;
+        }
+
+        super.dataPacketViewReceived(origin, view);
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private SocketAddress getDataDestination() {
+        // This assumes that the sender is sending is sending from the same ports where its expecting to receive.
+        // Can be dangerous if the other end fully respects the RFC and supports ICE, but this is nearly the only
+        // workaround that will work if the other end doesn't support ICE and is behind a NAT.
+        if (this.sendToLastOrigin && (this.receiver.getLastDataOrigin() != null)) {
+            return this.receiver.getLastDataOrigin();
+        } else {
+            return this.receiver.getDataDestination();
+        }
+    }
+
+    private boolean acceptSsrc(long ssrc) {
         if (!this.receivedPackets.getAndSet(true)) {
             // If this is the first packet then setup the SSRC for this participant (we didn't know it yet).
-            this.receiver.getInfo().setSsrc(packet.getSsrc());
-            LOG.trace("First packet received from remote source, updated SSRC to {}.", packet.getSsrc());
-        } else if (this.ignoreFromUnknownSsrc && (packet.getSsrc() != this.receiver.getInfo().getSsrc())) {
+            this.receiver.getInfo().setSsrc(ssrc);
+            LOG.trace("First packet received from remote source, updated SSRC to {}.", ssrc);
+        } else if (this.ignoreFromUnknownSsrc && (ssrc != this.receiver.getInfo().getSsrc())) {
             LOG.trace("Discarded packet from unexpected SSRC: {} (expected was {}).",
-                      packet.getSsrc(), this.receiver.getInfo().getSsrc());
-            return;
+                      ssrc, this.receiver.getInfo().getSsrc());
+            return false;
         }
 
-        super.dataPacketReceived(origin, packet);
+        return true;
     }
 
     // getters & setters ----------------------------------------------------------------------------------------------
@@ -16,6 +16,8 @@
 
 package com.biasedbit.efflux.util;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -138,4 +140,68 @@ public class ByteUtils {
         }
         return stringBuffer.toString();
     }
+
+    /**
+     * Get the length of a string once encoded in UTF-8, without encoding it.
+     * <p/>
+     * Like {@link String#getBytes(java.nio.charset.Charset)}, unpaired surrogates count as the single octet of the
+     * replacement character ('?').
+     *
+     * @param string The string to measure.
+     * @return Amount of octets of the UTF-8 representation of the string.
+     */
+    public static int getUtf8Length(String string) {
+        int length = 0;
+        int size = string.length();
+        for (int i = 0; i < size; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && ((i + 1) < size) &&
+                       Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if ((c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write a string, encoded in UTF-8, to a buffer without going through an intermediate byte array.
+     *
+     * @param buffer The buffer to write to.
+     * @param string The string to be written.
+     * @see #getUtf8Length(String)
+     */
+    public static void writeUtf8(ChannelBuffer buffer, String string) {
+        int size = string.length();
+        for (int i = 0; i < size; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.writeByte(c);
+            } else if (c < 0x800) {
+                buffer.writeByte(0xc0 | (c >> 6));
+                buffer.writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && ((i + 1) < size) &&
+                       Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.writeByte(0xf0 | (codePoint >> 18));
+                buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                buffer.writeByte(0x80 | (codePoint & 0x3f));
+            } else if ((c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE)) {
+                buffer.writeByte('?');
+            } else {
+                buffer.writeByte(0xe0 | (c >> 12));
+                buffer.writeByte(0x80 | ((c >> 6) & 0x3f));
+                buffer.writeByte(0x80 | (c & 0x3f));
+            }
+        }
+    }
 }
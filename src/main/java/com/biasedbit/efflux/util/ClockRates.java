@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.util;
+
+/**
+ * RTP timestamp clock rates of the static payload types assigned by RFC 3551.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class ClockRates {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final int[] STATIC_CLOCK_RATES = new int[35];
+
+    static {
+        // Audio (PCMU, GSM, G723, DVI4, LPC, PCMA, G722, L16, QCELP, CN, MPA, G728, DVI4, DVI4, G729).
+        STATIC_CLOCK_RATES[0] = 8000;
+        STATIC_CLOCK_RATES[3] = 8000;
+        STATIC_CLOCK_RATES[4] = 8000;
+        STATIC_CLOCK_RATES[5] = 8000;
+        STATIC_CLOCK_RATES[6] = 16000;
+        STATIC_CLOCK_RATES[7] = 8000;
+        STATIC_CLOCK_RATES[8] = 8000;
+        // G722 samples at 16kHz but, for historical reasons, its RTP clock runs at 8kHz.
+        STATIC_CLOCK_RATES[9] = 8000;
+        STATIC_CLOCK_RATES[10] = 44100;
+        STATIC_CLOCK_RATES[11] = 44100;
+        STATIC_CLOCK_RATES[12] = 8000;
+        STATIC_CLOCK_RATES[13] = 8000;
+        STATIC_CLOCK_RATES[14] = 90000;
+        STATIC_CLOCK_RATES[15] = 8000;
+        STATIC_CLOCK_RATES[16] = 11025;
+        STATIC_CLOCK_RATES[17] = 22050;
+        STATIC_CLOCK_RATES[18] = 8000;
+        // Video (CelB, JPEG, nv, H261, MPV, MP2T, H263).
+        STATIC_CLOCK_RATES[25] = 90000;
+        STATIC_CLOCK_RATES[26] = 90000;
+        STATIC_CLOCK_RATES[28] = 90000;
+        STATIC_CLOCK_RATES[31] = 90000;
+        STATIC_CLOCK_RATES[32] = 90000;
+        STATIC_CLOCK_RATES[33] = 90000;
+        STATIC_CLOCK_RATES[34] = 90000;
+    }
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    private ClockRates() {
+    }
+
+    // public static methods ------------------------------------------------------------------------------------------
+
+    /**
+     * @param payloadType RTP payload type.
+     *
+     * @return Clock rate, in Hz, of the payload type, or 0 if it isn't a known static payload type.
+     */
+    public static int getClockRate(int payloadType) {
+        if ((payloadType < 0) || (payloadType >= STATIC_CLOCK_RATES.length)) {
+            return 0;
+        }
+
+        return STATIC_CLOCK_RATES[payloadType];
+    }
+}
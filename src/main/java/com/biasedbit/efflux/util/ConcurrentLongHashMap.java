@@ -0,0 +1,346 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hash map keyed by primitive {@code long}s, with lock-free reads.
+ * <p/>
+ * Lookups never block nor box the key: they read the current table and walk an immutable chain of nodes. Writers
+ * serialise on the map's monitor, replacing chains (or the whole table, when resizing) and publishing them through
+ * volatile writes, so a reader always sees a consistent, if possibly slightly stale, state.
+ * <p/>
+ * Iteration is weakly consistent: it never throws {@link java.util.ConcurrentModificationException} and reflects the
+ * state of the map at some point at or since the creation of the iterator.
+ * <p/>
+ * Null values are not allowed.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class ConcurrentLongHashMap<V> {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    private volatile AtomicReferenceArray<Node<V>> table;
+    private volatile int size;
+    private final Collection<V> values;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    public ConcurrentLongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Expected number of entries; the table grows past it when needed.
+     */
+    public ConcurrentLongHashMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Initial capacity must be >= 0");
+        }
+
+        int capacity = 1;
+        while ((capacity < initialCapacity) && (capacity < MAXIMUM_CAPACITY)) {
+            capacity <<= 1;
+        }
+
+        this.table = new AtomicReferenceArray<Node<V>>(capacity);
+        this.values = new Values();
+    }
+
+    // private static helpers -----------------------------------------------------------------------------------------
+
+    private static int hash(long key) {
+        // Spread both halves of the key over the lower bits, which are the ones used to index the table.
+        int h = (int) (key ^ (key >>> 32));
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    /**
+     * Wait-free lookup.
+     *
+     * @param key Key to look up.
+     *
+     * @return The value mapped to the key or {@code null} if none.
+     */
+    public V get(long key) {
+        AtomicReferenceArray<Node<V>> table = this.table;
+        Node<V> node = table.get(hash(key) & (table.length() - 1));
+        while (node != null) {
+            if (node.key == key) {
+                return node.value;
+            }
+            node = node.next;
+        }
+
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * @return The value previously mapped to the key or {@code null} if none.
+     */
+    public synchronized V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        Node<V> node = this.findNode(key);
+        if (node != null) {
+            V previous = node.value;
+            node.value = value;
+            return previous;
+        }
+
+        this.insert(key, value);
+        return null;
+    }
+
+    /**
+     * Maps the value to the key unless the key is already mapped.
+     *
+     * @return The value currently mapped to the key, or {@code null} if the value provided was mapped.
+     */
+    public synchronized V putIfAbsent(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        Node<V> node = this.findNode(key);
+        if (node != null) {
+            return node.value;
+        }
+
+        this.insert(key, value);
+        return null;
+    }
+
+    /**
+     * @return The value that was mapped to the key or {@code null} if none.
+     */
+    public synchronized V remove(long key) {
+        return this.removeNode(key, null);
+    }
+
+    /**
+     * Removes the mapping for the key only if it currently maps to the given value.
+     *
+     * @return {@code true} if the mapping was removed.
+     */
+    public synchronized boolean remove(long key, V value) {
+        return (value != null) && (this.removeNode(key, value) != null);
+    }
+
+    public synchronized void clear() {
+        this.table = new AtomicReferenceArray<Node<V>>(this.table.length());
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return A live, weakly consistent, view of the values of this map. Removal through its iterator is supported.
+     */
+    public Collection<V> values() {
+        return this.values;
+    }
+
+    /**
+     * @return A snapshot copy of this map, with boxed keys.
+     */
+    public Map<Long, V> toMap() {
+        Map<Long, V> map = new HashMap<Long, V>();
+        AtomicReferenceArray<Node<V>> table = this.table;
+        for (int i = 0; i < table.length(); i++) {
+            for (Node<V> node = table.get(i); node != null; node = node.next) {
+                map.put(node.key, node.value);
+            }
+        }
+
+        return map;
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private Node<V> findNode(long key) {
+        AtomicReferenceArray<Node<V>> table = this.table;
+        for (Node<V> node = table.get(hash(key) & (table.length() - 1)); node != null; node = node.next) {
+            if (node.key == key) {
+                return node;
+            }
+        }
+
+        return null;
+    }
+
+    private void insert(long key, V value) {
+        if ((this.size >= (this.table.length() - (this.table.length() >>> 2))) &&
+            (this.table.length() < MAXIMUM_CAPACITY)) {
+            this.resize();
+        }
+
+        AtomicReferenceArray<Node<V>> table = this.table;
+        int index = hash(key) & (table.length() - 1);
+        table.set(index, new Node<V>(key, value, table.get(index)));
+        this.size++;
+    }
+
+    private V removeNode(long key, V expectedValue) {
+        AtomicReferenceArray<Node<V>> table = this.table;
+        int index = hash(key) & (table.length() - 1);
+        Node<V> first = table.get(index);
+        Node<V> node = first;
+        while ((node != null) && (node.key != key)) {
+            node = node.next;
+        }
+
+        if ((node == null) || ((expectedValue != null) && !expectedValue.equals(node.value))) {
+            return null;
+        }
+
+        // Nodes are linked through final fields, so the ones before the removed node are cloned onto the tail.
+        Node<V> chain = node.next;
+        for (Node<V> previous = first; previous != node; previous = previous.next) {
+            chain = new Node<V>(previous.key, previous.value, chain);
+        }
+        table.set(index, chain);
+        this.size--;
+
+        return node.value;
+    }
+
+    private void resize() {
+        AtomicReferenceArray<Node<V>> oldTable = this.table;
+        AtomicReferenceArray<Node<V>> newTable = new AtomicReferenceArray<Node<V>>(oldTable.length() << 1);
+        int mask = newTable.length() - 1;
+        for (int i = 0; i < oldTable.length(); i++) {
+            for (Node<V> node = oldTable.get(i); node != null; node = node.next) {
+                int index = hash(node.key) & mask;
+                newTable.set(index, new Node<V>(node.key, node.value, newTable.get(index)));
+            }
+        }
+
+        // Readers still walking the old table keep seeing its (unmodified) chains.
+        this.table = newTable;
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static final class Node<V> {
+
+        private final long key;
+        private volatile V value;
+        private final Node<V> next;
+
+        private Node(long key, V value, Node<V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentLongHashMap.this.size;
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentLongHashMap.this.clear();
+        }
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+
+        private final AtomicReferenceArray<Node<V>> table;
+        private int index;
+        private Node<V> next;
+        private Node<V> last;
+
+        private ValueIterator() {
+            this.table = ConcurrentLongHashMap.this.table;
+            this.advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public V next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+
+            this.last = this.next;
+            this.next = this.next.next;
+            if (this.next == null) {
+                this.advance();
+            }
+
+            return this.last.value;
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == null) {
+                throw new IllegalStateException();
+            }
+
+            ConcurrentLongHashMap.this.remove(this.last.key);
+            this.last = null;
+        }
+
+        private void advance() {
+            while ((this.next == null) && (this.index < this.table.length())) {
+                this.next = this.table.get(this.index++);
+            }
+        }
+    }
+}
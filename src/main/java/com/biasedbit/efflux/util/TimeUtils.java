@@ -21,6 +21,15 @@ package com.biasedbit.efflux.util;
  */
 public class TimeUtils {
 
+    // constants ------------------------------------------------------------------------------------------------------
+
+    // Seconds between the NTP epoch (1900) and the unix epoch (1970).
+    private static final long NTP_EPOCH_OFFSET = 2208988800L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    // Wall clock and monotonic clock readings taken at the same time, to derive wall clock time from the latter.
+    private static final long WALLCLOCK_BASE_NANOS = System.currentTimeMillis() * 1000000L;
+    private static final long MONOTONIC_BASE_NANOS = System.nanoTime();
+
     // constructors ---------------------------------------------------------------------------------------------------
 
     private TimeUtils() {
@@ -71,4 +80,63 @@ public class TimeUtils {
     public static boolean hasExpiredMillis(long now, long eventTime, long timeBuffer) {
         return (eventTime + timeBuffer) < now;
     }
+
+    /**
+     * Retrieve the NTP timestamp for the current instant. See {@link #ntpTimestampAt(long)}.
+     *
+     * @return Current instant, as a 64 bit NTP timestamp.
+     */
+    public static long nowNtp() {
+        return ntpTimestampAt(System.nanoTime());
+    }
+
+    /**
+     * Converts an instant of the monotonic clock ({@link #nowNanos()}) to a NTP timestamp.
+     * <p/>
+     * The wall clock is only read once; from then on time is measured with the monotonic clock, so timestamps never
+     * go backwards or jump when the system clock is adjusted.
+     *
+     * @param monotonicNanos Instant, as given by {@link #nowNanos()}.
+     *
+     * @return 64 bit NTP timestamp (seconds since 1900 in the high 32 bits, fraction in the low 32 bits).
+     */
+    public static long ntpTimestampAt(long monotonicNanos) {
+        long unixNanos = WALLCLOCK_BASE_NANOS + (monotonicNanos - MONOTONIC_BASE_NANOS);
+        long seconds = (unixNanos / NANOS_PER_SECOND) + NTP_EPOCH_OFFSET;
+        long fraction = ((unixNanos % NANOS_PER_SECOND) << 32) / NANOS_PER_SECOND;
+        return (seconds << 32) | fraction;
+    }
+
+    /**
+     * Extracts the middle 32 bits of a NTP timestamp, as used in the LSR field of reception reports.
+     *
+     * @param ntpTimestamp 64 bit NTP timestamp.
+     *
+     * @return Compact NTP timestamp, in units of 1/65536 seconds.
+     */
+    public static long toCompactNtp(long ntpTimestamp) {
+        return (ntpTimestamp >>> 16) & 0xffffffffL;
+    }
+
+    /**
+     * Converts a duration to units of 1/65536 seconds, as used in the DLSR field of reception reports.
+     *
+     * @param nanos Duration, in nanoseconds.
+     *
+     * @return Duration in units of 1/65536 seconds.
+     */
+    public static long nanosToCompactNtp(long nanos) {
+        return ((nanos / 1000) << 16) / 1000000;
+    }
+
+    /**
+     * Converts a duration in units of 1/65536 seconds to microseconds.
+     *
+     * @param compactNtp Duration in units of 1/65536 seconds.
+     *
+     * @return Duration, in microseconds.
+     */
+    public static long compactNtpToMicros(long compactNtp) {
+        return (compactNtp * 1000000) >>> 16;
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.util;
+
+/**
+ * Token bucket rate limiter, expressed in bytes.
+ * <p/>
+ * Tokens refill at {@code bytesPerSecond} up to {@code capacity}, the largest burst that may go out back to back. A
+ * packet may be sent as soon as the bucket isn't in debt and sending it takes its size in tokens, possibly leaving the
+ * bucket in debt; this way packets larger than the capacity are delayed rather than blocked forever.
+ * <p/>
+ * Internally this is the equivalent virtual scheduling algorithm: instead of a token count, the bucket keeps the
+ * instant at which it will be full again, which only takes integer arithmetic and no periodic refill.
+ * <p/>
+ * Instances are not thread safe. All instants are in nanoseconds, as given by {@link System#nanoTime()}.
+ *
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class TokenBucket {
+
+    // constants ------------------------------------------------------------------------------------------------------
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // configuration --------------------------------------------------------------------------------------------------
+
+    private final long bytesPerSecond;
+    private final long capacity;
+    private final long tolerance;
+
+    // internal vars --------------------------------------------------------------------------------------------------
+
+    // Instant at which the bucket will be full again; always >= (now - tolerance), i.e. tokens never exceed capacity.
+    private long fullAt;
+
+    // constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param bytesPerSecond Refill rate.
+     * @param capacity       Maximum amount of tokens, in bytes.
+     * @param now            Current instant.
+     */
+    public TokenBucket(long bytesPerSecond, long capacity, long now) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be > 0");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be > 0");
+        }
+
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.tolerance = this.toNanos(capacity);
+        this.fullAt = now;
+    }
+
+    // public methods -------------------------------------------------------------------------------------------------
+
+    /**
+     * @param now Current instant.
+     *
+     * @return Time, in nanoseconds, until a packet may be sent; 0 if it can be sent right away.
+     */
+    public long getDelay(long now) {
+        long delay = this.fullAt - this.tolerance - now;
+        return delay > 0 ? delay : 0;
+    }
+
+    /**
+     * Takes {@code bytes} tokens, regardless of the bucket going into debt.
+     *
+     * @param bytes Size of the packet sent.
+     * @param now   Current instant.
+     */
+    public void consume(int bytes, long now) {
+        // A bucket that has been idle is full but not fuller.
+        long from = (this.fullAt - now) > 0 ? this.fullAt : now;
+        this.fullAt = from + this.toNanos(bytes);
+    }
+
+    /**
+     * Takes {@code bytes} tokens if a packet may be sent right now.
+     *
+     * @param bytes Size of the packet to send.
+     * @param now   Current instant.
+     *
+     * @return {@code true} if the packet may be sent, {@code false} if it must wait {@link #getDelay(long)}.
+     */
+    public boolean tryConsume(int bytes, long now) {
+        if (this.getDelay(now) > 0) {
+            return false;
+        }
+
+        this.consume(bytes, now);
+        return true;
+    }
+
+    /**
+     * @param now Current instant.
+     *
+     * @return Available tokens, in bytes; negative if the bucket is in debt.
+     */
+    public long getTokens(long now) {
+        long refill = this.fullAt - now;
+        if (refill <= 0) {
+            return this.capacity;
+        }
+
+        return this.capacity - ((refill * this.bytesPerSecond) / NANOS_PER_SECOND);
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private long toNanos(long bytes) {
+        return (bytes * NANOS_PER_SECOND) / this.bytesPerSecond;
+    }
+
+    // getters & setters ----------------------------------------------------------------------------------------------
+
+    public long getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    public long getCapacity() {
+        return this.capacity;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.packet.CompoundControlPacket;
+import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.participant.RtpParticipant;
+import com.biasedbit.efflux.participant.RtpParticipantInfo;
+import com.biasedbit.efflux.session.MultiParticipantSession;
+import com.biasedbit.efflux.session.RtpSession;
+import com.biasedbit.efflux.session.RtpSessionDataListener;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class BatchingDatagramTransportTest {
+
+    private DatagramReceiveLoop loop;
+    private MultiParticipantSession session1;
+    private MultiParticipantSession session2;
+    private BatchingDatagramTransport transport1;
+    private BatchingDatagramTransport transport2;
+
+    @After
+    public void tearDown() {
+        if (this.session1 != null) {
+            this.session1.terminate();
+        }
+        if (this.session2 != null) {
+            this.session2.terminate();
+        }
+        if (this.transport1 != null) {
+            this.transport1.close();
+        }
+        if (this.transport2 != null) {
+            this.transport2.close();
+        }
+        if (this.loop != null) {
+            this.loop.stop();
+        }
+    }
+
+    @Test
+    public void testSessionsOverSharedLoop() throws Exception {
+        this.loop = new DatagramReceiveLoop();
+        assertTrue(this.loop.start());
+
+        RtpParticipant local1 = RtpParticipant.createReceiver("127.0.0.1", 9700, 9701);
+        RtpParticipant local2 = RtpParticipant.createReceiver("127.0.0.1", 9702, 9703);
+        RtpParticipant remote1 = RtpParticipant.createReceiver("127.0.0.1", 9702, 9703);
+        RtpParticipant remote2 = RtpParticipant.createReceiver("127.0.0.1", 9700, 9701);
+        remote1.getInfo().setSsrc(local2.getInfo().getSsrc());
+        remote2.getInfo().setSsrc(local1.getInfo().getSsrc());
+
+        this.session1 = new MultiParticipantSession("Session1", 8, local1);
+        this.session1.setTransport(new BatchingDatagramTransport(local1.getDataDestination(),
+                                                                 local1.getControlDestination(), this.loop));
+        this.session2 = new MultiParticipantSession("Session2", 8, local2);
+        this.session2.setTransport(new BatchingDatagramTransport(local2.getDataDestination(),
+                                                                 local2.getControlDestination(), this.loop));
+        assertTrue(this.session1.addReceiver(remote1));
+        assertTrue(this.session2.addReceiver(remote2));
+
+        int packets = 200;
+        final CountDownLatch latch = new CountDownLatch(packets);
+        this.session2.addDataListener(new RtpSessionDataListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                latch.countDown();
+            }
+        });
+        assertTrue(this.session1.init());
+        assertTrue(this.session2.init());
+
+        for (int i = 0; i < packets; i++) {
+            assertTrue(this.session1.sendData(new byte[]{0x45, 0x45, 0x45, 0x45}, i, false));
+        }
+
+        assertTrue(latch.await(2000L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testBurstIsDeliveredInBatches() throws Exception {
+        SocketAddress receiverData = new InetSocketAddress("127.0.0.1", 9704);
+        SocketAddress senderData = new InetSocketAddress("127.0.0.1", 9706);
+        int packets = 100;
+        final CountDownLatch latch = new CountDownLatch(packets);
+        final CountDownLatch sent = new CountDownLatch(1);
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<SocketAddress> origins = Collections.synchronizedList(new ArrayList<SocketAddress>());
+        final List<Long> ssrcs = Collections.synchronizedList(new ArrayList<Long>());
+
+        this.transport1 = new BatchingDatagramTransport(receiverData, new InetSocketAddress("127.0.0.1", 9705));
+        this.transport1.setBatchSize(16);
+        this.transport1.setReceiveBufferSize(256 * 1024);
+        this.transport2 = new BatchingDatagramTransport(senderData, new InetSocketAddress("127.0.0.1", 9707));
+
+        assertTrue(this.transport1.open(new BatchReceiver() {
+            @Override
+            public void dataPacketsReceived(SocketAddress[] batchOrigins, DataPacket[] batch, int count) {
+                batchSizes.add(count);
+                for (int i = 0; i < count; i++) {
+                    origins.add(batchOrigins[i]);
+                    ssrcs.add(batch[i].getSsrc());
+                    latch.countDown();
+                }
+                // Hold the loop's thread on the first batch so that the rest of the burst piles up in the socket.
+                try {
+                    sent.await(2000L, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        assertTrue(this.transport2.open(new BatchReceiver()));
+
+        for (int i = 0; i < packets; i++) {
+            DataPacket packet = new DataPacket();
+            packet.setSsrc(0x45);
+            packet.setSequenceNumber(i);
+            packet.setData(new byte[]{0x01, 0x02, 0x03});
+            this.transport2.writeData(packet.encode(), receiverData);
+        }
+        sent.countDown();
+
+        assertTrue(latch.await(2000L, TimeUnit.MILLISECONDS));
+        assertEquals(packets, origins.size());
+        for (int i = 0; i < packets; i++) {
+            assertEquals(senderData, origins.get(i));
+            assertEquals(0x45, ssrcs.get(i).longValue());
+        }
+        int largest = 0;
+        for (int size : batchSizes) {
+            assertTrue(size <= 16);
+            largest = Math.max(largest, size);
+        }
+        assertTrue("Packets weren't batched: " + batchSizes, batchSizes.size() < packets);
+        assertEquals(16, largest);
+    }
+
+    @Test
+    public void testOversizeDatagramsAreDropped() throws Exception {
+        SocketAddress receiverData = new InetSocketAddress("127.0.0.1", 9708);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Integer> sequenceNumbers = Collections.synchronizedList(new ArrayList<Integer>());
+
+        this.transport1 = new BatchingDatagramTransport(receiverData, new InetSocketAddress("127.0.0.1", 9709));
+        this.transport1.setMaxDatagramSize(32);
+        this.transport2 = new BatchingDatagramTransport(new InetSocketAddress("127.0.0.1", 9710),
+                                                        new InetSocketAddress("127.0.0.1", 9711));
+
+        assertTrue(this.transport1.open(new BatchReceiver() {
+            @Override
+            public void dataPacketsReceived(SocketAddress[] origins, DataPacket[] packets, int count) {
+                for (int i = 0; i < count; i++) {
+                    sequenceNumbers.add(packets[i].getSequenceNumber());
+                    latch.countDown();
+                }
+            }
+        }));
+        assertTrue(this.transport2.open(new BatchReceiver()));
+
+        DataPacket large = new DataPacket();
+        large.setSequenceNumber(1);
+        large.setData(new byte[64]);
+        this.transport2.writeData(large.encode(), receiverData);
+        DataPacket small = new DataPacket();
+        small.setSequenceNumber(2);
+        small.setData(new byte[4]);
+        this.transport2.writeData(small.encode(), receiverData);
+
+        assertTrue(latch.await(2000L, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(2), sequenceNumbers);
+        assertEquals(1, this.transport1.getTruncatedDatagrams());
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static class BatchReceiver implements RtpPacketReceiver, DataPacketBatchReceiver {
+
+        @Override
+        public void dataPacketsReceived(SocketAddress[] origins, DataPacket[] packets, int count) {
+        }
+
+        @Override
+        public void dataPacketReceived(SocketAddress origin, DataPacket packet) {
+            fail("Batch receivers should get packets in batches");
+        }
+
+        @Override
+        public void controlPacketReceived(SocketAddress origin, CompoundControlPacket packet) {
+        }
+    }
+}
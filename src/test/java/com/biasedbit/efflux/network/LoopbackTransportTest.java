@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.participant.RtpParticipant;
+import com.biasedbit.efflux.participant.RtpParticipantInfo;
+import com.biasedbit.efflux.session.MultiParticipantSession;
+import com.biasedbit.efflux.session.RtpSession;
+import com.biasedbit.efflux.session.RtpSessionDataListener;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class LoopbackTransportTest {
+
+    private final List<MultiParticipantSession> sessions = new ArrayList<MultiParticipantSession>();
+    private HashedWheelTimer timer;
+
+    @After
+    public void tearDown() {
+        for (MultiParticipantSession session : this.sessions) {
+            session.terminate();
+        }
+        if (this.timer != null) {
+            this.timer.stop();
+        }
+    }
+
+    @Test
+    public void testManySessionsWithoutSockets() throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork();
+        this.timer = new HashedWheelTimer(1, TimeUnit.SECONDS);
+        final AtomicInteger received = new AtomicInteger();
+        int pairs = 500;
+
+        // Nothing is bound on the host; addresses are just keys on the loopback network.
+        for (int i = 0; i < pairs; i++) {
+            int port = 10000 + (i * 4);
+            MultiParticipantSession sender = this.createSession("sender" + i, 1000 + i, port, 5000 + i, port + 2,
+                                                                network);
+            MultiParticipantSession receiver = this.createSession("receiver" + i, 5000 + i, port + 2, 1000 + i, port,
+                                                                  network);
+            final long expectedSsrc = 1000 + i;
+            receiver.addDataListener(new RtpSessionDataListener() {
+                @Override
+                public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                    assertEquals(expectedSsrc, packet.getSsrc());
+                    assertArrayEquals(new byte[]{0x01, 0x02, 0x03}, packet.getDataAsArray());
+                    received.incrementAndGet();
+                }
+            });
+            assertTrue(receiver.init());
+            assertTrue(sender.init());
+        }
+
+        for (int i = 0; i < pairs; i++) {
+            assertTrue(this.sessions.get(i * 2).sendData(new byte[]{0x01, 0x02, 0x03}, 1, false));
+        }
+
+        // Delivery is synchronous without an executor.
+        assertEquals(pairs, received.get());
+    }
+
+    @Test
+    public void testAddressAlreadyBound() throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork();
+        RtpParticipant local = RtpParticipant.createReceiver("127.0.0.1", 20000, 20001);
+        LoopbackTransport first = network.createTransport(local.getDataDestination(), local.getControlDestination());
+        LoopbackTransport second = network.createTransport(local.getDataDestination(), local.getControlDestination());
+        MultiParticipantSession session = new MultiParticipantSession("id", 8, local);
+
+        assertTrue(first.open(session));
+        assertFalse(second.open(session));
+        assertTrue(network.isBound(local.getDataDestination()));
+        first.close();
+        assertFalse(network.isBound(local.getDataDestination()));
+        assertFalse(network.isBound(local.getControlDestination()));
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private MultiParticipantSession createSession(String id, long localSsrc, int localPort, long remoteSsrc,
+                                                  int remotePort, LoopbackNetwork network) {
+        RtpParticipant local = RtpParticipant.createReceiver("127.0.0.1", localPort, localPort + 1);
+        local.getInfo().setSsrc(localSsrc);
+        RtpParticipant remote = RtpParticipant.createReceiver("127.0.0.1", remotePort, remotePort + 1);
+        remote.getInfo().setSsrc(remoteSsrc);
+
+        MultiParticipantSession session = new MultiParticipantSession(id, 8, local, this.timer);
+        session.setTransport(network.createTransport(local.getDataDestination(), local.getControlDestination()));
+        assertTrue(session.addReceiver(remote));
+        this.sessions.add(session);
+        return session;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.network;
+
+import com.biasedbit.efflux.packet.CompoundControlPacket;
+import com.biasedbit.efflux.packet.DataPacket;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class SessionDemultiplexerTest {
+
+    @Test
+    public void testSsrcRouteTakesPrecedenceOverAddress() throws Exception {
+        SessionDemultiplexer demultiplexer = new SessionDemultiplexer();
+        CountingReceiver byAddress = new CountingReceiver();
+        CountingReceiver bySsrc = new CountingReceiver();
+        SocketAddress address = new InetSocketAddress("localhost", 9000);
+        assertTrue(demultiplexer.addRoute(address, byAddress));
+        assertTrue(demultiplexer.addRoute(0x45, bySsrc));
+
+        // Known SSRC, from the other receiver's address: goes to the SSRC's receiver.
+        demultiplexer.messageReceived(null, new Event(createPacket(0x45), address));
+        assertEquals(0, byAddress.packets.get());
+        assertEquals(1, bySsrc.packets.get());
+
+        // Unknown SSRC falls back to the address.
+        demultiplexer.messageReceived(null, new Event(createPacket(0x46), address));
+        assertEquals(1, byAddress.packets.get());
+    }
+
+    @Test
+    public void testSessionsWithPeersBehindOneAddress() throws Exception {
+        SessionDemultiplexer demultiplexer = new SessionDemultiplexer();
+        CountingReceiver first = new CountingReceiver();
+        CountingReceiver second = new CountingReceiver();
+        SocketAddress address = new InetSocketAddress("localhost", 9000);
+        assertTrue(demultiplexer.addRoute(0x45, first));
+        assertTrue(demultiplexer.addRoute(address, first));
+        assertTrue(demultiplexer.addRoute(0x46, second));
+        assertFalse(demultiplexer.addRoute(address, second));
+
+        // Each peer's packets reach its own session, whichever claimed the address first.
+        demultiplexer.messageReceived(null, new Event(createPacket(0x45), address));
+        demultiplexer.messageReceived(null, new Event(createPacket(0x46), address));
+        demultiplexer.messageReceived(null, new Event(createPacket(0x46), address));
+        assertEquals(1, first.packets.get());
+        assertEquals(2, second.packets.get());
+
+        // The shared address is ambiguous, so an unknown SSRC from it goes nowhere (and isn't learnt).
+        demultiplexer.messageReceived(null, new Event(createPacket(0x47), address));
+        assertEquals(1, first.packets.get());
+        assertEquals(2, second.packets.get());
+        assertNull(demultiplexer.getReceiver(address));
+        assertNull(demultiplexer.getReceiver(0x47));
+
+        // Once only one session is left on the address, it routes again.
+        demultiplexer.removeRoutes(second);
+        assertSame(first, demultiplexer.getReceiver(address));
+        demultiplexer.messageReceived(null, new Event(createPacket(0x47), address));
+        assertEquals(2, first.packets.get());
+    }
+
+    @Test
+    public void testSsrcsLearntThroughAddressAreBounded() throws Exception {
+        SessionDemultiplexer demultiplexer = new SessionDemultiplexer();
+        CountingReceiver receiver = new CountingReceiver();
+        SocketAddress address = new InetSocketAddress("localhost", 9000);
+        assertTrue(demultiplexer.addRoute(address, receiver));
+
+        for (int i = 0; i < 100; i++) {
+            demultiplexer.messageReceived(null, new Event(createPacket(i), address));
+        }
+
+        assertEquals(100, receiver.packets.get());
+        // The first SSRCs are bound to the receiver; past the limit, they're only routed by address.
+        assertSame(receiver, demultiplexer.getReceiver(0));
+        assertSame(receiver, demultiplexer.getReceiver(15));
+        assertNull(demultiplexer.getReceiver(16));
+        demultiplexer.removeRoutes(receiver);
+        assertNull(demultiplexer.getReceiver(0));
+        assertNull(demultiplexer.getReceiver(address));
+    }
+
+    // private static helpers -----------------------------------------------------------------------------------------
+
+    private static DataPacket createPacket(long ssrc) {
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(ssrc);
+        packet.setData(new byte[]{0x01});
+        return packet;
+    }
+
+    // private classes ------------------------------------------------------------------------------------------------
+
+    private static class CountingReceiver implements RtpPacketReceiver {
+
+        private final AtomicInteger packets = new AtomicInteger();
+
+        @Override
+        public void dataPacketReceived(SocketAddress origin, DataPacket packet) {
+            this.packets.incrementAndGet();
+        }
+
+        @Override
+        public void controlPacketReceived(SocketAddress origin, CompoundControlPacket packet) {
+        }
+    }
+
+    private static class Event implements MessageEvent {
+
+        private final Object message;
+        private final SocketAddress remoteAddress;
+
+        private Event(Object message, SocketAddress remoteAddress) {
+            this.message = message;
+            this.remoteAddress = remoteAddress;
+        }
+
+        @Override
+        public Object getMessage() {
+            return this.message;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return this.remoteAddress;
+        }
+
+        @Override
+        public Channel getChannel() {
+            return null;
+        }
+
+        @Override
+        public ChannelFuture getFuture() {
+            return null;
+        }
+    }
+}
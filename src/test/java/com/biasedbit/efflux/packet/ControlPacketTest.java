@@ -60,4 +60,89 @@ public class ControlPacketTest {
 
         // No more tests needed as there is plenty of unit testing for each of those packets individually.
     }
+
+    @Test
+    public void testEncodeCompoundPacket() throws Exception {
+        ReceiverReportPacket receiverReport = new ReceiverReportPacket();
+        receiverReport.setSenderSsrc(0x45);
+        ByePacket byePacket = new ByePacket();
+        byePacket.addSsrc(0x45);
+        CompoundControlPacket compoundPacket = new CompoundControlPacket(receiverReport, byePacket);
+
+        ChannelBuffer encoded = compoundPacket.encode();
+        // Duplicates used for fan-out must each see the whole packet, regardless of what the others read.
+        ChannelBuffer first = encoded.duplicate();
+        ChannelBuffer second = encoded.duplicate();
+        first.skipBytes(first.readableBytes());
+        assertEquals(encoded.readableBytes(), second.readableBytes());
+
+        List<ControlPacket> controlPackets = new ArrayList<ControlPacket>(2);
+        while (second.readableBytes() > 0) {
+            controlPackets.add(ControlPacket.decode(second));
+        }
+
+        assertEquals(2, controlPackets.size());
+        assertEquals(ControlPacket.Type.RECEIVER_REPORT, controlPackets.get(0).getType());
+        assertEquals(0x45, ((ReceiverReportPacket) controlPackets.get(0)).getSenderSsrc());
+        assertEquals(ControlPacket.Type.BYE, controlPackets.get(1).getType());
+        assertEquals(1, ((ByePacket) controlPackets.get(1)).getSsrcList().size());
+    }
+
+    @Test
+    public void testCompoundEncodeIsSinglePassWithExactSize() throws Exception {
+        SenderReportPacket senderReport = new SenderReportPacket();
+        senderReport.setSenderSsrc(0x45);
+        senderReport.setNtpTimestamp(0x0102030405060708L);
+        ReceptionReport block = new ReceptionReport();
+        block.setSsrc(0x46);
+        senderReport.addReceptionReportBlock(block);
+        SourceDescriptionPacket sdesPacket = new SourceDescriptionPacket();
+        SdesChunk chunk = new SdesChunk(0x45);
+        chunk.addItem(SdesChunkItems.createCnameItem("caf\u00e9@\u6771\u4eac"));
+        chunk.addItem(SdesChunkItems.createPrivItem("pre", "\ud83d\ude00"));
+        sdesPacket.addItem(chunk);
+        ByePacket byePacket = new ByePacket();
+        byePacket.addSsrc(0x45);
+        byePacket.setReasonForLeaving("g\u00fcle g\u00fcle");
+        CompoundControlPacket compoundPacket = new CompoundControlPacket(senderReport, sdesPacket, byePacket);
+
+        ChannelBuffer encoded = compoundPacket.encode();
+        assertEquals(compoundPacket.getEncodedSize(), encoded.readableBytes());
+        // One allocation: the buffer is exactly full and is not a composite of per-packet buffers.
+        assertEquals(encoded.capacity(), encoded.readableBytes());
+        assertTrue(encoded.hasArray());
+
+        // Must be byte-for-byte what encoding each packet on its own would produce.
+        ChannelBuffer expected = ChannelBuffers.wrappedBuffer(senderReport.encode(), sdesPacket.encode(),
+                                                              byePacket.encode());
+        assertEquals(0, ChannelBuffers.compare(expected, encoded));
+
+        SourceDescriptionPacket decodedSdes = null;
+        ByePacket decodedBye = null;
+        while (encoded.readableBytes() > 0) {
+            ControlPacket packet = ControlPacket.decode(encoded);
+            if (packet instanceof SourceDescriptionPacket) {
+                decodedSdes = (SourceDescriptionPacket) packet;
+            } else if (packet instanceof ByePacket) {
+                decodedBye = (ByePacket) packet;
+            }
+        }
+        assertNotNull(decodedSdes);
+        assertEquals("caf\u00e9@\u6771\u4eac",
+                     decodedSdes.getChunks().get(0).getItemValue(SdesChunkItem.Type.CNAME));
+        assertNotNull(decodedBye);
+        assertEquals("g\u00fcle g\u00fcle", decodedBye.getReasonForLeaving());
+    }
+
+    @Test
+    public void testUtf8Length() throws Exception {
+        String[] values = {"", "ascii", "caf\u00e9", "\u6771\u4eac", "\ud83d\ude00"};
+        for (String value : values) {
+            ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+            ByteUtils.writeUtf8(buffer, value);
+            byte[] expected = value.getBytes("UTF-8");
+            assertEquals(expected.length, ByteUtils.getUtf8Length(value));
+            assertEquals(0, ChannelBuffers.compare(ChannelBuffers.wrappedBuffer(expected), buffer));
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.packet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DataPacketRecyclerTest {
+
+    @Test
+    public void testDecodeAndRecycle() throws Exception {
+        DataPacketRecycler recycler = new DataPacketRecycler();
+        ChannelBuffer buffer = createEncodedPacket(1);
+
+        DataPacket packet = DataPacket.decode(buffer, recycler);
+        assertEquals(0x45, packet.getSsrc());
+        assertEquals(1, packet.getSequenceNumber());
+        assertEquals(5, packet.getDataSize());
+        assertEquals(2, packet.getContributingSourcesCount());
+        assertEquals(0x80000002L, packet.getContributingSourceId(1));
+        // The received buffer itself is the payload.
+        assertSame(buffer, packet.getData());
+        assertEquals(0, recycler.getPooledPackets());
+
+        assertTrue(packet.release());
+        assertEquals(1, recycler.getPooledPackets());
+        assertNull(packet.getData());
+
+        DataPacket other = DataPacket.decode(createEncodedPacket(2), recycler);
+        assertSame(packet, other);
+        assertEquals(2, other.getSequenceNumber());
+        assertEquals(1, other.getReferenceCount());
+        assertEquals(0, recycler.getPooledPackets());
+    }
+
+    @Test
+    public void testRetainedPacketIsNotRecycled() throws Exception {
+        DataPacketRecycler recycler = new DataPacketRecycler();
+        DataPacket packet = DataPacket.decode(createEncodedPacket(1), recycler);
+
+        packet.retain();
+        assertFalse(packet.release());
+        assertEquals(0, recycler.getPooledPackets());
+        assertEquals(5, packet.getDataSize());
+
+        assertTrue(packet.release());
+        assertEquals(1, recycler.getPooledPackets());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseTwice() throws Exception {
+        DataPacket packet = DataPacket.decode(createEncodedPacket(1), new DataPacketRecycler());
+        packet.release();
+        packet.release();
+    }
+
+    @Test
+    public void testSteadyStateDecodeDoesNotAllocate() throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        // Per-thread allocation counters are only available on HotSpot-like VMs; looked up reflectively so that this
+        // class still loads (and the test is skipped) on others.
+        Class<?> beanClass;
+        try {
+            beanClass = Class.forName("com.sun.management.ThreadMXBean");
+        } catch (ClassNotFoundException e) {
+            assumeNoException(e);
+            return;
+        }
+        assumeTrue(beanClass.isInstance(threadBean));
+        assumeTrue((Boolean) beanClass.getMethod("isThreadAllocatedMemorySupported").invoke(threadBean) &&
+                   (Boolean) beanClass.getMethod("isThreadAllocatedMemoryEnabled").invoke(threadBean));
+        Method getThreadAllocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+
+        DataPacketRecycler recycler = new DataPacketRecycler();
+        ChannelBuffer buffer = createEncodedPacket(1);
+        int readerIndex = buffer.readerIndex();
+        int writerIndex = buffer.writerIndex();
+
+        // Warm up (class loading, JIT, pool population).
+        for (int i = 0; i < 20000; i++) {
+            buffer.setIndex(readerIndex, writerIndex);
+            DataPacket.decode(buffer, recycler).release();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = (Long) getThreadAllocatedBytes.invoke(threadBean, threadId);
+        int iterations = 100000;
+        for (int i = 0; i < iterations; i++) {
+            buffer.setIndex(readerIndex, writerIndex);
+            DataPacket packet = DataPacket.decode(buffer, recycler);
+            packet.release();
+        }
+        long allocated = (Long) getThreadAllocatedBytes.invoke(threadBean, threadId) - before;
+
+        // A non-pooled decode costs well over 100 bytes per packet; allow some slack for measurement noise.
+        assertTrue("Allocated " + allocated + " bytes for " + iterations + " packets", allocated < iterations);
+    }
+
+    // private helpers ------------------------------------------------------------------------------------------------
+
+    private static ChannelBuffer createEncodedPacket(int sequenceNumber) {
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        packet.setSequenceNumber(sequenceNumber);
+        packet.setPayloadType(8);
+        // Mixer-like traffic, with CSRCs that don't fit the boxed Long cache.
+        packet.addContributingSourceId(0x80000001L);
+        packet.addContributingSourceId(0x80000002L);
+        packet.setData(new byte[]{0x45, 0x45, 0x45, 0x45, 0x45});
+        return ChannelBuffers.copiedBuffer(packet.encode(16));
+    }
+}
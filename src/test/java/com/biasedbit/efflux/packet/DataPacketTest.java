@@ -18,6 +18,7 @@ package com.biasedbit.efflux.packet;
 
 import com.biasedbit.efflux.util.ByteUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -174,4 +175,140 @@ public class DataPacketTest {
         assertTrue(Arrays.equals(packet.getDataAsArray(), decoded.getDataAsArray()));
         System.out.println("decoded = " + decoded);
     }
+
+    @Test
+    public void testDecodeWithSlicedData() {
+        byte[] bytes = Arrays.copyOf(ALAW_RTP_PACKET_SAMPLE, ALAW_RTP_PACKET_SAMPLE.length);
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(bytes);
+        DataPacket packet = DataPacket.decode(buffer, true);
+        assertEquals(0, buffer.readableBytes());
+        assertEquals(6, packet.getDataSize());
+        assertEquals((byte) 0xd5, packet.getData().getByte(0));
+
+        // No copy was made, so changes to the original buffer are visible through the packet's data.
+        bytes[12] = 0x45;
+        assertEquals(0x45, packet.getData().getByte(0));
+        assertEquals(6, packet.getDataAsArray().length);
+        assertEquals(0x45, packet.getDataAsArray()[0]);
+    }
+
+    @Test
+    public void testEncodeDecodeWithFixedBlockSizeAndSlicedData() {
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        packet.setSequenceNumber(2);
+        packet.setPayloadType(8);
+        packet.setData(new byte[]{0x45, 0x45, 0x45, 0x45, 0x45});
+
+        ChannelBuffer encoded = packet.encode(64);
+        DataPacket decoded = DataPacket.decode(encoded, true);
+        assertEquals(0, encoded.readableBytes());
+        assertEquals(packet.getDataSize(), decoded.getDataSize());
+        assertTrue(Arrays.equals(packet.getDataAsArray(), decoded.getDataAsArray()));
+
+        // Re-encoding a packet with a sliced payload must only write the payload, not the whole backing buffer.
+        assertEquals(12 + 5, decoded.encode().readableBytes());
+    }
+
+    @Test
+    public void testEncodeWrappedMatchesEncode() {
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        packet.setSequenceNumber(2);
+        packet.setPayloadType(8);
+        packet.addContributingSourceId(0x46);
+        packet.setData(new byte[]{0x45, 0x45, 0x45, 0x45, 0x45});
+
+        assertEquals(packet.encode(), packet.encodeWrapped());
+        assertEquals(packet.encode(64), packet.encodeWrapped(64));
+    }
+
+    @Test
+    public void testEncodeWrappedWithDirectPayload() {
+        ChannelBuffer payload = ChannelBuffers.directBuffer(8);
+        payload.writeBytes(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06});
+        payload.skipBytes(1);
+
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        packet.setPayloadType(8);
+        packet.setData(payload);
+
+        ChannelBuffer encoded = packet.encodeWrapped();
+        assertEquals(12 + 5, encoded.readableBytes());
+        // Payload is referenced, not copied.
+        payload.setByte(1, 0x69);
+        assertEquals(0x69, encoded.getByte(12));
+
+        DataPacket decoded = DataPacket.decode(encoded);
+        assertTrue(Arrays.equals(new byte[]{0x69, 0x03, 0x04, 0x05, 0x06}, decoded.getDataAsArray()));
+    }
+
+    @Test
+    public void testContributingSourceIds() {
+        DataPacket packet = new DataPacket();
+        assertEquals(0, packet.getContributingSourcesCount());
+        assertNull(packet.getContributingSourceIds());
+
+        packet.addContributingSourceId(0xffffffffL);
+        packet.addContributingSourceId(69);
+        assertEquals(2, packet.getContributingSourcesCount());
+        assertEquals(0xffffffffL, packet.getContributingSourceId(0));
+        assertEquals(69, packet.getContributingSourceId(1));
+        assertEquals(Arrays.asList(0xffffffffL, 69L), packet.getContributingSourceIds());
+
+        packet.setContributingSourceIds(Arrays.asList(1L, 2L, 3L));
+        assertEquals(3, packet.getContributingSourcesCount());
+        assertEquals(3, packet.getContributingSourceId(2));
+
+        DataPacket decoded = DataPacket.decode(packet.encode());
+        assertEquals(Arrays.asList(1L, 2L, 3L), decoded.getContributingSourceIds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyContributingSourceIds() {
+        DataPacket packet = new DataPacket();
+        for (int i = 0; i < 16; i++) {
+            packet.addContributingSourceId(i);
+        }
+    }
+
+    @Test
+    public void testEncodeInto() {
+        DataPacket first = new DataPacket();
+        first.setSsrc(0x45);
+        first.setSequenceNumber(1);
+        first.setData(new byte[]{0x01, 0x02, 0x03});
+        DataPacket second = new DataPacket();
+        second.setSsrc(0x45);
+        second.setSequenceNumber(2);
+        second.setData(new byte[]{0x04});
+
+        ChannelBuffer buffer = ChannelBuffers.buffer(first.getEncodedSize() + second.getEncodedSize());
+        first.encodeInto(buffer);
+        second.encodeInto(buffer);
+        assertEquals(0, buffer.writableBytes());
+        assertEquals(first.encode(), buffer.slice(0, first.getEncodedSize()));
+        assertEquals(second.encode(), buffer.slice(first.getEncodedSize(), second.getEncodedSize()));
+        assertEquals(16, DataPacket.getEncodedSize(8, first));
+    }
+
+    @Test
+    public void testDecodeEncodeExistingLayout() {
+        // As encoded by previous versions: extension (3 bytes, length in bytes) before the CSRC, then the payload.
+        byte[] packetBytes = ByteUtils.convertHexStringToByteArray("91e20045000aa28900000060" + "80800003707070" +
+                                                                   "00000045" + "69696969");
+        DataPacket packet = DataPacket.decode(packetBytes);
+        assertTrue(packet.hasMarker());
+        assertEquals(98, packet.getPayloadType());
+        assertEquals(69, packet.getSequenceNumber());
+        assertEquals(696969, packet.getTimestamp());
+        assertEquals(96, packet.getSsrc());
+        assertEquals((short) 0x8080, packet.getExtensionHeaderData());
+        assertTrue(Arrays.equals(new byte[]{0x70, 0x70, 0x70}, packet.getExtensionData()));
+        assertEquals(Arrays.asList(69L), packet.getContributingSourceIds());
+        assertTrue(Arrays.equals(new byte[]{0x69, 0x69, 0x69, 0x69}, packet.getDataAsArray()));
+
+        assertEquals(ChannelBuffers.wrappedBuffer(packetBytes), packet.encode());
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.packet;
+
+import com.biasedbit.efflux.util.ByteUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class DataPacketViewTest {
+
+    @Test
+    public void testReadHeaderFields() throws Exception {
+        DataPacket packet = new DataPacket();
+        packet.setMarker(true);
+        packet.setPayloadType(96);
+        packet.setSequenceNumber(65000);
+        packet.setTimestamp(0xf0000001L);
+        packet.setSsrc(0x80000045L);
+        packet.addContributingSourceId(0x46);
+        packet.addContributingSourceId(0x47);
+        packet.setExtensionHeader((short) 0xbede, new byte[]{0x10, 0x01, 0x00, 0x00});
+        packet.setData(new byte[]{0x01, 0x02, 0x03});
+
+        ChannelBuffer buffer = packet.encode(16);
+        DataPacketView view = DataPacketView.wrap(buffer);
+        assertEquals(RtpVersion.V2, view.getVersion());
+        assertTrue(view.hasPadding());
+        assertTrue(view.hasExtension());
+        assertTrue(view.hasMarker());
+        assertEquals(96, view.getPayloadType());
+        assertEquals(65000, view.getSequenceNumber());
+        assertEquals(0xf0000001L, view.getTimestamp());
+        assertEquals(0x80000045L, view.getSsrc());
+        assertEquals(2, view.getContributingSourcesCount());
+        assertEquals(0x46, view.getContributingSourceId(0));
+        assertEquals(0x47, view.getContributingSourceId(1));
+        assertEquals((short) 0xbede, view.getExtensionHeaderData());
+        assertEquals(4, view.getExtensionDataSize());
+        assertEquals(12 + 8 + 8, view.getHeaderSize());
+        assertEquals(3, view.getDataSize());
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[]{0x01, 0x02, 0x03}), view.getData());
+
+        // Wrapping doesn't touch the buffer's indexes.
+        assertEquals(0, buffer.readerIndex());
+        assertEquals(32, buffer.readableBytes());
+    }
+
+    @Test
+    public void testToDataPacket() throws Exception {
+        byte[] packetBytes = ByteUtils.convertHexStringToByteArray
+                ("8008d4807456c0ec4e17c7e5d5d5d5d5d5d5");
+        DataPacketView view = DataPacketView.wrap(ChannelBuffers.wrappedBuffer(packetBytes));
+
+        DataPacket packet = view.toDataPacket();
+        assertSame(packet, view.toDataPacket());
+        assertEquals(view.getSsrc(), packet.getSsrc());
+        assertEquals(view.getSequenceNumber(), packet.getSequenceNumber());
+        assertEquals(view.getTimestamp(), packet.getTimestamp());
+        assertTrue(Arrays.equals(new byte[]{(byte) 0xd5, (byte) 0xd5, (byte) 0xd5, (byte) 0xd5, (byte) 0xd5,
+                                            (byte) 0xd5}, packet.getDataAsArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapTruncatedPacket() throws Exception {
+        // CC says 2 CSRCs follow, but the packet ends right after the SSRC.
+        byte[] packetBytes = ByteUtils.convertHexStringToByteArray("8208d4807456c0ec4e17c7e5");
+        DataPacketView.wrap(ChannelBuffers.wrappedBuffer(packetBytes));
+    }
+
+    @Test
+    public void testReadExistingLayout() throws Exception {
+        // Extension (3 bytes, length in bytes) before the CSRC, as DataPacket encodes it.
+        byte[] packetBytes = ByteUtils.convertHexStringToByteArray("91e20045000aa28900000060" + "80800003707070" +
+                                                                   "00000045" + "69696969");
+        DataPacketView view = DataPacketView.wrap(ChannelBuffers.wrappedBuffer(packetBytes));
+        assertEquals(96, view.getSsrc());
+        assertEquals((short) 0x8080, view.getExtensionHeaderData());
+        assertEquals(3, view.getExtensionDataSize());
+        assertEquals(1, view.getContributingSourcesCount());
+        assertEquals(69, view.getContributingSourceId(0));
+        assertEquals(12 + 7 + 4, view.getHeaderSize());
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[]{0x69, 0x69, 0x69, 0x69}), view.getData());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.biasedbit.efflux.packet;
+
+import com.biasedbit.efflux.util.ByteUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class RtpHeaderExtensionsTest {
+
+    @Test
+    public void testFindOneByteElements() throws Exception {
+        // id 1 (abs-send-time, 3 bytes), padding byte, id 3 (audio level, 1 byte), id 5 (transport-cc, 2 bytes)
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(ByteUtils.convertHexStringToByteArray(
+                "12123456" + "0030d5" + "5101020000"));
+        int profile = RtpHeaderExtensions.ONE_BYTE_PROFILE;
+
+        int offset = RtpHeaderExtensions.findElement(buffer, 0, buffer.readableBytes(), profile, 1);
+        assertEquals(1, offset);
+        assertEquals(3, RtpHeaderExtensions.getElementLength(buffer, profile, offset));
+        assertEquals(0x123456, RtpHeaderExtensions.readAbsSendTime(buffer, offset));
+
+        offset = RtpHeaderExtensions.findElement(buffer, 0, buffer.readableBytes(), profile, 3);
+        assertEquals(0x55, RtpHeaderExtensions.readAudioLevel(buffer, offset));
+        assertTrue(RtpHeaderExtensions.readVoiceActivity(buffer, offset));
+
+        offset = RtpHeaderExtensions.findElement(buffer, 0, buffer.readableBytes(), profile, 5);
+        assertEquals(0x0102, RtpHeaderExtensions.readTransportSequenceNumber(buffer, offset));
+
+        assertEquals(-1, RtpHeaderExtensions.findElement(buffer, 0, buffer.readableBytes(), profile, 7));
+    }
+
+    @Test
+    public void testFindTwoByteElements() throws Exception {
+        // id 20 with 0 bytes, id 200 with 2 bytes, padding.
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(ByteUtils.convertHexStringToByteArray(
+                "1400" + "c802abcd" + "0000"));
+        int profile = RtpHeaderExtensions.TWO_BYTE_PROFILE | 0x03;
+
+        int offset = RtpHeaderExtensions.findElement(buffer, 0, buffer.readableBytes(), profile, 20);
+        assertEquals(2, offset);
+        assertEquals(0, RtpHeaderExtensions.getElementLength(buffer, profile, offset));
+
+        offset = RtpHeaderExtensions.findElement(buffer, 0, buffer.readableBytes(), profile, 200);
+        assertEquals(2, RtpHeaderExtensions.getElementLength(buffer, profile, offset));
+        assertEquals(0xabcd, RtpHeaderExtensions.readTransportSequenceNumber(buffer, offset));
+    }
+
+    @Test
+    public void testFindInMalformedOrUnknownExtension() throws Exception {
+        // Element claims 4 bytes but only 2 follow.
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(ByteUtils.convertHexStringToByteArray("130102"));
+        assertEquals(-1, RtpHeaderExtensions.findElement(buffer, 0, 3, RtpHeaderExtensions.ONE_BYTE_PROFILE, 1));
+        assertEquals(-1, RtpHeaderExtensions.findElement(buffer, 0, 3, 0x8080, 1));
+    }
+
+    @Test
+    public void testIdZeroIsPadding() throws Exception {
+        // ID 0 is a single padding octet even when its length field isn't 0; id 1 (1 byte) follows it.
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(ByteUtils.convertHexStringToByteArray("0310aa00"));
+        int profile = RtpHeaderExtensions.ONE_BYTE_PROFILE;
+        assertEquals(2, RtpHeaderExtensions.findElement(buffer, 0, 4, profile, 1));
+        assertEquals(-1, RtpHeaderExtensions.findElement(buffer, 0, 4, profile, 0));
+        assertEquals(-1, RtpHeaderExtensions.findElement(buffer, 0, 4, RtpHeaderExtensions.TWO_BYTE_PROFILE, 0));
+
+        // Importing the received elements to add one skips the padding as well.
+        DataPacket packet = new DataPacket();
+        packet.setExtensionHeader((short) RtpHeaderExtensions.ONE_BYTE_PROFILE, buffer.array());
+        packet.setData(new byte[]{0x01});
+        packet.setTransportSequenceNumber(5, 10);
+        DataPacket decoded = DataPacket.decode(packet.encode());
+        assertEquals(0x2a, decoded.getAudioLevel(1));
+        assertEquals(10, decoded.getTransportSequenceNumber(5));
+        assertFalse(decoded.hasExtensionElement(0));
+    }
+
+    @Test
+    public void testEncodeAndDecodeElements() throws Exception {
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        packet.setPayloadType(96);
+        packet.addContributingSourceId(0x46);
+        packet.setAbsSendTime(3, 0x0abcdef);
+        packet.setAudioLevel(1, 42, true);
+        packet.setTransportSequenceNumber(5, 65535);
+        packet.setData(new byte[]{0x01, 0x02});
+
+        assertTrue(packet.hasExtension());
+        assertEquals((short) RtpHeaderExtensions.ONE_BYTE_PROFILE, packet.getExtensionHeaderData());
+        // 4 + 2 + 3 element bytes, padded to 12.
+        assertEquals(12, packet.getExtensionDataSize());
+
+        ChannelBuffer encoded = packet.encode();
+        assertEquals(12 + 4 + 4 + 12 + 2, encoded.readableBytes());
+        // Extension after the CSRC, length in 32-bit words.
+        assertEquals(0x46, encoded.getUnsignedInt(12));
+        assertEquals(RtpHeaderExtensions.ONE_BYTE_PROFILE, encoded.getUnsignedShort(16));
+        assertEquals(3, encoded.getUnsignedShort(18));
+        assertEquals(packet.encode(), packet.encodeWrapped());
+
+        DataPacket decoded = DataPacket.decode(encoded.duplicate());
+        assertEquals(0x0abcdef, decoded.getAbsSendTime(3));
+        assertEquals(42, decoded.getAudioLevel(1));
+        assertTrue(decoded.hasVoiceActivity(1));
+        assertEquals(65535, decoded.getTransportSequenceNumber(5));
+        assertEquals(0x46, decoded.getContributingSourceId(0));
+        assertFalse(decoded.hasExtensionElement(2));
+        assertEquals(-1, decoded.getTransportSequenceNumber(2));
+        // Wrong length for the requested type.
+        assertEquals(-1, decoded.getAudioLevel(3));
+
+        DataPacketView view = DataPacketView.wrap(encoded);
+        assertEquals(0x0abcdef, view.getAbsSendTime(3));
+        assertEquals(42, view.getAudioLevel(1));
+        assertTrue(view.hasVoiceActivity(1));
+        assertEquals(65535, view.getTransportSequenceNumber(5));
+        assertEquals(-1, view.getAbsSendTime(1));
+    }
+
+    @Test
+    public void testUpdateElementOfDecodedPacket() throws Exception {
+        DataPacket packet = new DataPacket();
+        packet.setPayloadType(96);
+        packet.setAbsSendTime(3, 0x000001);
+        packet.setTransportSequenceNumber(5, 10);
+        packet.setData(new byte[]{0x01});
+
+        DataPacket decoded = DataPacket.decode(packet.encode(), true);
+        decoded.setAbsSendTime(3, 0x000002);
+
+        // Other elements survive the update.
+        DataPacket reDecoded = DataPacket.decode(decoded.encode());
+        assertEquals(2, reDecoded.getAbsSendTime(3));
+        assertEquals(10, reDecoded.getTransportSequenceNumber(5));
+    }
+
+    @Test
+    public void testTwoByteFormatFallback() throws Exception {
+        DataPacket packet = new DataPacket();
+        packet.setPayloadType(96);
+        packet.setExtensionElement(100, ChannelBuffers.wrappedBuffer(new byte[]{0x01, 0x02, 0x03}));
+        packet.setTransportSequenceNumber(5, 7);
+
+        assertEquals((short) RtpHeaderExtensions.TWO_BYTE_PROFILE, packet.getExtensionHeaderData());
+        DataPacket decoded = DataPacket.decode(packet.encode());
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[]{0x01, 0x02, 0x03}), decoded.getExtensionElement(100));
+        assertEquals(7, decoded.getTransportSequenceNumber(5));
+    }
+
+    @Test
+    public void testDecodeStandardPacket() throws Exception {
+        // As sent by other RTP stacks: CSRC, then a one-byte header extension of 2 words with abs-send-time (id 3),
+        // audio level (id 1) and 2 octets of padding, then the payload.
+        byte[] packetBytes = ByteUtils.convertHexStringToByteArray("91e01234000001001122334455667788" +
+                                                                   "bede0002" + "32123456" + "10850000" +
+                                                                   "deadbeef");
+        DataPacket packet = DataPacket.decode(packetBytes);
+        assertEquals(0x11223344L, packet.getSsrc());
+        assertEquals(0x55667788L, packet.getContributingSourceId(0));
+        assertEquals((short) RtpHeaderExtensions.ONE_BYTE_PROFILE, packet.getExtensionHeaderData());
+        assertEquals(8, packet.getExtensionDataSize());
+        assertEquals(0x123456, packet.getAbsSendTime(3));
+        assertEquals(5, packet.getAudioLevel(1));
+        assertTrue(packet.hasVoiceActivity(1));
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[]{(byte) 0xde, (byte) 0xad, (byte) 0xbe, (byte) 0xef}),
+                     packet.getData());
+        assertEquals(ChannelBuffers.wrappedBuffer(packetBytes), packet.encode());
+
+        DataPacketView view = DataPacketView.wrap(ChannelBuffers.wrappedBuffer(packetBytes));
+        assertEquals(0x55667788L, view.getContributingSourceId(0));
+        assertEquals(8, view.getExtensionDataSize());
+        assertEquals(12 + 4 + 12, view.getHeaderSize());
+        assertEquals(0x123456, view.getAbsSendTime(3));
+        assertEquals(5, view.getAudioLevel(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRawStandardExtensionMustBeWordAligned() throws Exception {
+        new DataPacket().setExtensionHeader((short) RtpHeaderExtensions.ONE_BYTE_PROFILE, new byte[]{0x10, 0x01});
+    }
+}
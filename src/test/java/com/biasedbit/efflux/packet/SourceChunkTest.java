@@ -17,6 +17,7 @@
 package com.biasedbit.efflux.packet;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -52,4 +53,23 @@ public class SourceChunkTest {
 
         assertEquals(0, encoded.readableBytes());
     }
+
+    @Test
+    public void testCachedEncodingIsInvalidatedOnModification() throws Exception {
+        SdesChunk chunk = new SdesChunk(0x45);
+        chunk.addItem(SdesChunkItems.createCnameItem("cname"));
+
+        ChannelBuffer first = chunk.encode();
+        ChannelBuffer second = chunk.encode();
+        assertNotSame(first, second);
+        assertEquals(0, ChannelBuffers.compare(first, second));
+
+        chunk.addItem(SdesChunkItems.createToolItem("tool"));
+        assertEquals(chunk.getEncodedSize(), chunk.encode().readableBytes());
+        SdesChunk decoded = SdesChunk.decode(chunk.encode());
+        assertEquals("tool", decoded.getItemValue(SdesChunkItem.Type.TOOL));
+
+        chunk.setSsrc(0x46);
+        assertEquals(0x46, SdesChunk.decode(chunk.encode()).getSsrc());
+    }
 }
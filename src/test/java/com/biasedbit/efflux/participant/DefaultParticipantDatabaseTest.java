@@ -18,6 +18,7 @@ package com.biasedbit.efflux.participant;
 
 import com.biasedbit.efflux.packet.DataPacket;
 import com.biasedbit.efflux.packet.SdesChunk;
+import com.biasedbit.efflux.packet.SdesChunkItems;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -82,6 +83,25 @@ public class DefaultParticipantDatabaseTest {
         assertTrue(doSomething.get());
     }
 
+    @Test
+    public void testReceiverSnapshotIsReplacedOnChanges() throws Exception {
+        RtpParticipant[] empty = this.database.getReceiverSnapshot();
+        assertEquals(0, empty.length);
+
+        RtpParticipant first = RtpParticipant.createReceiver("localhost", 8000, 8001);
+        RtpParticipant second = RtpParticipant.createReceiver("localhost", 8002, 8003);
+        assertTrue(this.database.addReceiver(first));
+        RtpParticipant[] snapshot = this.database.getReceiverSnapshot();
+        assertTrue(this.database.addReceiver(second));
+        assertTrue(this.database.removeReceiver(first));
+
+        // Snapshots taken earlier are left untouched.
+        assertEquals(0, empty.length);
+        assertArrayEquals(new RtpParticipant[]{first}, snapshot);
+        assertArrayEquals(new RtpParticipant[]{second}, this.database.getReceiverSnapshot());
+        assertEquals(1, this.database.getReceiverCount());
+    }
+
     @Test
     public void testRemoveReceiver() throws Exception {
         RtpParticipant participant = RtpParticipant.createReceiver("localhost", 8000, 8001);
@@ -196,8 +216,193 @@ public class DefaultParticipantDatabaseTest {
         assertEquals(0, this.listener.getDeletions());
     }
 
+    @Test
+    public void testAssociationOfParticipantViaCname() throws Exception {
+        RtpParticipant receiver = RtpParticipant.createReceiver("localhost", 8000, 8001);
+        receiver.getInfo().setCname("efflux@localhost");
+        assertTrue(this.database.addReceiver(receiver));
+
+        // Control address doesn't match but the CNAME does.
+        SdesChunk chunk = new SdesChunk(0x45);
+        chunk.addItem(SdesChunkItems.createCnameItem("efflux@localhost"));
+        SocketAddress address = new InetSocketAddress("localhost", 9001);
+
+        RtpParticipant participant = this.database.getOrCreateParticipantFromSdesChunk(address, chunk);
+        assertSame(receiver, participant);
+        assertEquals(0x45, participant.getSsrc());
+        assertEquals(1, this.database.getParticipantCount());
+        assertEquals(0, this.listener.getSdesCreations());
+    }
+
+    @Test
+    public void testAddReceiverReusesMemberWithSameCname() throws Exception {
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        RtpParticipant member =
+                this.database.getOrCreateParticipantFromDataPacket(new InetSocketAddress("localhost", 9000), packet);
+
+        // CNAME is only learnt afterwards, through SDES.
+        SdesChunk chunk = new SdesChunk(0x45);
+        chunk.addItem(SdesChunkItems.createCnameItem("efflux@localhost"));
+        assertSame(member, this.database.getOrCreateParticipantFromSdesChunk(new InetSocketAddress("localhost", 9001),
+                                                                              chunk));
+        member.getInfo().updateFromSdesChunk(chunk);
+
+        RtpParticipant receiver = RtpParticipant.createReceiver("localhost", 8000, 8001);
+        receiver.getInfo().setCname("efflux@localhost");
+        assertTrue(this.database.addReceiver(receiver));
+        assertEquals(1, this.database.getReceiverCount());
+        assertSame(member, this.database.getReceivers().iterator().next());
+    }
+
+    @Test
+    public void testCnameChangeMovesMemberToNewCname() throws Exception {
+        SdesChunk chunk = new SdesChunk(0x45);
+        chunk.addItem(SdesChunkItems.createCnameItem("old@localhost"));
+        RtpParticipant member =
+                this.database.getOrCreateParticipantFromSdesChunk(new InetSocketAddress("localhost", 9001), chunk);
+        assertNotNull(member);
+
+        SdesChunk update = new SdesChunk(0x45);
+        update.addItem(SdesChunkItems.createCnameItem("new@localhost"));
+        assertTrue(this.database.updateParticipantFromSdesChunk(member, update));
+        assertEquals("new@localhost", member.getInfo().getCname());
+
+        // A receiver with the old CNAME is a different participant; one with the new CNAME is the member.
+        RtpParticipant stale = RtpParticipant.createReceiver("localhost", 8000, 8001);
+        stale.getInfo().setCname("old@localhost");
+        assertTrue(this.database.addReceiver(stale));
+        assertSame(stale, this.database.getReceivers().iterator().next());
+        assertTrue(this.database.removeReceiver(stale));
+
+        RtpParticipant receiver = RtpParticipant.createReceiver("localhost", 8002, 8003);
+        receiver.getInfo().setCname("new@localhost");
+        assertTrue(this.database.addReceiver(receiver));
+        assertSame(member, this.database.getReceivers().iterator().next());
+    }
+
     @Test
     public void testCleanup() throws Exception {
+        // Members that leave are removed right away, the others are kept for a minute.
+        this.database.setTimeoutAfterByeAndNoPacketsReceived(0);
+        SocketAddress address = new InetSocketAddress("localhost", 8000);
+        RtpParticipant leaving = this.database.getOrCreateParticipantFromSdesChunk(address, new SdesChunk(0x45));
+        this.database.getOrCreateParticipantFromSdesChunk(address, new SdesChunk(0x46));
+        assertEquals(2, this.database.getParticipantCount());
+
+        leaving.byeReceived();
+        this.database.byeReceived(leaving);
+        Thread.sleep(10);
+        this.database.cleanup();
+
+        assertEquals(1, this.database.getParticipantCount());
+        assertNull(this.database.getParticipant(0x45));
+        assertNotNull(this.database.getParticipant(0x46));
+        assertEquals(1, this.listener.getDeletions());
+    }
+
+    @Test
+    public void testCleanupAfterInactivity() throws Exception {
+        this.database.setTimeoutAfterNoPacketsReceived(0);
+        RtpParticipant receiver = RtpParticipant.createReceiver("localhost", 8000, 8001);
+        assertTrue(this.database.addReceiver(receiver));
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        SocketAddress address = new InetSocketAddress("localhost", 8000);
+        assertSame(receiver, this.database.getOrCreateParticipantFromDataPacket(address, packet));
+        assertEquals(1, this.database.getParticipantCount());
+
+        Thread.sleep(10);
+        this.database.cleanup();
+
+        // Silent members expire but explicitly added receivers stay, to be matched again when heard from.
+        assertEquals(0, this.database.getParticipantCount());
+        assertEquals(1, this.database.getReceiverCount());
+        assertEquals(1, this.listener.getDeletions());
+    }
+
+    @Test
+    public void testMaxParticipantsEvictsSourcesOnProbation() throws Exception {
+        this.database.setMaxParticipants(2);
+        SocketAddress address = new InetSocketAddress("localhost", 8000);
+        DataPacket packet = new DataPacket();
+
+        // First source gets validated by sending a few packets in sequence, second one stays on probation.
+        packet.setSsrc(0x45);
+        RtpParticipant validated = this.database.getOrCreateParticipantFromDataPacket(address, packet);
+        for (int i = 1; i <= 4; i++) {
+            validated.dataPacketReceived(i, 0, 10, 8000);
+        }
+        assertTrue(validated.isValidated());
+        packet.setSsrc(0x46);
+        RtpParticipant probationary = this.database.getOrCreateParticipantFromDataPacket(address, packet);
+        probationary.dataPacketReceived(1, 0, 10, 8000);
+        assertFalse(probationary.isValidated());
+
+        // Full: the one on probation makes room for the new source...
+        Thread.sleep(10);
+        packet.setSsrc(0x47);
+        RtpParticipant newcomer = this.database.getOrCreateParticipantFromDataPacket(address, packet);
+        assertNotNull(newcomer);
+        assertEquals(2, this.database.getParticipantCount());
+        assertNull(this.database.getParticipant(0x46));
+        assertSame(validated, this.database.getParticipant(0x45));
+        assertEquals(1, this.database.getEvictedCount());
+        assertEquals(1, this.listener.getDeletions());
+
+        // ... and once everyone is validated, the one heard from the longest ago does.
+        for (int i = 1; i <= 4; i++) {
+            newcomer.dataPacketReceived(i, 0, 10, 8000);
+        }
+        packet.setSsrc(0x48);
+        assertNotNull(this.database.getOrCreateParticipantFromDataPacket(address, packet));
+        assertEquals(2, this.database.getParticipantCount());
+        assertNull(this.database.getParticipant(0x45));
+        assertSame(newcomer, this.database.getParticipant(0x47));
+        assertEquals(0, this.database.getRejectedCount());
+        assertEquals(2, this.database.getEvictedCount());
+    }
+
+    @Test
+    public void testMaxParticipantsUnderSsrcFlood() throws Exception {
+        this.database.setMaxParticipants(10);
+        SocketAddress address = new InetSocketAddress("localhost", 8000);
+        DataPacket packet = new DataPacket();
+        for (long ssrc = 0; ssrc < 10000; ssrc++) {
+            packet.setSsrc(ssrc);
+            assertNotNull(this.database.getOrCreateParticipantFromDataPacket(address, packet));
+        }
+
+        assertEquals(10, this.database.getParticipantCount());
+        assertEquals(9990, this.database.getEvictedCount());
+        for (long ssrc = 9990; ssrc < 10000; ssrc++) {
+            assertNotNull(this.database.getParticipant(ssrc));
+        }
+    }
+
+    @Test
+    public void testSenderCount() throws Exception {
+        SocketAddress address = new InetSocketAddress("localhost", 8000);
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(0x45);
+        RtpParticipant sender = this.database.getOrCreateParticipantFromDataPacket(address, packet);
+        this.database.getOrCreateParticipantFromSdesChunk(address, new SdesChunk(0x46));
+        assertEquals(2, this.database.getParticipantCount());
+        assertEquals(0, this.database.getSenderCount(0));
+
+        long before = System.currentTimeMillis();
+        sender.dataPacketReceived(1, 0, 10, 8000);
+        assertEquals(1, this.database.getSenderCount(before));
+        assertEquals(0, this.database.getSenderCount(System.currentTimeMillis() + 1000));
+    }
+
+    @Test
+    public void testAverageRtcpSize() throws Exception {
+        assertEquals(0, this.database.getAverageRtcpSize(), 0.0);
+        this.database.updateAverageRtcpSize(100);
+        assertEquals(100, this.database.getAverageRtcpSize(), 0.0);
+        this.database.updateAverageRtcpSize(260);
+        assertEquals(110, this.database.getAverageRtcpSize(), 0.0001);
     }
 
     // private classes ------------------------------------------------------------------------------------------------
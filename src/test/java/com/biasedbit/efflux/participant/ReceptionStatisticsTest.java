@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.participant;
+
+import com.biasedbit.efflux.packet.ReceptionReport;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class ReceptionStatisticsTest {
+
+    @Test
+    public void testProbation() {
+        ReceptionStatistics statistics = new ReceptionStatistics();
+        assertFalse(statistics.update(100, 0, 0, 0));
+        assertTrue(statistics.update(101, 0, 0, 0));
+        assertTrue(statistics.update(102, 0, 0, 0));
+        assertEquals(2, statistics.getReceived());
+        assertEquals(2, statistics.getExpected());
+        assertEquals(102, statistics.getExtendedHighestSequenceNumber());
+    }
+
+    @Test
+    public void testLossAndFractionLost() {
+        ReceptionStatistics statistics = new ReceptionStatistics();
+        statistics.update(0, 0, 0, 0);
+        // 1 to 10 (base is 1), with 3, 4 and 7 missing.
+        for (int sequenceNumber : new int[]{1, 2, 5, 6, 8, 9, 10}) {
+            assertTrue(statistics.update(sequenceNumber, 0, 0, 0));
+        }
+        assertEquals(10, statistics.getExpected());
+        assertEquals(7, statistics.getReceived());
+        assertEquals(3, statistics.getCumulativeLost());
+
+        ReceptionReport block = new ReceptionReport();
+        statistics.fillReceptionReport(block);
+        assertEquals((3 * 256) / 10, block.getFractionLost());
+        assertEquals(3, block.getCumulativeNumberOfPacketsLost());
+        assertEquals(10, block.getExtendedHighestSequenceNumberReceived());
+
+        // No losses in the next interval, but cumulative loss remains.
+        statistics.update(11, 0, 0, 0);
+        statistics.update(12, 0, 0, 0);
+        statistics.fillReceptionReport(block);
+        assertEquals(0, block.getFractionLost());
+        assertEquals(3, block.getCumulativeNumberOfPacketsLost());
+    }
+
+    @Test
+    public void testSequenceNumberWrap() {
+        ReceptionStatistics statistics = new ReceptionStatistics();
+        statistics.update(65533, 0, 0, 0);
+        for (int sequenceNumber : new int[]{65534, 65535, 0, 1, 2}) {
+            assertTrue(statistics.update(sequenceNumber, 0, 0, 0));
+        }
+        assertEquals(65536 + 2, statistics.getExtendedHighestSequenceNumber());
+        assertEquals(5, statistics.getExpected());
+        assertEquals(0, statistics.getCumulativeLost());
+    }
+
+    @Test
+    public void testLargeJumpNeedsConfirmation() {
+        ReceptionStatistics statistics = new ReceptionStatistics();
+        statistics.update(10, 0, 0, 0);
+        statistics.update(11, 0, 0, 0);
+        assertFalse(statistics.update(20000, 0, 0, 0));
+        assertEquals(11, statistics.getExtendedHighestSequenceNumber());
+        // Sequential after the jump: the source restarted, re-sync.
+        assertTrue(statistics.update(20001, 0, 0, 0));
+        assertEquals(20001, statistics.getExtendedHighestSequenceNumber());
+        assertEquals(1, statistics.getExpected());
+    }
+
+    @Test
+    public void testJitter() {
+        ReceptionStatistics statistics = new ReceptionStatistics();
+        long millisecond = 1000000L;
+        // 8kHz, one packet every 20ms (160 timestamp units)...
+        for (int i = 0; i < 10; i++) {
+            statistics.update(i, i * 160, 8000, i * 20 * millisecond);
+        }
+        assertEquals(0, statistics.getJitter());
+
+        // ... until arrivals alternate between 10ms early and 10ms late (80 units of transit difference).
+        for (int i = 10; i < 1000; i++) {
+            long offset = (i % 2) == 0 ? 10 * millisecond : -10 * millisecond;
+            statistics.update(i, i * 160, 8000, (i * 20 * millisecond) + offset);
+        }
+        long jitter = statistics.getJitter();
+        assertTrue("Unexpected jitter: " + jitter, (jitter >= 155) && (jitter <= 160));
+    }
+}
@@ -16,7 +16,14 @@
 
 package com.biasedbit.efflux.session;
 
+import com.biasedbit.efflux.network.LoopbackNetwork;
+import com.biasedbit.efflux.network.SharedPortTransport;
+import com.biasedbit.efflux.packet.AbstractReportPacket;
 import com.biasedbit.efflux.packet.DataPacket;
+import com.biasedbit.efflux.packet.DataPacketView;
+import com.biasedbit.efflux.packet.ReceiverReportPacket;
+import com.biasedbit.efflux.packet.ReceptionReport;
+import com.biasedbit.efflux.packet.SenderReportPacket;
 import com.biasedbit.efflux.participant.RtpParticipant;
 import com.biasedbit.efflux.participant.RtpParticipantInfo;
 import org.junit.After;
@@ -24,9 +31,18 @@ import org.junit.Test;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -35,12 +51,24 @@ import static org.junit.Assert.assertTrue;
 public class MultiParticipantSessionTest {
 
     private MultiParticipantSession session;
+    private MultiParticipantSession otherSession;
+    private MultiParticipantSession thirdSession;
+    private SharedPortTransport transport;
 
     @After
     public void tearDown() {
         if (this.session != null) {
             this.session.terminate();
         }
+        if (this.otherSession != null) {
+            this.otherSession.terminate();
+        }
+        if (this.thirdSession != null) {
+            this.thirdSession.terminate();
+        }
+        if (this.transport != null) {
+            this.transport.terminate();
+        }
     }
 
     @Test
@@ -120,4 +148,312 @@ public class MultiParticipantSessionTest {
 
         assertEquals(2, counter.get());
     }
+
+    @Test
+    public void testDataPacketViewDispatch() throws Exception {
+        RtpParticipant participant = RtpParticipant.createReceiver("localhost", 8000, 8001);
+        participant.getInfo().setSsrc(6969);
+        this.session = new MultiParticipantSession("id", 8, participant);
+        this.session.setUseDataPacketViews(true);
+        assertTrue(this.session.init());
+
+        final AtomicInteger viewCounter = new AtomicInteger(0);
+        final AtomicInteger packetCounter = new AtomicInteger(0);
+        this.session.addDataViewListener(new RtpSessionDataViewListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacketView packet) {
+                assertEquals(69, packet.getSsrc());
+                viewCounter.incrementAndGet();
+            }
+        });
+
+        DataPacket packet = new DataPacket();
+        packet.setSequenceNumber(10);
+        packet.setPayloadType(8);
+        packet.setSsrc(69);
+        packet.setData(new byte[]{0x01, 0x02});
+        SocketAddress address = new InetSocketAddress("localhost", 8000);
+        this.session.dataPacketViewReceived(address, DataPacketView.wrap(packet.encode()));
+        packet.setSequenceNumber(11);
+        this.session.dataPacketViewReceived(address, DataPacketView.wrap(packet.encode()));
+        packet.setSequenceNumber(10);
+        this.session.dataPacketViewReceived(address, DataPacketView.wrap(packet.encode()));
+        assertEquals(2, viewCounter.get());
+        assertEquals(69, this.session.getRemoteParticipant(69).getSsrc());
+
+        // Regular data listeners still get fully built packets.
+        this.session.addDataListener(new RtpSessionDataListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                assertEquals(12, packet.getSequenceNumber());
+                assertEquals(2, packet.getDataSize());
+                packetCounter.incrementAndGet();
+            }
+        });
+        packet.setSequenceNumber(12);
+        this.session.dataPacketViewReceived(address, DataPacketView.wrap(packet.encode()));
+        assertEquals(3, viewCounter.get());
+        assertEquals(1, packetCounter.get());
+    }
+
+    @Test
+    public void testRtcpMux() throws Exception {
+        RtpParticipant local = RtpParticipant.createReceiver("localhost", 9100, 9101);
+        local.getInfo().setSsrc(1);
+        RtpParticipant otherLocal = RtpParticipant.createReceiver("localhost", 9200, 9201);
+        otherLocal.getInfo().setSsrc(2);
+
+        this.otherSession = new MultiParticipantSession("other", 8, otherLocal);
+        this.otherSession.setUseRtcpMux(true);
+        final CountDownLatch controlLatch = new CountDownLatch(1);
+        final CountDownLatch dataLatch = new CountDownLatch(1);
+        this.otherSession.addEventListener(new RtpSessionEventListener() {
+            @Override
+            public void participantJoinedFromData(RtpSession session, RtpParticipant participant) {
+            }
+
+            @Override
+            public void participantJoinedFromControl(RtpSession session, RtpParticipant participant) {
+                assertEquals(1, participant.getSsrc());
+                controlLatch.countDown();
+            }
+
+            @Override
+            public void participantDataUpdated(RtpSession session, RtpParticipant participant) {
+            }
+
+            @Override
+            public void participantLeft(RtpSession session, RtpParticipant participant) {
+            }
+
+            @Override
+            public void participantDeleted(RtpSession session, RtpParticipant participant) {
+            }
+
+            @Override
+            public void resolvedSsrcConflict(RtpSession session, long oldSsrc, long newSsrc) {
+            }
+
+            @Override
+            public void sessionTerminated(RtpSession session, Throwable cause) {
+            }
+        });
+        this.otherSession.addDataListener(new RtpSessionDataListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                assertEquals(1, packet.getSsrc());
+                dataLatch.countDown();
+            }
+        });
+        assertTrue(this.otherSession.init());
+
+        this.session = new MultiParticipantSession("id", 8, local);
+        this.session.setUseRtcpMux(true);
+        // Both RTP and RTCP go to the other end's single port.
+        RtpParticipant remote = RtpParticipant.createReceiver("localhost", 9200, 9200);
+        remote.getInfo().setSsrc(2);
+        assertTrue(this.session.addReceiver(remote));
+        // Joining the session sends RTCP (RR + SDES) over the multiplexed channel.
+        assertTrue(this.session.init());
+        assertTrue(this.session.sendData(new byte[]{0x01, 0x02}, 1, false));
+
+        assertTrue(controlLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(dataLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSharedPortTransport() throws Exception {
+        this.transport = new SharedPortTransport(new InetSocketAddress("localhost", 9300));
+        assertTrue(this.transport.init());
+
+        // Two sessions on the same port, each expecting a different remote source.
+        final CountDownLatch dataLatch = new CountDownLatch(1);
+        final AtomicInteger wrongSession = new AtomicInteger(0);
+        this.session = new MultiParticipantSession("id", 8, RtpParticipant.createReceiver("localhost", 9300, 9300));
+        this.session.getLocalParticipant().getInfo().setSsrc(1);
+        this.session.setSharedTransport(this.transport);
+        RtpParticipant remote = RtpParticipant.createReceiver("localhost", 9400, 9400);
+        remote.getInfo().setSsrc(3);
+        assertTrue(this.session.addReceiver(remote));
+        this.session.addDataListener(new RtpSessionDataListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                assertEquals(3, packet.getSsrc());
+                dataLatch.countDown();
+            }
+        });
+        assertTrue(this.session.init());
+
+        this.otherSession = new MultiParticipantSession("other", 8,
+                                                        RtpParticipant.createReceiver("localhost", 9300, 9300));
+        this.otherSession.getLocalParticipant().getInfo().setSsrc(2);
+        this.otherSession.setSharedTransport(this.transport);
+        RtpParticipant otherRemote = RtpParticipant.createReceiver("localhost", 9500, 9500);
+        otherRemote.getInfo().setSsrc(4);
+        assertTrue(this.otherSession.addReceiver(otherRemote));
+        this.otherSession.addDataListener(new RtpSessionDataListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                wrongSession.incrementAndGet();
+            }
+        });
+        assertTrue(this.otherSession.init());
+
+        // Remote source, with its own socket, sending to the shared port.
+        RtpParticipant sender = RtpParticipant.createReceiver("localhost", 9400, 9400);
+        sender.getInfo().setSsrc(3);
+        this.thirdSession = new MultiParticipantSession("sender", 8, sender);
+        this.thirdSession.setUseRtcpMux(true);
+        assertTrue(this.thirdSession.addReceiver(RtpParticipant.createReceiver("localhost", 9300, 9300)));
+        assertTrue(this.thirdSession.init());
+        assertTrue(this.thirdSession.sendData(new byte[]{0x01, 0x02}, 1, false));
+
+        assertTrue(dataLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(this.session, this.transport.getDemultiplexer().getReceiver(3));
+        assertEquals(0, wrongSession.get());
+
+        // Terminating a session drops its routes but leaves the port open for the others.
+        this.session.terminate();
+        assertEquals(null, this.transport.getDemultiplexer().getReceiver(3));
+        assertEquals(this.otherSession, this.transport.getDemultiplexer().getReceiver(4));
+        assertTrue(this.transport.getChannel().isBound());
+    }
+
+    @Test
+    public void testSendFrame() throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork();
+        RtpParticipant local = RtpParticipant.createReceiver("localhost", 9800, 9801);
+        RtpParticipant other = RtpParticipant.createReceiver("localhost", 9802, 9803);
+        RtpParticipant remote = RtpParticipant.createReceiver("localhost", 9802, 9803);
+        remote.getInfo().setSsrc(other.getInfo().getSsrc());
+
+        this.session = new MultiParticipantSession("id", 8, local);
+        this.session.setTransport(network.createTransport(local.getDataDestination(), local.getControlDestination()));
+        assertTrue(this.session.addReceiver(remote));
+        this.otherSession = new MultiParticipantSession("otherId", 8, other);
+        this.otherSession.setTransport(network.createTransport(other.getDataDestination(),
+                                                               other.getControlDestination()));
+        final List<DataPacket> received = new ArrayList<DataPacket>();
+        this.otherSession.addDataListener(new RtpSessionDataListener() {
+            @Override
+            public void dataPacketReceived(RtpSession session, RtpParticipantInfo participant, DataPacket packet) {
+                received.add(packet);
+            }
+        });
+        assertTrue(this.session.init());
+        assertTrue(this.otherSession.init());
+
+        assertTrue(this.session.sendData(new byte[]{0x01}, 1, true));
+        List<byte[]> fragments = Arrays.asList(new byte[]{0x02}, new byte[]{0x03, 0x03}, new byte[]{0x04});
+        assertTrue(this.session.sendFrame(fragments, 2));
+        assertTrue(this.session.sendData(new byte[]{0x05}, 3, true));
+        // Packets without payload aren't sent, nor do they take a sequence number.
+        List<DataPacket> batch = new ArrayList<DataPacket>();
+        for (byte[] data : Arrays.asList(new byte[]{0x06}, new byte[0], new byte[]{0x07})) {
+            DataPacket packet = new DataPacket();
+            packet.setTimestamp(4);
+            packet.setData(data);
+            batch.add(packet);
+        }
+        assertTrue(this.session.sendDataPackets(batch));
+        // The marker goes on the last fragment that is actually sent.
+        assertTrue(this.session.sendFrame(Arrays.asList(new byte[]{0x08}, new byte[0]), 5));
+
+        // Delivery is synchronous on the loopback network.
+        assertEquals(8, received.size());
+        int firstSequenceNumber = received.get(0).getSequenceNumber();
+        for (int i = 0; i < 7; i++) {
+            assertEquals(firstSequenceNumber + i, received.get(i).getSequenceNumber());
+            assertEquals(local.getInfo().getSsrc(), received.get(i).getSsrc());
+        }
+        for (int i = 1; i < 4; i++) {
+            assertEquals(2, received.get(i).getTimestamp());
+            assertArrayEquals(fragments.get(i - 1), received.get(i).getDataAsArray());
+        }
+        assertFalse(received.get(1).hasMarker());
+        assertFalse(received.get(2).hasMarker());
+        assertTrue(received.get(3).hasMarker());
+        assertArrayEquals(new byte[]{0x07}, received.get(6).getDataAsArray());
+        assertArrayEquals(new byte[]{0x08}, received.get(7).getDataAsArray());
+        assertTrue(received.get(7).hasMarker());
+    }
+
+    @Test
+    public void testRejoinAfterCollisionResetsSendStats() throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork();
+        RtpParticipant local = RtpParticipant.createReceiver("localhost", 9806, 9807);
+        this.session = new MultiParticipantSession("id", 8, local);
+        this.session.setTransport(network.createTransport(local.getDataDestination(), local.getControlDestination()));
+        assertTrue(this.session.init());
+        InetSocketAddress origin = new InetSocketAddress("localhost", 20000);
+
+        // The first collision only makes the session pick another SSRC.
+        assertTrue(this.session.sendData(new byte[]{0x01, 0x02}, 1, false));
+        DataPacket packet = new DataPacket();
+        packet.setSsrc(local.getSsrc());
+        packet.setPayloadType(8);
+        packet.setData(new byte[]{0x01});
+        this.session.dataPacketReceived(origin, packet);
+        assertEquals(1, this.session.getSentPackets());
+
+        // The second one makes it leave and rejoin with a new SSRC, whose reports start from scratch.
+        assertTrue(this.session.sendData(new byte[]{0x03}, 2, false));
+        assertEquals(2, this.session.getSentPackets());
+        packet.setSsrc(local.getSsrc());
+        this.session.dataPacketReceived(origin, packet);
+        assertEquals(0, this.session.getSentPackets());
+        assertEquals(0, this.session.getSentBytes());
+    }
+
+    @Test
+    public void testReportBlocksRotateThroughSources() throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork();
+        RtpParticipant local = RtpParticipant.createReceiver("localhost", 9804, 9805);
+        this.session = new MultiParticipantSession("id", 8, local);
+        this.session.setTransport(network.createTransport(local.getDataDestination(), local.getControlDestination()));
+        assertTrue(this.session.init());
+
+        for (int i = 0; i < 40; i++) {
+            DataPacket packet = new DataPacket();
+            packet.setSsrc(1000 + i);
+            packet.setPayloadType(8);
+            packet.setData(new byte[]{0x01});
+            this.session.dataPacketReceived(new InetSocketAddress("localhost", 20000 + i), packet);
+        }
+
+        // More sources than fit in a report: two consecutive reports cover them all.
+        Set<Long> reported = new HashSet<Long>();
+        AbstractReportPacket first = this.session.buildReportPacket(local.getSsrc(), 0);
+        assertEquals(31, first.getReceptionReportCount());
+        for (ReceptionReport block : first.getReceptionReports()) {
+            reported.add(block.getSsrc());
+        }
+        AbstractReportPacket second = this.session.buildReportPacket(local.getSsrc(), 0);
+        assertEquals(31, second.getReceptionReportCount());
+        for (ReceptionReport block : second.getReceptionReports()) {
+            reported.add(block.getSsrc());
+        }
+        assertEquals(40, reported.size());
+
+        // Sources that haven't sent anything since the given instant aren't reported on.
+        assertEquals(0, this.session.buildReportPacket(local.getSsrc(), Long.MAX_VALUE).getReceptionReportCount());
+    }
+
+    @Test
+    public void testSenderReportOnlyWhileSendingData() throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork();
+        RtpParticipant local = RtpParticipant.createReceiver("localhost", 9806, 9807);
+        this.session = new MultiParticipantSession("id", 8, local);
+        this.session.setTransport(network.createTransport(local.getDataDestination(), local.getControlDestination()));
+        assertTrue(this.session.init());
+
+        assertTrue(this.session.buildReportPacket(local.getSsrc(), 0) instanceof ReceiverReportPacket);
+        assertTrue(this.session.sendData(new byte[]{0x01}, 1, false));
+        assertTrue(this.session.buildReportPacket(local.getSsrc(), 0) instanceof SenderReportPacket);
+
+        // Once nothing was sent for two reporting intervals, the session is back to receiver reports.
+        this.session.lastDataSendInstant -= (2L * this.session.periodicRtcpSendInterval) + 1;
+        assertTrue(this.session.buildReportPacket(local.getSsrc(), 0) instanceof ReceiverReportPacket);
+        assertEquals(1, this.session.getSentPackets());
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.session;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class RtcpIntervalTest {
+
+    @Test
+    public void testMinimumInterval() {
+        assertEquals(RtcpInterval.MIN_INTERVAL, RtcpInterval.calculate(2, 1, 1600, true, 100, false), 0.0);
+    }
+
+    @Test
+    public void testInitialMinimumIsHalved() {
+        assertEquals(RtcpInterval.MIN_INTERVAL / 2, RtcpInterval.calculate(2, 1, 1600, true, 100, true), 0.0);
+        assertEquals(RtcpInterval.MIN_INTERVAL / 2, RtcpInterval.calculate(2, 0, 1600, false, 100, true), 0.0);
+
+        // Only the minimum is halved; larger groups get the same interval.
+        assertEquals((199 * 100) / 1200.0, RtcpInterval.calculate(200, 1, 1600, false, 100, true), 0.0001);
+    }
+
+    @Test
+    public void testIntervalGrowsWithGroupSize() {
+        // 256kbps session: 1600 bytes/s for RTCP, of which receivers share 75% while senders are a minority.
+        double receiverInterval = RtcpInterval.calculate(200, 1, 1600, false, 100, false);
+        assertEquals((199 * 100) / 1200.0, receiverInterval, 0.0001);
+        assertEquals((399 * 100) / 1200.0, RtcpInterval.calculate(400, 1, 1600, false, 100, false), 0.0001);
+
+        // The only sender gets its 25% share to itself.
+        assertEquals(RtcpInterval.MIN_INTERVAL, RtcpInterval.calculate(200, 1, 1600, true, 100, false), 0.0);
+        assertEquals((40 * 100) / 400.0, RtcpInterval.calculate(200, 40, 1600, true, 100, false), 0.0001);
+
+        // Once senders aren't a minority, everyone shares all the bandwidth.
+        assertEquals((200 * 100) / 1600.0, RtcpInterval.calculate(200, 100, 1600, false, 100, false), 0.0001);
+    }
+
+    @Test
+    public void testRandomisation() {
+        Random random = new Random(0);
+        double compensation = Math.E - 1.5;
+        for (int i = 0; i < 1000; i++) {
+            double interval = RtcpInterval.randomise(10, random);
+            assertTrue(interval >= (5 / compensation));
+            assertTrue(interval <= (15 / compensation));
+        }
+    }
+}
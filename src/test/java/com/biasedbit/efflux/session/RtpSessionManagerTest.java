@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.session;
+
+import com.biasedbit.efflux.network.DatagramTransport;
+import com.biasedbit.efflux.participant.RtpParticipant;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class RtpSessionManagerTest {
+
+    private RtpSessionManager manager;
+
+    @After
+    public void tearDown() {
+        if (this.manager != null) {
+            this.manager.terminateAll();
+        }
+    }
+
+    @Test
+    public void testSharedResourcesLifecycle() throws Exception {
+        this.manager = new RtpSessionManager(2, 2);
+
+        MultiParticipantSession first = this.manager.createMultiParticipantSession(
+                "first", 8, RtpParticipant.createReceiver("localhost", 9600, 9601));
+        SingleParticipantSession second = this.manager.createSingleParticipantSession(
+                "second", 8, RtpParticipant.createReceiver("localhost", 9602, 9603),
+                RtpParticipant.createReceiver("localhost", 9604, 9605));
+        assertNotNull(first.getChannelFactory());
+        assertSame(first.getChannelFactory(), second.getChannelFactory());
+        assertSame(first.timer, second.timer);
+        assertNotNull(first.executor);
+        assertSame(first.executor, second.executor);
+        assertTrue(first.init());
+        assertTrue(second.init());
+        assertEquals(2, this.manager.getSessionCount());
+        assertSame(second, this.manager.getSession("second"));
+
+        try {
+            this.manager.createMultiParticipantSession("first", 8, RtpParticipant.createReceiver("localhost", 9606,
+                                                                                                 9607));
+            fail("Duplicate session ids must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        first.terminate();
+        assertEquals(1, this.manager.getSessionCount());
+        assertNull(this.manager.getSession("first"));
+        // Shared resources are still up for the remaining session.
+        assertTrue(((DatagramTransport) second.getTransport()).getDataChannel().isBound());
+
+        second.terminate();
+        assertEquals(0, this.manager.getSessionCount());
+
+        // A new session after the last one ended gets a fresh set of resources. Channels of sessions sharing a factory
+        // close asynchronously, so it doesn't reuse the ports of the first session.
+        MultiParticipantSession third = this.manager.createMultiParticipantSession(
+                "third", 8, RtpParticipant.createReceiver("localhost", 9608, 9609));
+        assertNotSame(first.getChannelFactory(), third.getChannelFactory());
+        assertTrue(third.init());
+    }
+
+    @Test
+    public void testRemoveUninitialisedSession() throws Exception {
+        this.manager = new RtpSessionManager(1);
+        RtpSession session = this.manager.createMultiParticipantSession(
+                "id", 8, RtpParticipant.createReceiver("localhost", 9610, 9611));
+        this.manager.removeSession(session);
+        assertEquals(0, this.manager.getSessionCount());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.session;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class SendPacerTest {
+
+    private SendPacer pacer;
+
+    @After
+    public void tearDown() {
+        if (this.pacer != null) {
+            this.pacer.terminate();
+        }
+    }
+
+    @Test
+    public void testBurstIsSpreadOverTime() throws Exception {
+        this.pacer = new SendPacer();
+        assertTrue(this.pacer.init());
+
+        // 100kB/s with a 1000 byte burst: 21 packets of 1000 bytes take at least 200ms.
+        SendPacer.Flow flow = this.pacer.createFlow(100000, 1000, 100);
+        final List<Integer> sent = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(21);
+        long start = System.nanoTime();
+        for (int i = 0; i < 21; i++) {
+            final int index = i;
+            assertTrue(flow.send(1000, new Runnable() {
+                @Override
+                public void run() {
+                    sent.add(index);
+                    latch.countDown();
+                }
+            }));
+        }
+
+        assertTrue(latch.await(2000L, TimeUnit.MILLISECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Sent too fast: " + elapsed + "ms", elapsed >= 190);
+        for (int i = 0; i < 21; i++) {
+            assertEquals(i, sent.get(i).intValue());
+        }
+        assertEquals(0, flow.getPendingCount());
+    }
+
+    @Test
+    public void testFlowsArePacedIndependently() throws Exception {
+        this.pacer = new SendPacer();
+        assertTrue(this.pacer.init());
+
+        SendPacer.Flow slow = this.pacer.createFlow(1000, 1000, 100);
+        SendPacer.Flow fast = this.pacer.createFlow(10000000, 1000, 100);
+        final CountDownLatch latch = new CountDownLatch(51);
+        Runnable countDown = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+
+        // The first two packets of the slow flow drain its bucket and the third is a full second away; it mustn't
+        // hold back the fast flow.
+        assertTrue(slow.send(1000, countDown));
+        assertTrue(slow.send(1000, countDown));
+        assertTrue(slow.send(1000, countDown));
+        for (int i = 0; i < 49; i++) {
+            assertTrue(fast.send(1000, countDown));
+        }
+
+        assertTrue(latch.await(500L, TimeUnit.MILLISECONDS));
+        assertEquals(1, slow.getPendingCount());
+        slow.close();
+        assertEquals(0, slow.getPendingCount());
+        assertFalse(slow.send(1000, countDown));
+    }
+
+    @Test
+    public void testFullFlowRejectsAndCountsDrops() throws Exception {
+        this.pacer = new SendPacer();
+        assertTrue(this.pacer.init());
+
+        // 1 byte per second: the first send goes out and puts the bucket in debt, everything after it stays queued.
+        SendPacer.Flow flow = this.pacer.createFlow(1, 1000, 3);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Runnable countDown = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+
+        assertTrue(flow.send(2000, countDown));
+        assertTrue(latch.await(500L, TimeUnit.MILLISECONDS));
+        assertTrue(flow.send(1000, countDown));
+        assertTrue(flow.send(1000, countDown));
+        // Batches are queued all or none.
+        assertFalse(flow.send(new int[]{1000, 1000}, new Runnable[]{countDown, countDown}));
+        assertEquals(2, flow.getPendingCount());
+        assertTrue(flow.send(1000, countDown));
+        assertFalse(flow.send(1000, countDown));
+        assertEquals(3, flow.getPendingCount());
+        assertEquals(3, flow.getDroppedCount());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class ConcurrentLongHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>(2);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(0xffffffffL, "max"));
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals("uno", map.putIfAbsent(1, "one"));
+        assertEquals(2, map.size());
+
+        assertEquals("uno", map.get(1));
+        assertEquals("max", map.get(0xffffffffL));
+        assertNull(map.get(2));
+
+        assertFalse(map.remove(1, "one"));
+        assertTrue(map.remove(1, "uno"));
+        assertNull(map.remove(1));
+        assertEquals("max", map.remove(0xffffffffL));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testResizeAndIteration() {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(2);
+        for (long i = 0; i < 1000; i++) {
+            map.put(i << 32, i);
+        }
+        assertEquals(1000, map.size());
+        assertEquals(1000, map.toMap().size());
+        for (long i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), map.get(i << 32));
+        }
+
+        // Remove the odd ones through the iterator.
+        Iterator<Long> iterator = map.values().iterator();
+        while (iterator.hasNext()) {
+            if ((iterator.next() % 2) == 1) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(500, map.size());
+        Set<Long> values = new HashSet<Long>(map.values());
+        assertEquals(500, values.size());
+        for (Long value : values) {
+            assertEquals(0, value % 2);
+        }
+    }
+
+    @Test
+    public void testReadsDuringWrites() throws Exception {
+        final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>();
+        // Always present, while the table keeps resizing around it.
+        map.put(42, 42L);
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (done.getCount() > 0) {
+                    if (map.get(42) == null) {
+                        failed.set(true);
+                    }
+                }
+            }
+        };
+        reader.start();
+
+        for (long i = 100; i < 20000; i++) {
+            map.put(i, i);
+            if ((i % 3) == 0) {
+                map.remove(i - 1);
+            }
+        }
+        done.countDown();
+        reader.join();
+
+        assertFalse(failed.get());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class TimeUtilsTest {
+
+    @Test
+    public void testNtpTimestampFollowsMonotonicClock() {
+        long now = TimeUtils.nowNanos();
+        long ntp = TimeUtils.ntpTimestampAt(now);
+        // 1.5 seconds later: 1 second more in the high bits, half a second more in the fraction.
+        long later = TimeUtils.ntpTimestampAt(now + 1500000000L);
+
+        long seconds = (ntp >>> 32) - 2208988800L;
+        assertTrue(Math.abs((seconds * 1000) - System.currentTimeMillis()) < 2000);
+        assertEquals(0x18000L, TimeUtils.toCompactNtp(later) - TimeUtils.toCompactNtp(ntp), 1);
+    }
+
+    @Test
+    public void testCompactNtpConversions() {
+        assertEquals(0x12345678L, TimeUtils.toCompactNtp(0x0000123456789abcL));
+        assertEquals(65536, TimeUtils.nanosToCompactNtp(1000000000L));
+        assertEquals(32768, TimeUtils.nanosToCompactNtp(500000000L));
+        assertEquals(1000000, TimeUtils.compactNtpToMicros(65536));
+        assertEquals(250000, TimeUtils.compactNtpToMicros(16384));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Bruno de Carvalho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.biasedbit.efflux.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="http://bruno.biasedbit.com/">Bruno de Carvalho</a>
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testBurstThenRate() {
+        long now = 1000L;
+        // 1000 bytes per second: each byte takes 1ms to refill.
+        TokenBucket bucket = new TokenBucket(1000, 300, now);
+        assertEquals(300, bucket.getTokens(now));
+
+        assertTrue(bucket.tryConsume(100, now));
+        assertTrue(bucket.tryConsume(100, now));
+        assertTrue(bucket.tryConsume(100, now));
+        assertEquals(0, bucket.getTokens(now));
+        // Not in debt yet, so one more may go, which puts the bucket in debt.
+        assertTrue(bucket.tryConsume(100, now));
+        assertEquals(-100, bucket.getTokens(now));
+        assertFalse(bucket.tryConsume(100, now));
+        assertEquals(100000000L, bucket.getDelay(now));
+
+        now += 100000000L;
+        assertEquals(0, bucket.getDelay(now));
+        assertTrue(bucket.tryConsume(100, now));
+        assertEquals(100000000L, bucket.getDelay(now));
+    }
+
+    @Test
+    public void testIdleBucketDoesNotOverfill() {
+        long now = -5000000000L;
+        TokenBucket bucket = new TokenBucket(1000, 300, now);
+        assertTrue(bucket.tryConsume(300, now));
+
+        // Idle for far longer than needed to refill.
+        now += 10000000000L;
+        assertEquals(300, bucket.getTokens(now));
+        assertTrue(bucket.tryConsume(300, now));
+        assertTrue(bucket.tryConsume(1, now));
+        assertFalse(bucket.tryConsume(1, now));
+    }
+
+    @Test
+    public void testPacketLargerThanCapacity() {
+        long now = 0;
+        TokenBucket bucket = new TokenBucket(1000, 100, now);
+        assertTrue(bucket.tryConsume(1000, now));
+        assertEquals(900000000L, bucket.getDelay(now));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new TokenBucket(0, 100, 0);
+    }
+}